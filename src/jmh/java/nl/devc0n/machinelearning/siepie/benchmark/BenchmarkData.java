@@ -0,0 +1,73 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.environment.LaneGameSimulator;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.FrameStack;
+import nl.devc0n.machinelearning.siepie.model.GameStep;
+import nl.devc0n.machinelearning.siepie.reward.RewardShaper;
+
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic game data for the benchmarks, played on the {@link LaneGameSimulator} with
+ * random actions so frames look like real game frames.
+ */
+final class BenchmarkData {
+
+    static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Fill a replay buffer with at least {@code steps} steps of random play.
+     */
+    static ReplayBuffer filledBuffer(int capacity, int steps) {
+        var buffer = new ReplayBuffer(capacity);
+        var simulator = new LaneGameSimulator(SEED);
+        var random = new SplittableRandom(SEED);
+        var rewardShaper = new RewardShaper();
+        simulator.start();
+
+        int recorded = 0;
+        while (recorded < steps) {
+            Episode episode = playEpisode(simulator, random);
+            episode.finish(simulator.extractFinalScore());
+            rewardShaper.applyRewards(episode);
+            buffer.addEpisode(episode);
+            recorded += episode.getSteps().size();
+            simulator.restartGame();
+        }
+        return buffer;
+    }
+
+    /**
+     * A frame stack that already went through a few steps of play.
+     */
+    static FrameStack frameStack(int k) {
+        var simulator = new LaneGameSimulator(SEED);
+        simulator.start();
+        var frameStack = new FrameStack(k, simulator.takeScreenshot());
+        for (int i = 0; i < k; i++) {
+            simulator.performAction(Action.NOTHING);
+            frameStack.push(simulator.takeScreenshot());
+        }
+        return frameStack;
+    }
+
+    private static Episode playEpisode(LaneGameSimulator simulator, SplittableRandom random) {
+        var frameStack = new FrameStack(4, simulator.takeScreenshot());
+        var episode = new Episode(frameStack.newestFrame());
+        while (true) {
+            Action action = Action.fromIndex(random.nextInt(Action.getNumActions()));
+            simulator.performAction(action);
+            frameStack.push(simulator.takeScreenshot());
+            if (simulator.detectDeathScreen()) {
+                return episode;
+            }
+            episode.addStep(new GameStep(frameStack.newestFrame(), action, episode.getSteps().size()));
+        }
+    }
+}
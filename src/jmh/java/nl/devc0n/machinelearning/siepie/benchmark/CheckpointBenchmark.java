@@ -0,0 +1,80 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.TrainingState;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointManager;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointSettings;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.network.NetworkSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * The part of a checkpoint the step loop pays for, and restoring one at startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CheckpointBenchmark {
+
+    private AgentSiepie agent;
+    private NetworkSnapshot buffer;
+    private Path directory;
+    private Path checkpoint;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        agent = new AgentSiepie(new ReplayBuffer(1_000));
+        buffer = agent.newSnapshot();
+        // First snapshot allocates the buffers
+        agent.snapshot(buffer);
+
+        directory = Files.createTempDirectory("siepie-checkpoints");
+        var checkpoints = new CheckpointManager(agent, new CheckpointSettings(directory, 1, 1));
+        checkpoints.save();
+        // Waits for the background write
+        checkpoints.close();
+        checkpoint = checkpoints.latest().orElseThrow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public TrainingState snapshot() {
+        return agent.snapshot(buffer);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public AgentSiepie restore() throws IOException {
+        CheckpointManager.restore(checkpoint, agent);
+        return agent;
+    }
+}
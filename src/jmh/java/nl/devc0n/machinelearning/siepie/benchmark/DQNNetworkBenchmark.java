@@ -0,0 +1,81 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Greedy action selection on the actor side and one training step on the learner side.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DQNNetworkBenchmark {
+
+    private static final int SAMPLED_BATCHES = 8;
+
+    private DQNNetwork network;
+    private INDArray state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = new DQNNetwork();
+        state = BenchmarkData.frameStack(4).toINDArray();
+    }
+
+    @Benchmark
+    public Action selectAction() {
+        // Epsilon 0, always a forward pass
+        return network.selectAction(state, 0.0);
+    }
+
+    @Benchmark
+    public float[] train(Batches batches) {
+        return network.train(batches.next());
+    }
+
+    /**
+     * Batches sampled up front so only the network is measured.
+     */
+    @State(Scope.Thread)
+    public static class Batches {
+
+        @Param({"32", "64", "128"})
+        public int batchSize;
+
+        private TransitionBatch[] batches;
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            ReplayBuffer buffer = BenchmarkData.filledBuffer(10_000, 5_000);
+            batches = new TransitionBatch[SAMPLED_BATCHES];
+            for (int i = 0; i < SAMPLED_BATCHES; i++) {
+                batches[i] = buffer.sampleBatch(batchSize);
+            }
+        }
+
+        TransitionBatch next() {
+            return batches[next++ % SAMPLED_BATCHES];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import nl.devc0n.machinelearning.siepie.network.DataParallelTuner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training updates per second with the batch split over model replicas, against 1 replica as
+ * the single-network baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DataParallelBenchmark {
+
+    private static final int SAMPLED_BATCHES = 8;
+    private static final int BATCH_SIZE = 64;
+
+    @Param({"1", "2", "4"})
+    public int replicas;
+
+    /**
+     * ND4J threads per op, 0 keeps ND4J's own default.
+     */
+    @Param({"0", "1", "2"})
+    public int threads;
+
+    private DQNNetwork network;
+    private TransitionBatch[] batches;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (threads > 0) {
+            // Every parameter combination runs in its own fork, no need to restore it
+            DataParallelTuner.applyThreads(threads);
+        }
+        network = new DQNNetwork();
+        network.enableDataParallel(replicas);
+        ReplayBuffer buffer = BenchmarkData.filledBuffer(10_000, 5_000);
+        batches = new TransitionBatch[SAMPLED_BATCHES];
+        for (int i = 0; i < SAMPLED_BATCHES; i++) {
+            batches[i] = buffer.sampleBatch(BATCH_SIZE);
+        }
+    }
+
+    @Benchmark
+    public float[] train() {
+        return network.train(batches[next++ % SAMPLED_BATCHES]);
+    }
+}
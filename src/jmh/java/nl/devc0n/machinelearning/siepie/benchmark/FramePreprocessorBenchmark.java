@@ -0,0 +1,149 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.browser.FrameDecoder;
+import nl.devc0n.machinelearning.siepie.browser.FramePreprocessor;
+import nl.devc0n.machinelearning.siepie.environment.LaneGameSimulator;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Decoding and downscaling a captured JPEG frame, the CPU side of every browser step.
+ * <p>
+ * Runs on JPEG screenshots recorded from the game when {@code -Dsiepie.jmh.payloads=<dir>}
+ * points at them, otherwise on simulator frames blown up to the browser viewport size.
+ * {@link #decodeScaled()} decodes the game region of the same payloads scaled down to the
+ * frame size beforehand, like Chrome does for {@code GameEnvironment.captureFrame()}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FramePreprocessorBenchmark {
+
+    // Viewport of the headless browser and the game region within it
+    private static final int VIEWPORT_WIDTH = 500;
+    private static final int VIEWPORT_HEIGHT = 700;
+    private static final Rectangle GAME_CLIP = new Rectangle(75, 230, 350, 350);
+    private static final int SYNTHETIC_PAYLOADS = 16;
+
+    private String[] payloads;
+    private BufferedImage[] decoded;
+    private String[] scaledPayloads;
+    private FrameDecoder decoder;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String recorded = System.getProperty("siepie.jmh.payloads");
+        List<String> encoded = recorded != null ? readPayloads(Path.of(recorded)) : syntheticPayloads();
+        payloads = encoded.toArray(String[]::new);
+        decoded = new BufferedImage[payloads.length];
+        scaledPayloads = new String[payloads.length];
+        for (int i = 0; i < payloads.length; i++) {
+            decoded[i] = FramePreprocessor.decode(payloads[i]);
+            scaledPayloads[i] = scaledPayload(decoded[i]);
+        }
+        decoder = new FrameDecoder();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        decoder.close();
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return FramePreprocessor.decode(payloads[next++ % payloads.length]);
+    }
+
+    @Benchmark
+    public BufferedImage preProcess() {
+        return FramePreprocessor.preProcess(decoded[next++ % decoded.length], GAME_CLIP);
+    }
+
+    @Benchmark
+    public BufferedImage decodeAndPreProcess() throws IOException {
+        return FramePreprocessor.preProcess(FramePreprocessor.decode(payloads[next++ % payloads.length]), GAME_CLIP);
+    }
+
+    @Benchmark
+    public byte[] decodeScaled() throws IOException {
+        return decoder.decode(scaledPayloads[next++ % scaledPayloads.length]);
+    }
+
+    /**
+     * The game region area-averaged down to the frame size, as JPEG.
+     */
+    private static String scaledPayload(BufferedImage viewport) throws IOException {
+        var scaled = new BufferedImage(FramePreprocessor.FRAME_WIDTH, FramePreprocessor.FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.drawImage(viewport.getSubimage(GAME_CLIP.x, GAME_CLIP.y, GAME_CLIP.width, GAME_CLIP.height)
+                        .getScaledInstance(scaled.getWidth(), scaled.getHeight(), Image.SCALE_AREA_AVERAGING),
+                0, 0, null);
+        g.dispose();
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(scaled, "jpg", out);
+        return Base64.getEncoder().encodeToString(out.toByteArray());
+    }
+
+    private static List<String> readPayloads(Path directory) throws IOException {
+        List<String> encoded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".jpg")).sorted().toList()) {
+                encoded.add(Base64.getEncoder().encodeToString(Files.readAllBytes(file)));
+            }
+        }
+        if (encoded.isEmpty()) {
+            throw new IOException("No .jpg payloads in " + directory);
+        }
+        return encoded;
+    }
+
+    private static List<String> syntheticPayloads() throws IOException {
+        var simulator = new LaneGameSimulator(BenchmarkData.SEED);
+        simulator.start();
+        List<String> encoded = new ArrayList<>();
+        for (int i = 0; i < SYNTHETIC_PAYLOADS; i++) {
+            simulator.performAction(Action.NOTHING);
+            if (simulator.detectDeathScreen()) simulator.restartGame();
+
+            var viewport = new BufferedImage(VIEWPORT_WIDTH, VIEWPORT_HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = viewport.createGraphics();
+            g.setColor(new Color(200, 30, 40));
+            g.fillRect(0, 0, VIEWPORT_WIDTH, VIEWPORT_HEIGHT);
+            g.drawImage(simulator.takeScreenshot(), GAME_CLIP.x, GAME_CLIP.y, GAME_CLIP.width, GAME_CLIP.height, null);
+            g.dispose();
+
+            var out = new ByteArrayOutputStream();
+            ImageIO.write(viewport, "jpg", out);
+            encoded.add(Base64.getEncoder().encodeToString(out.toByteArray()));
+        }
+        return encoded;
+    }
+}
@@ -0,0 +1,70 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.environment.LaneGameSimulator;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.FrameStack;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-step frame stack work: pushing a captured frame and handing the stack to the network.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameStackBenchmark {
+
+    private static final int FRAMES = 64;
+
+    private FrameStack frameStack;
+    private BufferedImage[] frames;
+    private float[] batch;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frameStack = BenchmarkData.frameStack(4);
+        var simulator = new LaneGameSimulator(BenchmarkData.SEED);
+        simulator.start();
+        frames = new BufferedImage[FRAMES];
+        for (int i = 0; i < FRAMES; i++) {
+            simulator.performAction(Action.NOTHING);
+            if (simulator.detectDeathScreen()) simulator.restartGame();
+            frames[i] = simulator.takeScreenshot();
+        }
+        batch = new float[4 * 84 * 84];
+    }
+
+    @Benchmark
+    public FrameStack push() {
+        frameStack.push(frames[next++ & (FRAMES - 1)]);
+        return frameStack;
+    }
+
+    @Benchmark
+    public INDArray toINDArray() {
+        return frameStack.toINDArray();
+    }
+
+    @Benchmark
+    public float[] copyInto() {
+        frameStack.copyInto(batch, 0);
+        return batch;
+    }
+}
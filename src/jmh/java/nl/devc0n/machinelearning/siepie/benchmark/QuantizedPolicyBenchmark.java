@@ -0,0 +1,52 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Greedy action selection with the float network against the int8 quantized actor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class QuantizedPolicyBenchmark {
+
+    @Param({"false", "true"})
+    public boolean quantized;
+
+    private DQNNetwork network;
+    private INDArray state;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = new DQNNetwork();
+        if (quantized) {
+            network.enableQuantizedActor();
+        }
+        state = BenchmarkData.frameStack(4).toINDArray();
+    }
+
+    @Benchmark
+    public Action selectAction() {
+        // Epsilon 0, always a forward pass
+        return network.selectAction(state, 0.0);
+    }
+}
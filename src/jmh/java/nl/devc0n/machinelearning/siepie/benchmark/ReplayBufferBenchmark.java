@@ -0,0 +1,56 @@
+package nl.devc0n.machinelearning.siepie.benchmark;
+
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learner-side replay work at several buffer sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBufferBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int bufferSize;
+
+    private ReplayBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        buffer = BenchmarkData.filledBuffer(bufferSize, bufferSize);
+    }
+
+    @Benchmark
+    public TransitionBatch sampleBatch(BatchSize batch) {
+        return buffer.sampleBatch(batch.batchSize);
+    }
+
+    @Benchmark
+    public int getTotalSteps() {
+        return buffer.getTotalSteps();
+    }
+
+    @State(Scope.Thread)
+    public static class BatchSize {
+        @Param({"32", "128"})
+        public int batchSize;
+    }
+}
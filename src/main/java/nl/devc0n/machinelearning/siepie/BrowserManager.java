@@ -1,6 +1,21 @@
 package nl.devc0n.machinelearning.siepie;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.browser.BrowserSettings;
+import nl.devc0n.machinelearning.siepie.browser.BrowserTransport;
+import nl.devc0n.machinelearning.siepie.browser.CaptureMode;
+import nl.devc0n.machinelearning.siepie.browser.CdpChannel;
+import nl.devc0n.machinelearning.siepie.browser.CdpClient;
+import nl.devc0n.machinelearning.siepie.browser.FrameDecoder;
+import nl.devc0n.machinelearning.siepie.browser.FramePreprocessor;
+import nl.devc0n.machinelearning.siepie.browser.GamePage;
+import nl.devc0n.machinelearning.siepie.browser.GameStateProbe;
+import nl.devc0n.machinelearning.siepie.browser.KeyInput;
+import nl.devc0n.machinelearning.siepie.browser.ScreencastCapture;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
 import nl.devc0n.machinelearning.siepie.model.Action;
 import org.openqa.selenium.By;
 import org.openqa.selenium.Dimension;
@@ -11,140 +26,266 @@ import org.openqa.selenium.interactions.Actions;
 import org.openqa.selenium.support.ui.ExpectedConditions;
 import org.openqa.selenium.support.ui.WebDriverWait;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Duration;
-import java.util.Base64;
+import java.util.List;
 import java.util.Map;
 
 @Slf4j
-public class BrowserManager {
-
-    private final Map<String, Object> params = Map.of(
-            "clip", Map.of(
-                    "x", 75,
-                    "y", 230,
-                    "width", 350,
-                    "height", 350,
-                    "scale", 1),
-            "format", "jpeg",
-            "quality", 80);
+public class BrowserManager implements GameEnvironment {
+
+    private static final Duration FRAME_WAIT = Duration.ofMillis(100);
+    // Game over score counts up, it is final once it stops changing for this long
+    private static final Duration SCORE_QUIET = Duration.ofMillis(300);
+    private static final Duration SCORE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RESTART_TIMEOUT = Duration.ofSeconds(15);
+    private final BrowserSettings settings;
+    private final StepMetrics metrics;
+    private final FrameDecoder decoder = new FrameDecoder();
     private ChromeDriver driver;
     private WebDriverWait wait;
     private Actions actions;
+    private ScreencastCapture screencast;
+    private GameStateProbe probe;
+    // Commands for the game page, through ChromeDriver or straight over DevTools
+    private CdpChannel cdp;
+    private CdpClient devTools;
+    private KeyInput keys;
+
+    public BrowserManager(BrowserSettings settings, StepMetrics metrics) {
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    public BrowserManager(BrowserSettings settings) {
+        this(settings, StepMetrics.standalone());
+    }
 
-    public void startBrowser() {
+    public BrowserManager() {
+        this(BrowserSettings.defaults());
+    }
+
+    @Override
+    public void start() {
         ChromeOptions options = new ChromeOptions();
         options.addArguments("--mute-audio"); // Mute audio
 
         // Optional: Run headless (no UI) for faster execution
-        options.addArguments("--headless");
+        if (settings.headless()) {
+            options.addArguments("--headless");
+        }
+        if (settings.transport() == BrowserTransport.DEVTOOLS) {
+            // Chrome rejects WebSocket clients that send an Origin it does not know
+            options.addArguments("--remote-allow-origins=*");
+        }
 
         driver = new ChromeDriver(options);
-        driver.manage().window().setSize(new Dimension(400, 900));
-        driver.executeCdpCommand("Page.enable", Map.of());
+        driver.manage().window().setSize(new Dimension(GamePage.VIEWPORT_WIDTH, GamePage.VIEWPORT_HEIGHT));
+        if (settings.transport() == BrowserTransport.DEVTOOLS) {
+            connectDevTools();
+        } else {
+            cdp = (method, params) -> {
+                long start = System.nanoTime();
+                var result = driver.executeCdpCommand(method, params);
+                metrics.recordCommand("selenium", method, System.nanoTime() - start);
+                return result;
+            };
+        }
+        cdp.execute("Page.enable", Map.of());
+        probe = new GameStateProbe(cdp);
+        probe.install();
         var position = driver.manage().window().getPosition();
 
         driver.manage().window().setPosition(position);
-        driver.get("https://sinterklaasspel.hema.nl");
+        driver.get(settings.url());
 
         this.wait = new WebDriverWait(driver, Duration.ofSeconds(60));
 
-        var allowCookiesButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.id("CybotCookiebotDialogBodyLevelButtonLevelOptinAllowAll")));
+        var allowCookiesButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.id(GamePage.COOKIE_BUTTON_ID)));
         allowCookiesButton.click();
         log.debug("Allow cookies button was clicked");
 
-        var playButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className("launch-button")));
+        var playButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className(GamePage.PLAY_BUTTON_CLASS)));
         playButton.click();
         log.debug("Play button was clicked");
 
-        var closeButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className("close")));
+        var closeButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className(GamePage.CLOSE_BUTTON_CLASS)));
         closeButton.click();
         log.debug("Close button was clicked");
 
         actions = new Actions(driver);
+
+        if (settings.captureMode() == CaptureMode.SCREENCAST) {
+            screencast = new ScreencastCapture(driver, GamePage.GAME_CLIP, metrics);
+            screencast.start();
+        }
     }
 
+    /**
+     * Attach to the game page over Chrome's own DevTools WebSocket. ChromeDriver stays connected
+     * for the clicks into the game, keys and captures skip it.
+     */
+    private void connectDevTools() {
+        var chromeOptions = (Map<?, ?>) driver.getCapabilities().getCapability("goog:chromeOptions");
+        String address = String.valueOf(chromeOptions.get("debuggerAddress"));
+        URI webSocketUrl;
+        try (var http = HttpClient.newHttpClient()) {
+            var response = http.send(HttpRequest.newBuilder(URI.create("http://" + address + "/json/version")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            webSocketUrl = URI.create(new ObjectMapper().readTree(response.body()).path("webSocketDebuggerUrl").asText());
+        } catch (IOException e) {
+            throw new IllegalStateException("No DevTools endpoint at " + address, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while looking up the DevTools endpoint", e);
+        }
+
+        devTools = CdpClient.connect(webSocketUrl);
+        devTools.onLatency((method, nanos) -> metrics.recordCommand("devtools", method, nanos));
+        String targetId = findPageTarget();
+        var attached = devTools.execute(null, "Target.attachToTarget", Map.of("targetId", targetId, "flatten", true));
+        String sessionId = attached.get("sessionId").toString();
+        cdp = devTools.channel(sessionId);
+        keys = new KeyInput(devTools, sessionId);
+        log.debug("Attached to page {} over DevTools at {}", targetId, webSocketUrl);
+    }
+
+    /**
+     * The page target ChromeDriver opened, found by type and URL. The window handle only
+     * decides between pages at the same URL, its format is ChromeDriver's own.
+     */
+    @SuppressWarnings("unchecked")
+    private String findPageTarget() {
+        String url = driver.getCurrentUrl();
+        var targets = (List<Map<String, Object>>) devTools.execute(null, "Target.getTargets", Map.of()).get("targetInfos");
+        List<String> pages = targets.stream()
+                .filter(target -> "page".equals(target.get("type")) && url.equals(target.get("url")))
+                .map(target -> target.get("targetId").toString())
+                .toList();
+        if (pages.size() == 1) {
+            return pages.get(0);
+        }
+        String handle = driver.getWindowHandle();
+        return pages.stream()
+                .filter(handle::endsWith)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException(
+                        "Found " + pages.size() + " page targets at " + url + ", none for window " + handle));
+    }
+
+    /**
+     * Commands for the game page, over the configured transport.
+     */
+    public CdpChannel cdp() {
+        return cdp;
+    }
+
+    @Override
     public void performAction(Action action) {
-        var start = System.currentTimeMillis();
+        if (keys != null) {
+            keys.press(action);
+            return;
+        }
+        long start = System.nanoTime();
         switch (action) {
             case UP -> actions.sendKeys(Keys.ARROW_UP).perform();
             case LEFT -> actions.sendKeys(Keys.ARROW_LEFT).perform();
             case RIGHT -> actions.sendKeys(Keys.ARROW_RIGHT).perform();
             case DOWN -> actions.sendKeys(Keys.ARROW_DOWN).perform();
             case NOTHING -> {
+                return;
             }
         }
-        log.debug("Performing action took: {}ms", System.currentTimeMillis() - start);
+        metrics.recordCommand("selenium", "Actions.sendKeys", System.nanoTime() - start);
     }
 
+    @Override
     public void restartGame() throws InterruptedException {
-        var startGameButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className("icon-only")));
+        var startGameButton = wait.until(ExpectedConditions.presenceOfElementLocated(By.className(GamePage.RESTART_BUTTON_CLASS)));
         startGameButton.click();
-        Thread.sleep(4000);
+        if (!probe.awaitGameStarted(RESTART_TIMEOUT)) {
+            log.warn("Game did not restart within {}s", RESTART_TIMEOUT.toSeconds());
+        }
     }
 
+    @Override
     public boolean detectDeathScreen() {
-        try {
-            driver.findElement(By.className("score-points-current"));
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+        return probe.read().dead();
     }
 
-    public int extractFinalScore() throws InterruptedException {
-        var score = 0;
-        var changing = true;
-        while (changing) {
-            Thread.sleep(500);
-            int newScore = Integer.parseInt(driver.findElement(By.className("score-points-current")).getText());
-            if (score == newScore && score > 0) {
-                changing = false;
-            } else {
-                score = newScore;
-            }
+    @Override
+    public int extractFinalScore() {
+        var score = probe.awaitSettledScore(SCORE_QUIET, SCORE_TIMEOUT);
+        if (score.isEmpty()) {
+            log.warn("Final score did not settle within {}s, using the score shown now", SCORE_TIMEOUT.toSeconds());
+            return probe.read().score();
         }
-        return score;
+        return score.getAsInt();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
     }
 
-    public void closeBrowser() {
+    @Override
+    public void close() {
+        if (screencast != null) {
+            log.info("Screencast capture-to-available latency avg: {}ms, max: {}ms over {} frames",
+                    String.format("%.1f", screencast.getAverageLatencyMillis()),
+                    screencast.getMaxLatencyMillis(), screencast.getFrameCount());
+            screencast.close();
+        }
+        if (devTools != null) {
+            devTools.close();
+        }
         if (driver != null) {
             driver.quit();
         }
+        decoder.close();
     }
 
+    @Override
     public BufferedImage takeScreenshot() throws IOException {
-        var start = System.currentTimeMillis();
-        Map<String, Object> result =
-                driver.executeCdpCommand("Page.captureScreenshot", params);
-
-        String base64 = result.get("data").toString();
-        byte[] decoded = Base64.getDecoder().decode(base64);
-        var screenshot = ImageIO.read(new ByteArrayInputStream(decoded));
+        if (screencast != null) {
+            try {
+                BufferedImage latest = screencast.takeLatest(FRAME_WAIT).image();
+                // The capture hands out the same image until the next frame arrives
+                return new BufferedImage(latest.getColorModel(), latest.copyData(null), false, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a screencast frame", e);
+            }
+        }
 
-        var output = preProcess(screenshot, 84, 84);
+        Map<String, Object> result = cdp.execute("Page.captureScreenshot", GamePage.SCREENSHOT_PARAMS);
 
-        log.debug("Screenshot capture duration: {}", System.currentTimeMillis() - start);
+        long start = System.nanoTime();
+        var screenshot = FramePreprocessor.decode(result.get("data").toString());
+        var output = FramePreprocessor.preProcess(screenshot);
+        metrics.record(StepStage.PREPROCESS, start);
         return output;
     }
 
-    private BufferedImage preProcess(BufferedImage src, int targetW, int targetH) throws IOException {
-        BufferedImage out = new BufferedImage(targetW, targetH, BufferedImage.TYPE_BYTE_GRAY);
-        Graphics2D g = out.createGraphics();
-
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-
-        g.drawImage(src, 0, 0, targetW, targetH, null);
-        g.dispose();
+    /**
+     * Chrome scales the game region down to the frame size, OpenCV decodes it to grayscale.
+     */
+    @Override
+    public byte[] captureFrame() throws IOException {
+        if (screencast != null) {
+            return GameEnvironment.super.captureFrame();
+        }
+        Map<String, Object> result = cdp.execute("Page.captureScreenshot", GamePage.FRAME_PARAMS);
 
-//        File outputfile = new File("src/main/resources/screenshots/" + System.currentTimeMillis() + "-proc.png");
-//        ImageIO.write(out, "png", outputfile);
-        return out;
+        long start = System.nanoTime();
+        byte[] frame = decoder.decode(result.get("data").toString());
+        metrics.record(StepStage.PREPROCESS, start);
+        return frame;
     }
 
 }
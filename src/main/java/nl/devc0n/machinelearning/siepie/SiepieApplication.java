@@ -2,104 +2,245 @@ package nl.devc0n.machinelearning.siepie;
 
 import lombok.extern.slf4j.Slf4j;
 import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
-import nl.devc0n.machinelearning.siepie.memory.MovingAverageTracker;
+import nl.devc0n.machinelearning.siepie.browser.BrowserContextSession;
+import nl.devc0n.machinelearning.siepie.browser.BrowserMode;
+import nl.devc0n.machinelearning.siepie.browser.SharedChrome;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointManager;
+import nl.devc0n.machinelearning.siepie.distributed.ActorClient;
+import nl.devc0n.machinelearning.siepie.distributed.DistributedLearner;
+import nl.devc0n.machinelearning.siepie.distributed.DistributedRole;
+import nl.devc0n.machinelearning.siepie.distributed.DistributedSettings;
+import nl.devc0n.machinelearning.siepie.environment.EnvironmentType;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.environment.LaneGameSimulator;
+import nl.devc0n.machinelearning.siepie.memory.MappedEpisodes;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+import nl.devc0n.machinelearning.siepie.metrics.TrainingStatistics;
 import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
 import nl.devc0n.machinelearning.siepie.model.Action;
 import nl.devc0n.machinelearning.siepie.model.Episode;
 import nl.devc0n.machinelearning.siepie.model.FrameStack;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import nl.devc0n.machinelearning.siepie.offline.OfflineTrainer;
+import nl.devc0n.machinelearning.siepie.parallel.ParallelTraining;
+import nl.devc0n.machinelearning.siepie.schedule.ActionRepeat;
+import nl.devc0n.machinelearning.siepie.schedule.StepScheduler;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.indexing.NDArrayIndex;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 @Slf4j
 public class SiepieApplication {
 
+    // An actor's episodes go to the learner process, its own buffer stays empty
+    private static final int ACTOR_REPLAY_CAPACITY = 1024;
+    private static final Duration FIRST_WEIGHTS_TIMEOUT = Duration.ofMinutes(1);
+
     public static void main(String[] args) throws Exception {
-        SpringApplication.run(SiepieApplication.class, args);
+        var context = SpringApplication.run(SiepieApplication.class, args);
+        var properties = context.getBean(SiepieProperties.class);
+        var metrics = context.getBean(StepMetrics.class);
+
+        if (properties.offline().enabled()) {
+            trainOffline(properties);
+            context.close();
+            return;
+        }
 
-        ReplayBuffer sharedReplayBuffer = new ReplayBuffer(1000);
-        AgentSiepie agent = new AgentSiepie(sharedReplayBuffer);
-        MovingAverageTracker movingAvg20 = new MovingAverageTracker(20);
-        MovingAverageTracker movingAvg100 = new MovingAverageTracker(100);
+        var distributed = properties.distributed();
+        if (distributed.role() == DistributedRole.LEARNER) {
+            var learner = new DistributedLearner(properties, metrics);
+            Runtime.getRuntime().addShutdownHook(new Thread(learner::close, "learner-close"));
+            learner.run();
+            return;
+        }
+        boolean actor = distributed.role() == DistributedRole.ACTOR;
+        if (actor && properties.workers() > 1) {
+            log.warn("An actor process plays one game, start more actor processes instead of {} workers", properties.workers());
+        }
 
-//       Optional: Load previous checkpoint
-        try {
-            agent.load("trained-start.zip");
-            log.info("Starting from checkpoint");
-        } catch (IOException e) {
-            log.info("Starting fresh training");
+        if (properties.workers() > 1 && !actor) {
+            var training = new ParallelTraining(properties, metrics, environmentFactory(properties, metrics));
+            if (properties.vectorized()) {
+                training.startVectorized();
+            } else {
+                training.start();
+            }
+            return;
         }
 
-        BrowserManager browserManager = new BrowserManager();
-        browserManager.startBrowser();
+        ReplayBuffer sharedReplayBuffer = new ReplayBuffer(actor ? ACTOR_REPLAY_CAPACITY : properties.replay().capacity());
+        AgentSiepie agent = new AgentSiepie(sharedReplayBuffer, properties.asyncLearner() && !actor, properties.quantizedActor());
+        if (!actor) {
+            agent.enableDataParallel(properties.dataParallel());
+        }
+        if (properties.replay().persist() && !actor) {
+            agent.persistEpisodes(properties.replay().directory());
+        }
+        metrics.bind(agent, sharedReplayBuffer);
+        var statistics = new TrainingStatistics(properties.statistics(), agent::getTotalSteps);
+        agent.trackStatistics(statistics);
+        statistics.start();
+
+        var checkpoints = new CheckpointManager(agent, properties.checkpoint());
+        if (actor) {
+            // The learner owns the weights and checkpoints
+            connectToLearner(distributed, agent, metrics);
+        } else {
+            restoreCheckpoint(checkpoints, agent);
+        }
 
-        int episodeNum = 0;
+        GameEnvironment environment = environmentFactory(properties, metrics).get();
+        environment.start();
+        var settings = properties.step();
+        var scheduler = new StepScheduler(settings.decisionPeriod(), settings.overrunPolicy(), metrics);
+        var actionRepeat = new ActionRepeat(settings, metrics);
+
+        // Continue the episode numbering of a restored checkpoint
+        int episodeNum = agent.getEpisodeCount();
         while (true) {
             episodeNum++;
-            Episode episode = new Episode();
             agent.startEpisode();
 
-            var frameStack = new FrameStack(4, browserManager.takeScreenshot());
+            var frameStack = new FrameStack(4, GameEnvironment.FRAME_HEIGHT, GameEnvironment.FRAME_WIDTH, environment.captureFrame());
+            Episode episode = new Episode(frameStack.newestFrame());
             var state = frameStack.toINDArray();
 
             boolean died = false;
 
-            var stepCount = 0;
+            scheduler.start();
             while (!died) {
-                stepCount++;
                 long start = System.nanoTime();
                 // Select action
                 Action action = agent.selectAction(state);
+                metrics.record(StepStage.INFERENCE, start);
 
-                browserManager.performAction(action);
-
-                var screenshot = browserManager.takeScreenshot();
-                frameStack.push(screenshot);
+                // Action, capture and death detection, over several frames with action repeat
+                var observation = actionRepeat.perform(environment, action);
 
+                long t = System.nanoTime();
+                frameStack.push(observation.frame());
                 INDArray nextState = frameStack.toINDArray();
+                t = metrics.record(StepStage.FRAME_STACK, t);
 
-                died = browserManager.detectDeathScreen(); // Your method
+                died = observation.died();
 
                 if (!died) {
                     // Record the step
-                    agent.recordStep(episode, state, action, nextState);
+                    agent.recordStep(episode, action, frameStack.newestFrame());
+                    metrics.record(StepStage.TRAIN, t);
                 }
 
                 state = nextState;
-                long remaining = 200 - (System.nanoTime() - start) / 1_000_000;
-                if (remaining > 0) Thread.sleep(remaining);
+                if (environment.isRealTime()) {
+                    scheduler.awaitNextStep();
+                }
             }
 
-            int finalScore = browserManager.extractFinalScore();
+            long deadTimeStart = System.nanoTime();
+            int finalScore = environment.extractFinalScore();
             agent.endEpisode(episode, finalScore, episodeNum);
 
-            // Update moving averages
-            double avg20 = movingAvg20.addScore(stepCount);
-            double avg100 = movingAvg100.addScore(stepCount);
+            environment.restartGame();
+            metrics.recordDeadTime(deadTimeStart);
 
-            browserManager.restartGame();
-
-            // Save checkpoint every 10 episodes
-            if (episodeNum % 10 == 0 && episodeNum > 0) {
-                try {
-                    agent.save("checkpoint_" + episodeNum + ".zip");
-                } catch (Exception e) {
-                    e.printStackTrace();
+            // Snapshot now, the checkpoint is written in the background
+            if (episodeNum % properties.checkpoint().episodeInterval() == 0 && episodeNum > 0) {
+                if (!actor) {
+                    checkpoints.save();
                 }
-                log.info("==> Episode {} | MA-20: {} | MA-100: {}, Max steps: {}",
-                        episodeNum, avg20, avg100, movingAvg100.getHiScore());
+                log.info("==> Episode {} | {}", episodeNum, statistics.summary());
             }
         }
     }
 
+    /**
+     * Play for a learner in another process: send it the finished episodes and act with the
+     * weights it broadcasts. Waits a while for the first weights.
+     */
+    private static void connectToLearner(DistributedSettings settings, AgentSiepie agent, StepMetrics metrics)
+            throws IOException, InterruptedException {
+        String name = InetAddress.getLocalHost().getHostName() + "-" + ProcessHandle.current().pid();
+        var client = new ActorClient(settings, name, (version, weights) -> agent.loadWeights(weights));
+        client.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(client::close, "actor-client-close"));
+        agent.useRemoteLearner(client);
+        metrics.bind(client);
+        if (!client.awaitWeights(0, FIRST_WEIGHTS_TIMEOUT)) {
+            log.warn("No weights from the learner at {}:{} within {}s, playing with fresh weights until they arrive",
+                    settings.host(), settings.port(), FIRST_WEIGHTS_TIMEOUT.toSeconds());
+        }
+    }
+
+    /**
+     * Continue from the newest checkpoint, or from trained-start.zip when there is none.
+     */
+    public static void restoreCheckpoint(CheckpointManager checkpoints, AgentSiepie agent) {
+        try {
+            if (checkpoints.restoreLatest().isPresent()) {
+                return;
+            }
+            CheckpointManager.restore(Path.of("trained-start.zip"), agent);
+            log.info("Starting from checkpoint");
+        } catch (IOException e) {
+            log.info("Starting fresh training");
+        }
+    }
+
+    /**
+     * Train on the recorded episode log only, no game is played.
+     */
+    private static void trainOffline(SiepieProperties properties) throws IOException, InterruptedException {
+        var settings = properties.offline();
+        var network = new DQNNetwork();
+        if (Files.exists(settings.model())) {
+            network.load(settings.model().toString());
+            log.info("Offline training continues from {}", settings.model());
+        }
+        if (properties.dataParallel().enabled()) {
+            network.enableDataParallel(properties.dataParallel(), settings.batchSize());
+        }
+        try (var episodes = MappedEpisodes.open(properties.replay().directory())) {
+            new OfflineTrainer(network, episodes, settings).run();
+        }
+    }
+
+    /**
+     * Creates an environment per actor. In the shared browser mode they are all browser contexts
+     * of one Chrome.
+     */
+    public static Supplier<GameEnvironment> environmentFactory(SiepieProperties properties, StepMetrics metrics) {
+        var browser = properties.browser();
+        if (properties.environment() == EnvironmentType.BROWSER && browser.mode() == BrowserMode.SHARED) {
+            var chrome = new SharedChrome(browser);
+            return () -> new BrowserContextSession(chrome, browser, metrics);
+        }
+        return () -> createEnvironment(properties, metrics);
+    }
+
+    public static GameEnvironment createEnvironment(SiepieProperties properties, StepMetrics metrics) {
+        return switch (properties.environment()) {
+            case BROWSER -> new BrowserManager(properties.browser(), metrics);
+            case SIMULATOR -> new LaneGameSimulator();
+        };
+    }
+
     /**
      * Debug method: Convert INDArray frame stack back to images and save them
      * Useful for verifying what the network actually sees
@@ -0,0 +1,62 @@
+package nl.devc0n.machinelearning.siepie;
+
+import nl.devc0n.machinelearning.siepie.browser.BrowserPoolSettings;
+import nl.devc0n.machinelearning.siepie.browser.BrowserSettings;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointSettings;
+import nl.devc0n.machinelearning.siepie.distributed.DistributedSettings;
+import nl.devc0n.machinelearning.siepie.environment.EnvironmentType;
+import nl.devc0n.machinelearning.siepie.memory.ReplaySettings;
+import nl.devc0n.machinelearning.siepie.metrics.StatisticsSettings;
+import nl.devc0n.machinelearning.siepie.network.DataParallelSettings;
+import nl.devc0n.machinelearning.siepie.offline.OfflineSettings;
+import nl.devc0n.machinelearning.siepie.schedule.StepSettings;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Training settings from the {@code siepie} section of application.yaml.
+ *
+ * @param environment which game to train on
+ * @param browser     settings for the browser game
+ * @param pool        supervision of the browsers of parallel workers
+ * @param workers     number of environments, more than one runs {@link nl.devc0n.machinelearning.siepie.parallel.ParallelTraining}
+ * @param vectorized  step parallel environments in lockstep with batched inference
+ * @param asyncLearner train on a dedicated learner thread instead of inline in the step loop
+ * @param quantizedActor pick actions with an int8 copy of the network
+ * @param step        pacing of the step loop
+ * @param replay      replay memory and its on-disk episode log
+ * @param offline     training on the episode log without playing
+ * @param checkpoint  periodic checkpoints of the training state
+ * @param statistics  training statistics time series
+ * @param distributed actors and learner in separate processes
+ * @param dataParallel training updates split over model replicas on several cores
+ */
+@ConfigurationProperties(prefix = "siepie")
+public record SiepieProperties(@DefaultValue("BROWSER") EnvironmentType environment,
+                               @DefaultValue BrowserSettings browser,
+                               @DefaultValue BrowserPoolSettings pool,
+                               @DefaultValue("1") int workers,
+                               @DefaultValue("false") boolean vectorized,
+                               @DefaultValue("false") boolean asyncLearner,
+                               @DefaultValue("false") boolean quantizedActor,
+                               @DefaultValue StepSettings step,
+                               @DefaultValue ReplaySettings replay,
+                               @DefaultValue OfflineSettings offline,
+                               @DefaultValue CheckpointSettings checkpoint,
+                               @DefaultValue StatisticsSettings statistics,
+                               @DefaultValue DistributedSettings distributed,
+                               @DefaultValue DataParallelSettings dataParallel) {
+
+    public static SiepieProperties defaults() {
+        return new SiepieProperties(EnvironmentType.BROWSER, BrowserSettings.defaults(), BrowserPoolSettings.defaults(),
+                1, false, false, false,
+                StepSettings.defaults(), ReplaySettings.defaults(), OfflineSettings.defaults(),
+                CheckpointSettings.defaults(), StatisticsSettings.defaults(), DistributedSettings.defaults(),
+                DataParallelSettings.defaults());
+    }
+
+    public SiepieProperties withWorkers(int workers) {
+        return new SiepieProperties(environment, browser, pool, workers, vectorized, asyncLearner, quantizedActor,
+                step, replay, offline, checkpoint, statistics, distributed, dataParallel);
+    }
+}
@@ -2,16 +2,25 @@ package nl.devc0n.machinelearning.siepie.agent;
 
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.distributed.ActorClient;
+import nl.devc0n.machinelearning.siepie.memory.EpisodeLog;
+import nl.devc0n.machinelearning.siepie.memory.MappedEpisodes;
 import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.metrics.TrainingStatistics;
 import nl.devc0n.machinelearning.siepie.model.Action;
 import nl.devc0n.machinelearning.siepie.model.Episode;
 import nl.devc0n.machinelearning.siepie.model.GameStep;
 import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import nl.devc0n.machinelearning.siepie.network.DataParallelSettings;
+import nl.devc0n.machinelearning.siepie.network.NetworkSnapshot;
 import nl.devc0n.machinelearning.siepie.reward.RewardShaper;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
 import java.io.IOException;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 public class AgentSiepie {
@@ -21,6 +30,15 @@ public class AgentSiepie {
     private static final int BATCH_SIZE = 64;  // Was dit misschien 32?
     private static final int TRAIN_FREQUENCY = 50;  // Niet te vaak
     private static final int TARGET_UPDATE_FREQUENCY = 1000;  // Terug naar origineel
+    private static final boolean DOUBLE_DQN = false;
+    // Asynchronous learner
+    private static final int LEARNER_TARGET_UPDATE_INTERVAL = 1000;  // Learner updates
+    private static final int LEARNER_PUBLISH_INTERVAL = 4;  // Learner updates
+    private static final double LEARNER_MAX_UPDATES_PER_STEP = 1.0;
+    // Quantized actor
+    private static final int QUANTIZED_CHECK_EPISODES = 100;
+    private static final int QUANTIZED_CHECK_STACKS = 256;
+    private static final double QUANTIZED_MIN_AGREEMENT = 0.95;
     // Epsilon decay
     private static final double EPSILON_START = 0.30;
     private static final double EPSILON_END = 0.05;
@@ -28,66 +46,247 @@ public class AgentSiepie {
     private final DQNNetwork network;
     private final ReplayBuffer replayBuffer;
     private final RewardShaper rewardShaper;
-    // Getters for monitoring
-    @Getter
-    private double epsilon;
+    /**
+     * Set when training runs on its own thread instead of inline in {@link #recordStep}.
+     */
     @Getter
-    private int totalSteps;
+    private final Learner learner;
+    // Actors may run on several threads
+    private final AtomicInteger totalSteps = new AtomicInteger();
+    private final AtomicInteger episodeCount = new AtomicInteger();
+    // Getters for monitoring
     @Getter
-    private int episodeCount;
+    private volatile double epsilon;
+    private volatile EpisodeLog episodeLog;
+    private final boolean quantizedActor;
+    private volatile TrainingStatistics statistics;
+    /**
+     * Set in an actor process, finished episodes go to the learner process instead of training here.
+     */
+    private volatile ActorClient remoteLearner;
 
-    public AgentSiepie(ReplayBuffer replayBuffer) {
-        this.network = new DQNNetwork();
+    /**
+     * @param quantizedActor pick actions with an int8 copy of the network, see {@link DQNNetwork#enableQuantizedActor()}
+     */
+    public AgentSiepie(ReplayBuffer replayBuffer, boolean asyncLearner, boolean quantizedActor) {
+        this.network = new DQNNetwork(DOUBLE_DQN);
+        this.quantizedActor = quantizedActor;
+        if (quantizedActor) {
+            network.enableQuantizedActor();
+        }
         this.rewardShaper = new RewardShaper();
         this.epsilon = EPSILON_START;
-        this.totalSteps = 0;
-        this.episodeCount = 0;
         this.replayBuffer = replayBuffer;
+        if (asyncLearner) {
+            this.learner = new Learner(network, replayBuffer, BATCH_SIZE, LEARNER_TARGET_UPDATE_INTERVAL,
+                    LEARNER_PUBLISH_INTERVAL, LEARNER_MAX_UPDATES_PER_STEP);
+            learner.start();
+        } else {
+            this.learner = null;
+        }
+    }
+
+    public AgentSiepie(ReplayBuffer replayBuffer, boolean asyncLearner) {
+        this(replayBuffer, asyncLearner, false);
+    }
+
+    public AgentSiepie(ReplayBuffer replayBuffer) {
+        this(replayBuffer, false);
     }
 
     public void startEpisode() {
-        episodeCount++;
+        episodeCount.incrementAndGet();
+    }
+
+    public int getTotalSteps() {
+        return totalSteps.get();
+    }
+
+    public int getEpisodeCount() {
+        return episodeCount.get();
     }
 
     public Action selectAction(INDArray frameStack) {
         return network.selectAction(frameStack, epsilon);
     }
 
-    public void recordStep(Episode currentEpisode, INDArray frameStack,
-                           Action action, INDArray nextFrameStack) {
-        GameStep step = new GameStep(frameStack, action, nextFrameStack,
-                currentEpisode.getSteps().size());
+    /**
+     * Select actions for several environments at once.
+     *
+     * @param frameStacks shape [N, K, H, W]
+     */
+    public Action[] selectActions(INDArray frameStacks) {
+        return network.selectActions(frameStacks, epsilon);
+    }
+
+    /**
+     * Record a step of the current episode.
+     *
+     * @param frame grayscale pixels of the frame observed after the action
+     */
+    public void recordStep(Episode currentEpisode, Action action, byte[] frame) {
+        GameStep step = new GameStep(frame, action, currentEpisode.getSteps().size());
         currentEpisode.addStep(step);
 
-        totalSteps++;
+        int steps = totalSteps.incrementAndGet();
+        if (learner != null || remoteLearner != null) {
+            // The learner thread trains on its own schedule
+            return;
+        }
 
         // Train periodically
-        if (totalSteps % TRAIN_FREQUENCY == 0 &&
+        if (steps % TRAIN_FREQUENCY == 0 &&
                 replayBuffer.getTotalSteps() >= BATCH_SIZE) {
-            List<GameStep> batch = replayBuffer.sampleBatch(BATCH_SIZE);
-            network.train(batch);
+            TransitionBatch batch = replayBuffer.sampleBatch(BATCH_SIZE);
+            float[] tdErrors = network.train(batch);
+            replayBuffer.updatePriorities(batch, tdErrors);
+            TrainingStatistics statistics = this.statistics;
+            if (statistics != null) {
+                statistics.recordUpdate(tdErrors, network.getLastLoss());
+            }
+            // Only does something with an actor replica
+            network.publishActorWeights();
         }
 
         // Update target network periodically
-        if (totalSteps % TARGET_UPDATE_FREQUENCY == 0) {
+        if (steps % TARGET_UPDATE_FREQUENCY == 0) {
             network.updateTargetNetwork();
-            System.out.println("Target network updated at step " + totalSteps);
+            System.out.println("Target network updated at step " + steps);
         }
     }
 
     public void endEpisode(Episode episode, int finalScore, int episodeNum) {
+        // Before finish() drops the frames leading up to the death
+        int length = episode.getSteps().size();
         episode.finish(finalScore);
 
 
         // Mark last 5 frames as terminal states with death penalty
         rewardShaper.applyRewards(episode);
 
-        // Add to replay buffer
-        replayBuffer.addEpisode(episode);
+        // Add to replay buffer, through the learner when it owns the buffer
+        ActorClient remoteLearner = this.remoteLearner;
+        if (remoteLearner != null) {
+            try {
+                remoteLearner.submit(episode, epsilon);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for the learner, episode {} is not sent", episodeNum);
+            }
+        } else if (learner != null) {
+            learner.submit(episode);
+        } else {
+            replayBuffer.addEpisode(episode);
+        }
+
+        if (episodeLog != null) {
+            episodeLog.append(episode);
+        }
 
         // Decay exploration rate
         epsilon = getEpsilon(episodeNum);
 
+        TrainingStatistics statistics = this.statistics;
+        if (statistics != null) {
+            statistics.recordEpisode(length, finalScore, epsilon);
+        }
+
+        if (quantizedActor && episodeCount.get() % QUANTIZED_CHECK_EPISODES == 0) {
+            checkQuantizedActor();
+        }
+
+    }
+
+    /**
+     * Play only: send finished episodes to a learner in another process and pick actions with
+     * the weights it sends back.
+     */
+    public void useRemoteLearner(ActorClient client) {
+        this.remoteLearner = client;
+    }
+
+    /**
+     * Add an episode that an actor process played, in the learner process.
+     *
+     * @param actorEpsilon exploration rate the actor played it with
+     */
+    public void ingest(Episode episode, double actorEpsilon) {
+        episodeCount.incrementAndGet();
+        totalSteps.addAndGet(episode.getSteps().size());
+        if (learner != null) {
+            learner.submit(episode);
+        } else {
+            replayBuffer.addEpisode(episode);
+        }
+        if (episodeLog != null) {
+            episodeLog.append(episode);
+        }
+        TrainingStatistics statistics = this.statistics;
+        if (statistics != null) {
+            statistics.recordEpisode(episode.getEpisodeLength(), episode.getFinalScore(), actorEpsilon);
+        }
+    }
+
+    /**
+     * The current training weights, for actors in other processes.
+     */
+    public float[] copyWeights() {
+        return network.copyParams();
+    }
+
+    /**
+     * Act with weights from a learner in another process.
+     */
+    public void loadWeights(float[] weights) {
+        network.loadParams(weights);
+    }
+
+    /**
+     * Split training updates over model replicas on several cores, see {@link DQNNetwork#enableDataParallel}.
+     */
+    public void enableDataParallel(DataParallelSettings settings) {
+        if (!settings.enabled()) return;
+        network.enableDataParallel(settings, BATCH_SIZE);
+    }
+
+    /**
+     * Record episodes and training updates, from the learner thread too when there is one.
+     */
+    public void trackStatistics(TrainingStatistics statistics) {
+        this.statistics = statistics;
+        if (learner != null) {
+            learner.trackStatistics(statistics);
+        }
+    }
+
+    /**
+     * Warm-start the replay buffer from the episode log in {@code directory} and append every
+     * episode finished from now on to it.
+     */
+    public void persistEpisodes(Path directory) throws IOException {
+        try (var mapped = MappedEpisodes.open(directory)) {
+            int episodes = replayBuffer.warmStart(mapped);
+            log.info("Replay buffer warm-started with {} episodes, {} steps", episodes, replayBuffer.getTotalSteps());
+        }
+        var episodeLog = new EpisodeLog(directory);
+        Runtime.getRuntime().addShutdownHook(new Thread(episodeLog::close, "episode-log-close"));
+        this.episodeLog = episodeLog;
+    }
+
+    /**
+     * Compare the greedy actions of the quantized actor with the float network on recorded
+     * frame stacks.
+     */
+    private void checkQuantizedActor() {
+        if (replayBuffer.getTotalSteps() < QUANTIZED_CHECK_STACKS) return;
+        INDArray stacks = replayBuffer.sampleBatch(QUANTIZED_CHECK_STACKS).states();
+        double agreement = network.quantizedAgreement(stacks);
+        if (agreement < QUANTIZED_MIN_AGREEMENT) {
+            log.warn("Quantized actor agrees with the float network on only {}% of recorded states",
+                    String.format("%.1f", agreement * 100));
+        } else {
+            log.info("Quantized actor agreement: {}%", String.format("%.1f", agreement * 100));
+        }
     }
 
     public void save(String path) throws IOException {
@@ -98,6 +297,33 @@ public class AgentSiepie {
         network.load(path);
     }
 
+    public NetworkSnapshot newSnapshot() {
+        return network.newSnapshot();
+    }
+
+    /**
+     * Copy the network into {@code into} and return the counters that go with it.
+     */
+    public TrainingState snapshot(NetworkSnapshot into) {
+        network.snapshot(into);
+        return new TrainingState(epsilon, totalSteps.get(), episodeCount.get());
+    }
+
+    /**
+     * Continue from a checkpoint.
+     *
+     * @param targetParams target network parameters, {@code null} to copy the online network
+     * @param state        counters to continue from, {@code null} to keep the current ones
+     */
+    public void restore(MultiLayerNetwork model, INDArray targetParams, TrainingState state) {
+        network.restore(model, targetParams);
+        if (state != null) {
+            epsilon = state.epsilon();
+            totalSteps.set(state.totalSteps());
+            episodeCount.set(state.episodeCount());
+        }
+    }
+
     public int getBufferSize() {
         return replayBuffer.getTotalSteps();
     }
@@ -0,0 +1,155 @@
+package nl.devc0n.machinelearning.siepie.agent;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.metrics.TrainingStatistics;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated training thread. Actors hand in finished episodes through a lock-free queue, the
+ * learner moves them into the replay buffer (which it owns from then on), samples and trains
+ * continuously, and periodically publishes its weights to the actors.
+ */
+@Slf4j
+public class Learner implements Runnable {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final DQNNetwork network;
+    private final ReplayBuffer replayBuffer;
+    private final int batchSize;
+    private final int targetUpdateInterval;
+    private final int publishInterval;
+    private final double maxUpdatesPerStep;
+
+    private final ConcurrentLinkedQueue<Episode> ingestion = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() is O(n), so the depth is counted separately
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong ingestedSteps = new AtomicLong();
+    private volatile boolean running = true;
+    private volatile TrainingStatistics statistics;
+    private Thread thread;
+
+    /**
+     * @param targetUpdateInterval learner updates between target network syncs
+     * @param publishInterval      learner updates between publishing weights to the actors
+     * @param maxUpdatesPerStep    cap on updates per ingested environment step, keeps the learner
+     *                             from overfitting a small buffer while actors are slow
+     */
+    public Learner(DQNNetwork network, ReplayBuffer replayBuffer, int batchSize,
+                   int targetUpdateInterval, int publishInterval, double maxUpdatesPerStep) {
+        this.network = network;
+        this.replayBuffer = replayBuffer;
+        this.batchSize = batchSize;
+        this.targetUpdateInterval = targetUpdateInterval;
+        this.publishInterval = publishInterval;
+        this.maxUpdatesPerStep = maxUpdatesPerStep;
+    }
+
+    public void start() {
+        network.enableActorReplica();
+        thread = new Thread(this, "learner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * Hand a finished episode to the learner, safe to call from any actor thread.
+     */
+    public void submit(Episode episode) {
+        ingestion.offer(episode);
+        queueDepth.incrementAndGet();
+    }
+
+    @Override
+    public void run() {
+        long lastStats = System.nanoTime();
+        long lastUpdates = 0;
+
+        while (running) {
+            ingest();
+
+            boolean trained = false;
+            if (replayBuffer.getTotalSteps() >= batchSize
+                    && updates.get() < ingestedSteps.get() * maxUpdatesPerStep) {
+                try {
+                    trainOnce();
+                    trained = true;
+                } catch (Exception e) {
+                    log.error("Learner update failed", e);
+                }
+            }
+            if (!trained) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+
+            long now = System.nanoTime();
+            if (now - lastStats >= STATS_INTERVAL_NANOS) {
+                long currentUpdates = updates.get();
+                log.info("Learner: {} updates/s | queue depth: {} | buffer: {} steps | weights v{}",
+                        String.format("%.1f", (currentUpdates - lastUpdates) / ((now - lastStats) / 1e9)),
+                        queueDepth.get(), replayBuffer.getTotalSteps(), network.getPublishedVersion());
+                lastStats = now;
+                lastUpdates = currentUpdates;
+            }
+        }
+        log.info("Learner stopped after {} updates", updates.get());
+    }
+
+    private void ingest() {
+        Episode episode;
+        while ((episode = ingestion.poll()) != null) {
+            queueDepth.decrementAndGet();
+            replayBuffer.addEpisode(episode);
+            ingestedSteps.addAndGet(episode.getSteps().size());
+        }
+    }
+
+    private void trainOnce() {
+        TransitionBatch batch = replayBuffer.sampleBatch(batchSize);
+        float[] tdErrors = network.train(batch);
+        replayBuffer.updatePriorities(batch, tdErrors);
+        TrainingStatistics statistics = this.statistics;
+        if (statistics != null) {
+            statistics.recordUpdate(tdErrors, network.getLastLoss());
+        }
+
+        long count = updates.incrementAndGet();
+        if (count % targetUpdateInterval == 0) {
+            network.updateTargetNetwork();
+            log.debug("Target network updated at learner update {}", count);
+        }
+        if (count % publishInterval == 0) {
+            network.publishActorWeights();
+        }
+    }
+
+    public void trackStatistics(TrainingStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+}
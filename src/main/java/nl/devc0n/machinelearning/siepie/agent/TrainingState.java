@@ -0,0 +1,11 @@
+package nl.devc0n.machinelearning.siepie.agent;
+
+/**
+ * Agent counters that belong in a checkpoint next to the network.
+ *
+ * @param epsilon      current exploration rate
+ * @param totalSteps   steps recorded over all episodes
+ * @param episodeCount episodes started
+ */
+public record TrainingState(double epsilon, int totalSteps, int episodeCount) {
+}
@@ -0,0 +1,185 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The browser game in its own browser context of a {@link SharedChrome}, driven over DevTools.
+ * <p>
+ * Does what {@link nl.devc0n.machinelearning.siepie.BrowserManager} does with ChromeDriver:
+ * buttons are clicked from page scripts, keys are sent with {@code Input.dispatchKeyEvent} to
+ * this page only, see {@link KeyInput}, and frames come from {@code Page.captureScreenshot}.
+ */
+@Slf4j
+public class BrowserContextSession implements GameEnvironment {
+
+    private static final Duration CLICK_TIMEOUT = Duration.ofSeconds(60);
+    private static final Duration SCORE_QUIET = Duration.ofMillis(300);
+    private static final Duration SCORE_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration RESTART_TIMEOUT = Duration.ofSeconds(15);
+    // Page-side wait per evaluate, short so navigations in between are retried quickly
+    private static final long CLICK_POLL_MILLIS = 5_000;
+    private static final String CLICK_SCRIPT = """
+            new Promise(resolve => {
+                const deadline = Date.now() + %d;
+                (function poll() {
+                    const element = document.querySelector(%s);
+                    if (element) { element.click(); resolve(true); }
+                    else if (Date.now() > deadline) resolve(false);
+                    else setTimeout(poll, 50);
+                })();
+            })""";
+
+    private final SharedChrome chrome;
+    private final BrowserSettings settings;
+    private final StepMetrics metrics;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private SharedChrome.Target target;
+    private CdpChannel cdp;
+    private GameStateProbe probe;
+    private KeyInput keys;
+
+    public BrowserContextSession(SharedChrome chrome, BrowserSettings settings, StepMetrics metrics) {
+        this.chrome = chrome;
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void start() {
+        long start = System.nanoTime();
+        if (settings.captureMode() == CaptureMode.SCREENCAST) {
+            log.warn("Screencast capture needs ChromeDriver, shared browser sessions capture screenshots");
+        }
+        target = chrome.openTarget();
+        cdp = target.channel();
+        keys = new KeyInput(target.cdp(), target.sessionId());
+        cdp.execute("Emulation.setDeviceMetricsOverride", Map.of(
+                "width", GamePage.VIEWPORT_WIDTH,
+                "height", GamePage.VIEWPORT_HEIGHT,
+                "deviceScaleFactor", 1,
+                "mobile", false));
+        // Only one page has the real focus, the game listens to keys on all of them
+        cdp.execute("Emulation.setFocusEmulationEnabled", Map.of("enabled", true));
+        cdp.execute("Page.enable", Map.of());
+        probe = new GameStateProbe(cdp);
+        probe.install();
+        cdp.execute("Page.navigate", Map.of("url", settings.url()));
+
+        click("#" + GamePage.COOKIE_BUTTON_ID);
+        log.debug("Allow cookies button was clicked");
+        click("." + GamePage.PLAY_BUTTON_CLASS);
+        log.debug("Play button was clicked");
+        click("." + GamePage.CLOSE_BUTTON_CLASS);
+        log.debug("Close button was clicked");
+        log.info("Browser context {} ready in {} ms", target.browserContextId(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @Override
+    public void performAction(Action action) {
+        keys.press(action);
+    }
+
+    @Override
+    public void restartGame() {
+        click("." + GamePage.RESTART_BUTTON_CLASS);
+        if (!probe.awaitGameStarted(RESTART_TIMEOUT)) {
+            log.warn("Game did not restart within {}s", RESTART_TIMEOUT.toSeconds());
+        }
+    }
+
+    @Override
+    public boolean detectDeathScreen() {
+        return probe.read().dead();
+    }
+
+    @Override
+    public int extractFinalScore() {
+        var score = probe.awaitSettledScore(SCORE_QUIET, SCORE_TIMEOUT);
+        if (score.isEmpty()) {
+            log.warn("Final score did not settle within {}s, using the score shown now", SCORE_TIMEOUT.toSeconds());
+            return probe.read().score();
+        }
+        return score.getAsInt();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return true;
+    }
+
+    @Override
+    public BufferedImage takeScreenshot() throws IOException {
+        Map<String, Object> result = cdp.execute("Page.captureScreenshot", GamePage.SCREENSHOT_PARAMS);
+
+        long start = System.nanoTime();
+        var screenshot = FramePreprocessor.decode(result.get("data").toString());
+        var output = FramePreprocessor.preProcess(screenshot);
+        metrics.record(StepStage.PREPROCESS, start);
+        return output;
+    }
+
+    /**
+     * Chrome scales the game region down to the frame size, OpenCV decodes it to grayscale.
+     */
+    @Override
+    public byte[] captureFrame() throws IOException {
+        Map<String, Object> result = cdp.execute("Page.captureScreenshot", GamePage.FRAME_PARAMS);
+
+        long start = System.nanoTime();
+        byte[] frame = decoder.decode(result.get("data").toString());
+        metrics.record(StepStage.PREPROCESS, start);
+        return frame;
+    }
+
+    /**
+     * Commands for this session's page.
+     */
+    public CdpChannel cdp() {
+        return cdp;
+    }
+
+    @Override
+    public void close() {
+        if (target != null) {
+            chrome.closeTarget(target);
+            target = null;
+        }
+        decoder.close();
+    }
+
+    /**
+     * Click the first element matching {@code selector} once it shows up. Retried over
+     * navigations, which throw away the page that was being polled.
+     */
+    private void click(String selector) {
+        long deadline = System.nanoTime() + CLICK_TIMEOUT.toNanos();
+        String expression = CLICK_SCRIPT.formatted(CLICK_POLL_MILLIS, quote(selector));
+        while (System.nanoTime() < deadline) {
+            try {
+                Map<String, Object> response = cdp.execute("Runtime.evaluate", Map.of(
+                        "expression", expression,
+                        "returnByValue", true,
+                        "awaitPromise", true));
+                @SuppressWarnings("unchecked")
+                var result = (Map<String, Object>) response.get("result");
+                if (result != null && Boolean.TRUE.equals(result.get("value"))) return;
+            } catch (IllegalStateException e) {
+                log.debug("Waiting for {} again: {}", selector, e.getMessage());
+            }
+        }
+        throw new IllegalStateException("No " + selector + " within " + CLICK_TIMEOUT.toSeconds() + "s");
+    }
+
+    private static String quote(String value) {
+        return "'" + value.replace("\\", "\\\\").replace("'", "\\'") + "'";
+    }
+}
@@ -0,0 +1,15 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+/**
+ * How actors get a browser.
+ */
+public enum BrowserMode {
+    /**
+     * A ChromeDriver and Chrome process per actor.
+     */
+    DRIVER,
+    /**
+     * One Chrome for all actors, each in its own browser context, see {@link SharedChrome}.
+     */
+    SHARED
+}
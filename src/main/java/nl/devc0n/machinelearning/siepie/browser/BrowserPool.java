@@ -0,0 +1,227 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Keeps browsers of long-running workers alive.
+ * <p>
+ * Workers play through a {@link PooledEnvironment}. A warmer thread keeps {@code spares}
+ * started browsers ready, so replacing a crashed, hung or slow browser costs a swap instead of
+ * a page load and the clicks into the game. A supervisor kills browsers whose calls hang, so
+ * the blocked worker gets an error instead of waiting forever. Broken browsers are closed in
+ * the background.
+ */
+@Slf4j
+public class BrowserPool implements AutoCloseable {
+
+    private static final Duration WARM_CHECK = Duration.ofMillis(500);
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+    private final Supplier<GameEnvironment> factory;
+    private final BrowserPoolSettings settings;
+    private final BlockingQueue<GameEnvironment> spares = new LinkedBlockingQueue<>();
+    private final List<PooledEnvironment> leases = new CopyOnWriteArrayList<>();
+    private final ExecutorService reaper = Executors.newCachedThreadPool(daemon("browser-pool-reaper"));
+    private final ScheduledExecutorService supervisor = Executors.newSingleThreadScheduledExecutor(daemon("browser-pool-supervisor"));
+    private final AtomicLong recycles = new AtomicLong();
+    private final AtomicLong downtimeNanos = new AtomicLong();
+    private volatile boolean running = true;
+    private Thread warmer;
+
+    public BrowserPool(Supplier<GameEnvironment> factory, BrowserPoolSettings settings) {
+        this.factory = factory;
+        this.settings = settings;
+    }
+
+    /**
+     * Start warming spares and supervising leased browsers.
+     */
+    public void start() {
+        warmer = daemon("browser-pool-warmer").newThread(this::warm);
+        warmer.start();
+        long period = Math.max(10, settings.callTimeout().toMillis() / 4);
+        supervisor.scheduleAtFixedRate(this::killHungBrowsers, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A supervised environment for one worker. It takes a browser when started.
+     */
+    public PooledEnvironment lease() {
+        var lease = new PooledEnvironment(this, settings);
+        leases.add(lease);
+        return lease;
+    }
+
+    /**
+     * Browsers replaced because they failed.
+     */
+    public long getRecycles() {
+        return recycles.get();
+    }
+
+    /**
+     * Total time workers waited for a replacement browser.
+     */
+    public long getDowntimeNanos() {
+        return downtimeNanos.get();
+    }
+
+    public int getSpares() {
+        return spares.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (warmer != null) {
+            warmer.interrupt();
+        }
+        supervisor.shutdownNow();
+        for (PooledEnvironment lease : leases) {
+            lease.close();
+        }
+        GameEnvironment spare;
+        while ((spare = spares.poll()) != null) {
+            retire(spare);
+        }
+        reaper.shutdown();
+        try {
+            reaper.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A started browser with a game running: a spare if one is ready, otherwise started on the
+     * calling thread. Retries until one starts.
+     */
+    GameEnvironment take() throws InterruptedException {
+        while (running) {
+            GameEnvironment environment = spares.poll();
+            boolean spare = environment != null;
+            if (!spare) {
+                environment = startNew();
+            }
+            if (environment != null && ready(environment)) {
+                return environment;
+            }
+            if (!spare) {
+                Thread.sleep(RETRY_DELAY.toMillis());
+            }
+        }
+        throw new IllegalStateException("Browser pool is closed");
+    }
+
+    void recordRecycle(String reason, long nanos) {
+        recycles.incrementAndGet();
+        downtimeNanos.addAndGet(nanos);
+        log.warn("Replaced a browser ({}) in {} ms, {} replacements so far", reason, nanos / 1_000_000, recycles.get());
+    }
+
+    /**
+     * Close a browser in the background, closing a hung one may block.
+     */
+    void retire(GameEnvironment environment) {
+        if (environment == null) return;
+        try {
+            reaper.execute(() -> {
+                try {
+                    environment.close();
+                } catch (RuntimeException e) {
+                    log.debug("Closing a retired browser failed", e);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Reaper is already shut down
+            environment.close();
+        }
+    }
+
+    void release(PooledEnvironment lease) {
+        leases.remove(lease);
+    }
+
+    private void warm() {
+        while (running) {
+            try {
+                if (spares.size() >= settings.spares()) {
+                    Thread.sleep(WARM_CHECK.toMillis());
+                    continue;
+                }
+                GameEnvironment environment = startNew();
+                if (environment == null) {
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                } else if (running) {
+                    spares.add(environment);
+                } else {
+                    retire(environment);
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private GameEnvironment startNew() {
+        long start = System.nanoTime();
+        GameEnvironment environment = factory.get();
+        try {
+            environment.start();
+            log.debug("Browser started in {} ms", (System.nanoTime() - start) / 1_000_000);
+            return environment;
+        } catch (RuntimeException e) {
+            log.warn("Starting a browser failed: {}", e.getMessage());
+            retire(environment);
+            return null;
+        }
+    }
+
+    /**
+     * Spares may have sat idle long enough for the game to end, or for Chrome to die.
+     */
+    private boolean ready(GameEnvironment environment) throws InterruptedException {
+        try {
+            if (environment.detectDeathScreen()) {
+                environment.restartGame();
+            }
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Spare browser is broken: {}", e.getMessage());
+            retire(environment);
+            return false;
+        }
+    }
+
+    private void killHungBrowsers() {
+        long now = System.nanoTime();
+        for (PooledEnvironment lease : leases) {
+            if (lease.callNanos(now) > settings.callTimeout().toNanos()) {
+                log.warn("Browser call hangs for over {} ms, killing the browser", settings.callTimeout().toMillis());
+                lease.kill();
+            }
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,28 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for the {@link BrowserPool} of parallel workers.
+ *
+ * @param enabled      supervise worker browsers and replace failing ones
+ * @param spares       started browsers kept ready to swap in
+ * @param slowCapture  average capture time above which a browser is replaced
+ * @param callTimeout  a call taking longer than this counts as a hang and the browser is killed, game
+ *                     restarts are bounded by their own waits instead
+ * @param healthWindow number of recent calls the error rate is taken over
+ * @param maxErrorRate error rate over the health window above which a browser is replaced
+ */
+public record BrowserPoolSettings(@DefaultValue("false") boolean enabled,
+                                  @DefaultValue("1") int spares,
+                                  @DefaultValue("1s") Duration slowCapture,
+                                  @DefaultValue("30s") Duration callTimeout,
+                                  @DefaultValue("200") int healthWindow,
+                                  @DefaultValue("0.05") double maxErrorRate) {
+
+    public static BrowserPoolSettings defaults() {
+        return new BrowserPoolSettings(false, 1, Duration.ofSeconds(1), Duration.ofSeconds(30), 200, 0.05);
+    }
+}
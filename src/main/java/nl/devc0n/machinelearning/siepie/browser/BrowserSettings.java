@@ -0,0 +1,43 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Settings for a single browser session.
+ *
+ * @param url          page that hosts the game
+ * @param headless     run Chrome without a window
+ * @param captureMode  how frames are captured
+ * @param mode         a Chrome per actor, or one shared Chrome
+ * @param chromeBinary Chrome executable for the shared mode, found on the PATH when empty
+ * @param transport    how commands reach Chrome in the driver mode
+ */
+public record BrowserSettings(@DefaultValue(BrowserSettings.GAME_URL) String url,
+                              @DefaultValue("true") boolean headless,
+                              @DefaultValue("SCREENSHOT") CaptureMode captureMode,
+                              @DefaultValue("DRIVER") BrowserMode mode,
+                              @DefaultValue("") String chromeBinary,
+                              @DefaultValue("SELENIUM") BrowserTransport transport) {
+
+    public static final String GAME_URL = "https://sinterklaasspel.hema.nl";
+
+    public static BrowserSettings defaults() {
+        return new BrowserSettings(GAME_URL, true, CaptureMode.SCREENSHOT, BrowserMode.DRIVER, "", BrowserTransport.SELENIUM);
+    }
+
+    public BrowserSettings withUrl(String url) {
+        return new BrowserSettings(url, headless, captureMode, mode, chromeBinary, transport);
+    }
+
+    public BrowserSettings withCaptureMode(CaptureMode captureMode) {
+        return new BrowserSettings(url, headless, captureMode, mode, chromeBinary, transport);
+    }
+
+    public BrowserSettings withTransport(BrowserTransport transport) {
+        return new BrowserSettings(url, headless, captureMode, mode, chromeBinary, transport);
+    }
+
+    public BrowserSettings withMode(BrowserMode mode) {
+        return new BrowserSettings(url, headless, captureMode, mode, chromeBinary, transport);
+    }
+}
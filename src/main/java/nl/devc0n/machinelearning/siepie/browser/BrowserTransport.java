@@ -0,0 +1,18 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+/**
+ * How {@link nl.devc0n.machinelearning.siepie.BrowserManager} sends keys, captures and probe
+ * reads to Chrome.
+ */
+public enum BrowserTransport {
+    /**
+     * Through ChromeDriver: Selenium actions and {@code executeCdpCommand}, one HTTP round trip
+     * per command.
+     */
+    SELENIUM,
+    /**
+     * Straight to Chrome's DevTools WebSocket with pipelined commands. ChromeDriver only starts
+     * Chrome and clicks through to the game.
+     */
+    DEVTOOLS
+}
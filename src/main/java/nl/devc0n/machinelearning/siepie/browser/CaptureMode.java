@@ -0,0 +1,15 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+/**
+ * How {@link nl.devc0n.machinelearning.siepie.BrowserManager} gets frames out of Chrome.
+ */
+public enum CaptureMode {
+    /**
+     * One synchronous {@code Page.captureScreenshot} per step.
+     */
+    SCREENSHOT,
+    /**
+     * Frames pushed by {@code Page.startScreencast}, decoded off the step loop.
+     */
+    SCREENCAST
+}
@@ -0,0 +1,13 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import java.util.Map;
+
+/**
+ * Sends a Chrome DevTools Protocol command and returns its result, e.g.
+ * {@code driver::executeCdpCommand}.
+ */
+@FunctionalInterface
+public interface CdpChannel {
+
+    Map<String, Object> execute(String method, Map<String, Object> params);
+}
@@ -0,0 +1,269 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Chrome DevTools Protocol over the browser's own WebSocket, without a driver in between.
+ * <p>
+ * All targets share the one connection: commands for a page carry the {@code sessionId} of a
+ * flattened {@code Target.attachToTarget}. Commands are matched to their responses by id, so
+ * any number of them can be in flight from any thread. Chrome handles the commands of a session
+ * in the order they were sent.
+ */
+@Slf4j
+public class CdpClient implements AutoCloseable {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> MESSAGE_TYPE = new TypeReference<>() {
+    };
+    private static final Duration COMMAND_TIMEOUT = Duration.ofSeconds(60);
+
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, Pending> pending = new ConcurrentHashMap<>();
+    private final Map<String, List<Consumer<Map<String, Object>>>> listeners = new ConcurrentHashMap<>();
+    private final Object sendLock = new Object();
+    private WebSocket socket;
+    // WebSocket allows one outstanding send, later sends are chained onto it
+    private CompletableFuture<WebSocket> lastSend;
+    private volatile CommandLatency latency = (method, nanos) -> {
+    };
+
+    private CdpClient() {
+    }
+
+    /**
+     * @param webSocketUrl the {@code ws://.../devtools/browser/...} url Chrome prints on startup
+     */
+    public static CdpClient connect(URI webSocketUrl) {
+        var client = new CdpClient();
+        client.socket = HttpClient.newHttpClient()
+                .newWebSocketBuilder()
+                .buildAsync(webSocketUrl, client.new Receiver())
+                .join();
+        client.lastSend = CompletableFuture.completedFuture(client.socket);
+        return client;
+    }
+
+    /**
+     * Report the round trip of every command from sending to its response.
+     */
+    public void onLatency(CommandLatency latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Send a command without waiting for its response.
+     *
+     * @param sessionId target session, {@code null} for the browser itself
+     */
+    public CompletableFuture<Map<String, Object>> send(String sessionId, String method, Map<String, Object> params) {
+        return send(sessionId, method, params, COMMAND_TIMEOUT);
+    }
+
+    /**
+     * Send a command without waiting for its response.
+     *
+     * @param timeout after which the response fails with a {@link TimeoutException} and the
+     *                command is forgotten
+     */
+    public CompletableFuture<Map<String, Object>> send(String sessionId, String method, Map<String, Object> params,
+                                                       Duration timeout) {
+        int id = ids.incrementAndGet();
+        var message = new HashMap<String, Object>();
+        message.put("id", id);
+        message.put("method", method);
+        message.put("params", params);
+        if (sessionId != null) {
+            message.put("sessionId", sessionId);
+        }
+        String text;
+        try {
+            text = JSON.writeValueAsString(message);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        var response = new CompletableFuture<Map<String, Object>>();
+        pending.put(id, new Pending(method, System.nanoTime(), response));
+        response.orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).whenComplete((result, failure) -> {
+            // Otherwise a browser that stops answering leaks an entry per command
+            if (failure instanceof TimeoutException) {
+                pending.remove(id);
+            }
+        });
+        synchronized (sendLock) {
+            lastSend = lastSend.thenCompose(ws -> ws.sendText(text, true));
+            lastSend.whenComplete((ws, failure) -> {
+                if (failure != null && pending.remove(id) != null) {
+                    response.completeExceptionally(failure);
+                }
+            });
+        }
+        return response;
+    }
+
+    /**
+     * Send a command and wait for its result.
+     */
+    public Map<String, Object> execute(String sessionId, String method, Map<String, Object> params) {
+        return execute(sessionId, method, params, COMMAND_TIMEOUT);
+    }
+
+    /**
+     * Send a command and wait at most {@code timeout} for its result.
+     */
+    public Map<String, Object> execute(String sessionId, String method, Map<String, Object> params, Duration timeout) {
+        try {
+            return send(sessionId, method, params, timeout).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + method, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) {
+                throw new IllegalStateException(method + " got no response within " + timeout.toMillis() + " ms", e.getCause());
+            }
+            throw new IllegalStateException(method + " failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Commands for one target session.
+     */
+    public CdpChannel channel(String sessionId) {
+        return (method, params) -> execute(sessionId, method, params);
+    }
+
+    /**
+     * Call {@code listener} with the params of every {@code method} event of a session. Listeners
+     * run on the connection's receive thread and must not wait for command responses.
+     */
+    public void addListener(String sessionId, String method, Consumer<Map<String, Object>> listener) {
+        listeners.computeIfAbsent(key(sessionId, method), k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public void removeListeners(String sessionId) {
+        listeners.keySet().removeIf(key -> key.startsWith(sessionId + " "));
+    }
+
+    @Override
+    public void close() {
+        if (socket != null && !socket.isOutputClosed()) {
+            try {
+                socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                socket.abort();
+            } catch (ExecutionException | TimeoutException e) {
+                socket.abort();
+            }
+        }
+        failPending(new IllegalStateException("DevTools connection closed"));
+    }
+
+    private void onMessage(String text) {
+        Map<String, Object> message;
+        try {
+            message = JSON.readValue(text, MESSAGE_TYPE);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable DevTools message", e);
+            return;
+        }
+        if (message.get("id") instanceof Number id) {
+            var command = pending.remove(id.intValue());
+            if (command == null) return;
+            latency.record(command.method(), System.nanoTime() - command.sentNanos());
+            if (message.get("error") instanceof Map<?, ?> error) {
+                command.response().completeExceptionally(new IllegalStateException(String.valueOf(error.get("message"))));
+            } else {
+                @SuppressWarnings("unchecked")
+                var result = (Map<String, Object>) message.getOrDefault("result", Map.of());
+                command.response().complete(result);
+            }
+            return;
+        }
+        var forEvent = listeners.get(key((String) message.get("sessionId"), (String) message.get("method")));
+        if (forEvent == null) return;
+        @SuppressWarnings("unchecked")
+        var params = (Map<String, Object>) message.getOrDefault("params", Map.of());
+        for (var listener : forEvent) {
+            try {
+                listener.accept(params);
+            } catch (RuntimeException e) {
+                log.warn("DevTools event listener for {} failed", message.get("method"), e);
+            }
+        }
+    }
+
+    private void failPending(Throwable cause) {
+        for (Integer id : pending.keySet()) {
+            var command = pending.remove(id);
+            if (command != null) {
+                command.response().completeExceptionally(cause);
+            }
+        }
+    }
+
+    private static String key(String sessionId, String method) {
+        return (sessionId == null ? "" : sessionId) + " " + method;
+    }
+
+    @FunctionalInterface
+    public interface CommandLatency {
+        void record(String method, long nanos);
+    }
+
+    private record Pending(String method, long sentNanos, CompletableFuture<Map<String, Object>> response) {
+    }
+
+    /**
+     * Reassembles text frames into messages.
+     */
+    private final class Receiver implements WebSocket.Listener {
+        private final StringBuilder partial = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String text = partial.toString();
+                partial.setLength(0);
+                onMessage(text);
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            failPending(new IllegalStateException("DevTools connection closed: " + statusCode + " " + reason));
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            log.error("DevTools connection failed", error);
+            failPending(error);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_core.Size;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.bytedeco.opencv.global.opencv_core.CV_8UC1;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.IMREAD_GRAYSCALE;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.imdecode;
+import static org.bytedeco.opencv.global.opencv_imgproc.INTER_AREA;
+import static org.bytedeco.opencv.global.opencv_imgproc.resize;
+
+/**
+ * Decodes base64 JPEG/PNG payloads from CDP straight to network frames with OpenCV.
+ * <p>
+ * libjpeg converts to grayscale while decoding, so no RGB image is ever built. Payloads that
+ * Chrome already scaled to the frame size need no resize, others are area-averaged down.
+ * The base64, encoded and decoded buffers are reused, only the returned frame is new.
+ * <p>
+ * One decoder per browser session. Closing waits for a decode in progress, the session may be
+ * closed from another thread.
+ */
+public class FrameDecoder implements AutoCloseable {
+
+    private static final byte[] BASE64 = new byte[128];
+
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Size frameSize;
+    private final Mat decoded = new Mat();
+    private final Mat resized = new Mat();
+    private byte[] encoded = new byte[0];
+    private BytePointer encodedNative = new BytePointer(0L);
+    private boolean closed;
+
+    public FrameDecoder() {
+        this(FramePreprocessor.FRAME_WIDTH, FramePreprocessor.FRAME_HEIGHT);
+    }
+
+    public FrameDecoder(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.frameSize = new Size(width, height);
+    }
+
+    /**
+     * @return the grayscale pixels of the frame, row by row, in a new array
+     */
+    public synchronized byte[] decode(String base64) throws IOException {
+        if (closed) {
+            throw new IOException("Frame decoder is closed");
+        }
+        int length = decodeBase64(base64);
+        if (encodedNative.capacity() < length) {
+            encodedNative.close();
+            encodedNative = new BytePointer((long) length * 2);
+        }
+        encodedNative.put(encoded, 0, length);
+
+        try (Mat payload = new Mat(1, length, CV_8UC1, encodedNative)) {
+            imdecode(payload, IMREAD_GRAYSCALE, decoded);
+        }
+        if (decoded.empty()) {
+            throw new IOException("Unsupported image payload of " + length + " bytes");
+        }
+        Mat frame = decoded;
+        if (decoded.cols() != width || decoded.rows() != height) {
+            resize(decoded, resized, frameSize, 0, 0, INTER_AREA);
+            frame = resized;
+        }
+        byte[] pixels = new byte[width * height];
+        frame.data().get(pixels);
+        return pixels;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        decoded.close();
+        resized.close();
+        frameSize.close();
+        encodedNative.close();
+    }
+
+    /**
+     * Decode into {@link #encoded} without a temporary array per payload.
+     *
+     * @return number of decoded bytes
+     */
+    private int decodeBase64(String base64) throws IOException {
+        int capacity = base64.length() / 4 * 3 + 3;
+        if (encoded.length < capacity) {
+            encoded = new byte[capacity * 2];
+        }
+        int length = 0;
+        int bits = 0;
+        int buffer = 0;
+        for (int i = 0; i < base64.length(); i++) {
+            char c = base64.charAt(i);
+            if (c == '=') break;
+            int value = c < BASE64.length ? BASE64[c] : -1;
+            if (value < 0) {
+                throw new IOException("Invalid base64 character at " + i);
+            }
+            buffer = (buffer << 6 | value) & 0xFFFFFF;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                encoded[length++] = (byte) (buffer >> bits);
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,57 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Turns captured browser frames into the 84x84 grayscale input of the network.
+ */
+public final class FramePreprocessor {
+
+    public static final int FRAME_WIDTH = GameEnvironment.FRAME_WIDTH;
+    public static final int FRAME_HEIGHT = GameEnvironment.FRAME_HEIGHT;
+
+    private FramePreprocessor() {
+    }
+
+    /**
+     * Decode a base64 encoded JPEG/PNG payload as returned by CDP.
+     */
+    public static BufferedImage decode(String base64) throws IOException {
+        byte[] decoded = Base64.getDecoder().decode(base64);
+        var image = ImageIO.read(new ByteArrayInputStream(decoded));
+        if (image == null) {
+            throw new IOException("Unsupported image payload of " + decoded.length + " bytes");
+        }
+        return image;
+    }
+
+    public static BufferedImage preProcess(BufferedImage src) {
+        return preProcess(src, new Rectangle(0, 0, src.getWidth(), src.getHeight()));
+    }
+
+    /**
+     * Scale the {@code crop} region of {@code src} down to a grayscale network frame.
+     */
+    public static BufferedImage preProcess(BufferedImage src, Rectangle crop) {
+        BufferedImage out = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = out.createGraphics();
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+
+        g.drawImage(src, 0, 0, FRAME_WIDTH, FRAME_HEIGHT,
+                crop.x, crop.y, crop.x + crop.width, crop.y + crop.height, null);
+        g.dispose();
+
+//        File outputfile = new File("src/main/resources/screenshots/" + System.currentTimeMillis() + "-proc.png");
+//        ImageIO.write(out, "png", outputfile);
+        return out;
+    }
+}
@@ -0,0 +1,50 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * What every browser session needs to know about the game page: its viewport, the buttons
+ * clicked on the way into the game and the region that holds the game.
+ */
+public final class GamePage {
+
+    public static final int VIEWPORT_WIDTH = 400;
+    public static final int VIEWPORT_HEIGHT = 900;
+    public static final Rectangle GAME_CLIP = new Rectangle(75, 230, 350, 350);
+
+    public static final String COOKIE_BUTTON_ID = "CybotCookiebotDialogBodyLevelButtonLevelOptinAllowAll";
+    public static final String PLAY_BUTTON_CLASS = "launch-button";
+    public static final String CLOSE_BUTTON_CLASS = "close";
+    public static final String RESTART_BUTTON_CLASS = "icon-only";
+
+    /**
+     * {@code Page.captureScreenshot} parameters for one frame of the game region.
+     */
+    public static final Map<String, Object> SCREENSHOT_PARAMS = Map.of(
+            "clip", Map.of(
+                    "x", GAME_CLIP.x,
+                    "y", GAME_CLIP.y,
+                    "width", GAME_CLIP.width,
+                    "height", GAME_CLIP.height,
+                    "scale", 1),
+            "format", "jpeg",
+            "quality", 80);
+
+    /**
+     * {@code Page.captureScreenshot} parameters for one frame of the game region, scaled down
+     * by Chrome to the network frame size.
+     */
+    public static final Map<String, Object> FRAME_PARAMS = Map.of(
+            "clip", Map.of(
+                    "x", GAME_CLIP.x,
+                    "y", GAME_CLIP.y,
+                    "width", GAME_CLIP.width,
+                    "height", GAME_CLIP.height,
+                    "scale", (double) FramePreprocessor.FRAME_WIDTH / GAME_CLIP.width),
+            "format", "jpeg",
+            "quality", 80);
+
+    private GamePage() {
+    }
+}
@@ -0,0 +1,133 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+
+/**
+ * Reads death, score and restart-readiness of the game page in one {@code Runtime.evaluate}.
+ * <p>
+ * A script injected into the page keeps that state up to date with a MutationObserver, so a
+ * read only returns a few values instead of querying the DOM element by element. The same
+ * script resolves promises on state transitions, so waiting for the end or start of a game is
+ * one awaited evaluate that returns as soon as the page changes.
+ */
+@Slf4j
+public class GameStateProbe {
+
+    private static final String SCRIPT = loadScript();
+    private static final String READ_EXPRESSION = "window.__siepieProbe ? window.__siepieProbe.read() : null";
+
+    private final CdpChannel cdp;
+
+    public GameStateProbe(CdpChannel cdp) {
+        this.cdp = cdp;
+    }
+
+    /**
+     * Install the probe in the current document and in every document loaded after it.
+     */
+    public void install() {
+        cdp.execute("Page.addScriptToEvaluateOnNewDocument", Map.of("source", SCRIPT));
+        evaluate(SCRIPT);
+    }
+
+    public GameState read() {
+        Object value = evaluate(READ_EXPRESSION);
+        if (value == null) {
+            // Navigated to a document that was created before the probe was registered
+            log.debug("Game state probe missing, installing it again");
+            evaluate(SCRIPT);
+            value = evaluate(READ_EXPRESSION);
+        }
+        return GameState.from(value);
+    }
+
+    /**
+     * Wait until the game-over score stopped counting up.
+     *
+     * @param quiet   how long the score has to stay unchanged when no restart button shows up
+     * @return the final score, empty when it did not settle within {@code timeout}
+     */
+    public OptionalInt awaitSettledScore(Duration quiet, Duration timeout) {
+        Object value = awaitProbe("settled(" + quiet.toMillis() + ", " + timeout.toMillis() + ")");
+        if (!(value instanceof List<?> fields) || fields.size() < 2 || !Boolean.TRUE.equals(fields.get(0))) {
+            return OptionalInt.empty();
+        }
+        return OptionalInt.of(((Number) fields.get(1)).intValue());
+    }
+
+    /**
+     * Wait until the game-over screen is gone and the first frame of the new game was painted.
+     *
+     * @return false when that did not happen within {@code timeout}
+     */
+    public boolean awaitGameStarted(Duration timeout) {
+        return Boolean.TRUE.equals(awaitProbe("started(" + timeout.toMillis() + ")"));
+    }
+
+    private Object awaitProbe(String call) {
+        String expression = "window.__siepieProbe ? window.__siepieProbe." + call + " : null";
+        Object value = evaluate(expression, true);
+        if (value == null) {
+            evaluate(SCRIPT);
+            value = evaluate(expression, true);
+        }
+        return value;
+    }
+
+    private Object evaluate(String expression) {
+        return evaluate(expression, false);
+    }
+
+    private Object evaluate(String expression, boolean awaitPromise) {
+        Map<String, Object> response = cdp.execute("Runtime.evaluate", Map.of(
+                "expression", expression,
+                "returnByValue", true,
+                "awaitPromise", awaitPromise));
+        if (response.get("exceptionDetails") != null) {
+            throw new IllegalStateException("Game state probe failed: " + response.get("exceptionDetails"));
+        }
+        @SuppressWarnings("unchecked")
+        var result = (Map<String, Object>) response.get("result");
+        return result == null ? null : result.get("value");
+    }
+
+    private static String loadScript() {
+        try (InputStream in = GameStateProbe.class.getResourceAsStream("/browser/game-state-probe.js")) {
+            if (in == null) {
+                throw new IllegalStateException("game-state-probe.js is missing from the classpath");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param dead         the game-over screen is showing
+     * @param score        score shown on the game-over screen, 0 while alive
+     * @param restartReady the restart button is available
+     * @param changes      number of state changes the probe has seen, to tell reads apart
+     */
+    public record GameState(boolean dead, int score, boolean restartReady, long changes) {
+
+        static GameState from(Object value) {
+            if (!(value instanceof List<?> fields) || fields.size() < 4) {
+                throw new IllegalStateException("Unexpected game state probe result: " + value);
+            }
+            return new GameState(
+                    Boolean.TRUE.equals(fields.get(0)),
+                    ((Number) fields.get(1)).intValue(),
+                    Boolean.TRUE.equals(fields.get(2)),
+                    ((Number) fields.get(3)).longValue());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Arrow key presses sent to one page with {@code Input.dispatchKeyEvent}, without waiting for
+ * Chrome to confirm them.
+ * <p>
+ * Key events are pipelined ahead of the next capture on the same connection. Chrome handles
+ * them in order, so the capture still sees the key. Every failed key event is logged, the next
+ * press throws for the first failure since the previous one.
+ */
+@Slf4j
+public class KeyInput {
+
+    private static final Map<Action, List<Map<String, Object>>> EVENTS = new EnumMap<>(Action.class);
+
+    static {
+        EVENTS.put(Action.UP, events("ArrowUp", 38));
+        EVENTS.put(Action.LEFT, events("ArrowLeft", 37));
+        EVENTS.put(Action.RIGHT, events("ArrowRight", 39));
+        EVENTS.put(Action.DOWN, events("ArrowDown", 40));
+        EVENTS.put(Action.NOTHING, List.of());
+    }
+
+    private final CdpClient cdp;
+    private final String sessionId;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    public KeyInput(CdpClient cdp, String sessionId) {
+        this.cdp = cdp;
+        this.sessionId = sessionId;
+    }
+
+    public void press(Action action) {
+        Throwable failed = failure.getAndSet(null);
+        if (failed != null) {
+            throw new IllegalStateException("Key event failed", failed);
+        }
+        for (Map<String, Object> event : EVENTS.get(action)) {
+            cdp.send(sessionId, "Input.dispatchKeyEvent", event).whenComplete((result, error) -> {
+                if (error != null) {
+                    log.warn("{} {} failed: {}", event.get("type"), event.get("key"), error.getMessage());
+                    failure.compareAndSet(null, error);
+                }
+            });
+        }
+    }
+
+    private static List<Map<String, Object>> events(String key, int keyCode) {
+        return List.of(
+                Map.of("type", "keyDown", "key", key, "code", key, "windowsVirtualKeyCode", keyCode),
+                Map.of("type", "keyUp", "key", key, "code", key, "windowsVirtualKeyCode", keyCode));
+    }
+}
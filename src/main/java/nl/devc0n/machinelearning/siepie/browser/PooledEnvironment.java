@@ -0,0 +1,230 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A worker's browser from a {@link BrowserPool}, replaced when it stops working.
+ * <p>
+ * Every call is timed and its outcome recorded. At the end of an episode {@link #restartGame()}
+ * swaps in a spare instead of restarting when the browser hangs, fails too often or captures
+ * too slowly. After a failed call in the middle of an episode the worker calls
+ * {@link #recover(String)}.
+ * <p>
+ * Used by one worker thread, only {@link #kill()} comes from the pool's supervisor.
+ */
+public class PooledEnvironment implements GameEnvironment {
+
+    // Calls before the error rate counts, so one early failure is not a 100% error rate
+    private static final int MIN_CALLS = 20;
+    private static final double LATENCY_SMOOTHING = 0.05;
+
+    private final BrowserPool pool;
+    private final BrowserPoolSettings settings;
+    private final boolean[] failures;
+    private volatile GameEnvironment current;
+    private volatile long callStartNanos;
+    private volatile boolean killed;
+    private int calls;
+    private int failureCount;
+    private int next;
+    private double captureNanos;
+
+    PooledEnvironment(BrowserPool pool, BrowserPoolSettings settings) {
+        this.pool = pool;
+        this.settings = settings;
+        this.failures = new boolean[settings.healthWindow()];
+    }
+
+    @Override
+    public void start() {
+        try {
+            current = pool.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a browser", e);
+        }
+    }
+
+    @Override
+    public BufferedImage takeScreenshot() throws IOException {
+        long start = System.nanoTime();
+        BufferedImage frame = call(GameEnvironment::takeScreenshot);
+        recordCapture(System.nanoTime() - start);
+        return frame;
+    }
+
+    @Override
+    public byte[] captureFrame() throws IOException {
+        long start = System.nanoTime();
+        byte[] frame = call(GameEnvironment::captureFrame);
+        recordCapture(System.nanoTime() - start);
+        return frame;
+    }
+
+    @Override
+    public void performAction(Action action) {
+        call(environment -> {
+            environment.performAction(action);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean detectDeathScreen() {
+        return call(GameEnvironment::detectDeathScreen);
+    }
+
+    @Override
+    public int extractFinalScore() throws InterruptedException {
+        return call(GameEnvironment::extractFinalScore);
+    }
+
+    /**
+     * Restart the game, or swap in a spare with a fresh game when this browser is unhealthy.
+     */
+    @Override
+    public void restartGame() throws InterruptedException {
+        String reason = unhealthyReason();
+        if (reason == null) {
+            try {
+                // Bounded by the browser's own waits, which may take longer than a hang
+                call(environment -> {
+                    environment.restartGame();
+                    return null;
+                }, false);
+                return;
+            } catch (RuntimeException e) {
+                reason = "restart failed: " + e.getMessage();
+            }
+        }
+        swap(reason);
+    }
+
+    /**
+     * Replace the browser after a failed call, the current episode is lost.
+     */
+    public void recover(String reason) throws InterruptedException {
+        swap(reason);
+    }
+
+    @Override
+    public boolean isRealTime() {
+        GameEnvironment environment = current;
+        // Only browsers are pooled, and they run in real time
+        return environment == null || environment.isRealTime();
+    }
+
+    /**
+     * The browser currently in use.
+     */
+    public GameEnvironment current() {
+        return current;
+    }
+
+    @Override
+    public void close() {
+        pool.release(this);
+        GameEnvironment environment = current;
+        current = null;
+        if (environment != null) {
+            environment.close();
+        }
+    }
+
+    /**
+     * How long the call in progress has been running, 0 when there is none.
+     */
+    long callNanos(long now) {
+        long start = callStartNanos;
+        return start == 0 ? 0 : now - start;
+    }
+
+    /**
+     * Kill a hung browser, the blocked call then fails.
+     */
+    void kill() {
+        GameEnvironment environment = current;
+        if (killed || environment == null) return;
+        killed = true;
+        pool.retire(environment);
+    }
+
+    private void swap(String reason) throws InterruptedException {
+        long start = System.nanoTime();
+        GameEnvironment broken = current;
+        current = null;
+        if (!killed) {
+            pool.retire(broken);
+        }
+        current = pool.take();
+        killed = false;
+        calls = 0;
+        failureCount = 0;
+        next = 0;
+        captureNanos = 0;
+        Arrays.fill(failures, false);
+        pool.recordRecycle(reason, System.nanoTime() - start);
+    }
+
+    private String unhealthyReason() {
+        if (killed) {
+            return "hung";
+        }
+        int window = calls;
+        if (window >= MIN_CALLS && failureCount > settings.maxErrorRate() * window) {
+            return String.format("%d of the last %d calls failed", failureCount, window);
+        }
+        if (captureNanos > settings.slowCapture().toNanos()) {
+            return String.format("captures take %.0f ms", captureNanos / 1e6);
+        }
+        return null;
+    }
+
+    private <T, E extends Exception> T call(Call<T, E> call) throws E {
+        return call(call, true);
+    }
+
+    /**
+     * @param hangCheck let the pool kill the browser when the call exceeds the call timeout
+     */
+    private <T, E extends Exception> T call(Call<T, E> call, boolean hangCheck) throws E {
+        GameEnvironment environment = current;
+        if (environment == null || killed) {
+            throw new IllegalStateException("Browser was killed");
+        }
+        if (hangCheck) {
+            callStartNanos = System.nanoTime();
+        }
+        boolean failed = true;
+        try {
+            T result = call.run(environment);
+            failed = false;
+            return result;
+        } finally {
+            callStartNanos = 0;
+            recordOutcome(failed);
+        }
+    }
+
+    private void recordCapture(long nanos) {
+        captureNanos = captureNanos == 0 ? nanos : captureNanos + LATENCY_SMOOTHING * (nanos - captureNanos);
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (failures[next]) failureCount--;
+        failures[next] = failed;
+        if (failed) failureCount++;
+        next = (next + 1) % failures.length;
+        if (calls < failures.length) calls++;
+    }
+
+    @FunctionalInterface
+    private interface Call<T, E extends Exception> {
+        T run(GameEnvironment environment) throws E;
+    }
+}
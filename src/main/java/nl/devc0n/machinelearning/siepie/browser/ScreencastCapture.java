@@ -0,0 +1,199 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.devtools.Command;
+import org.openqa.selenium.devtools.DevTools;
+import org.openqa.selenium.devtools.Event;
+import org.openqa.selenium.json.Json;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streaming frame capture on top of {@code Page.startScreencast}.
+ * <p>
+ * Chrome pushes a frame whenever the page repaints. Frames are acknowledged right away and
+ * parked in a single latest-frame slot, a decoder thread turns the freshest one into a network
+ * frame. Frames that arrive while the decoder is busy replace the parked one, so the step loop
+ * never waits on a backlog.
+ */
+@Slf4j
+public class ScreencastCapture implements AutoCloseable {
+
+    private static final int LATENCY_LOG_INTERVAL = 1000;
+
+    private final ChromeDriver driver;
+    private final Rectangle clip;
+    private final StepMetrics metrics;
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor(daemon("screencast-decoder"));
+    private final ExecutorService acknowledger = Executors.newSingleThreadExecutor(daemon("screencast-ack"));
+    private final AtomicReference<RawFrame> pending = new AtomicReference<>();
+    private final Object frameLock = new Object();
+    private DevTools devTools;
+    // Guarded by frameLock
+    private CapturedFrame latest;
+    private long takenSequence;
+    private long sequence;
+
+    // Capture-to-availability latency
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong latencyTotalMillis = new AtomicLong();
+    private final AtomicLong latencyMaxMillis = new AtomicLong();
+
+    /**
+     * @param clip region of the page (CSS pixels) that holds the game
+     */
+    public ScreencastCapture(ChromeDriver driver, Rectangle clip, StepMetrics metrics) {
+        this.driver = driver;
+        this.clip = clip;
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        devTools = driver.getDevTools();
+        devTools.createSessionIfThereIsNotOne();
+        devTools.addListener(new Event<Map<String, Object>>("Page.screencastFrame",
+                input -> input.read(Json.MAP_TYPE)), this::onFrame);
+        devTools.send(new Command<>("Page.startScreencast", Map.of(
+                "format", "jpeg",
+                "quality", 80,
+                "everyNthFrame", 1)));
+        log.debug("Screencast started");
+    }
+
+    /**
+     * Take the freshest decoded frame, waiting up to {@code maxWait} for one that was not
+     * handed out before. When the page did not repaint in that time the last frame is returned.
+     */
+    public CapturedFrame takeLatest(Duration maxWait) throws IOException, InterruptedException {
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        synchronized (frameLock) {
+            while (latest == null || latest.sequence() <= takenSequence) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) break;
+                TimeUnit.NANOSECONDS.timedWait(frameLock, remaining);
+            }
+            if (latest == null) {
+                throw new IOException("No screencast frame received within " + maxWait.toMillis() + "ms");
+            }
+            takenSequence = latest.sequence();
+            return latest;
+        }
+    }
+
+    public double getAverageLatencyMillis() {
+        long frames = frameCount.get();
+        return frames == 0 ? 0.0 : (double) latencyTotalMillis.get() / frames;
+    }
+
+    public long getMaxLatencyMillis() {
+        return latencyMaxMillis.get();
+    }
+
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (devTools != null) {
+                devTools.send(new Command<>("Page.stopScreencast", Map.of()));
+            }
+        } catch (Exception e) {
+            log.debug("Stopping screencast failed: {}", e.getMessage());
+        }
+        decoder.shutdownNow();
+        acknowledger.shutdownNow();
+    }
+
+    private void onFrame(Map<String, Object> event) {
+        var sessionId = ((Number) event.get("sessionId")).intValue();
+        // Chrome throttles the stream until frames are acknowledged, so ack every frame, also dropped ones
+        acknowledger.execute(() -> devTools.send(new Command<>("Page.screencastFrameAck", Map.of("sessionId", sessionId))));
+
+        @SuppressWarnings("unchecked")
+        var metadata = (Map<String, Object>) event.get("metadata");
+        var raw = new RawFrame(event.get("data").toString(), metadata);
+        if (pending.getAndSet(raw) == null) {
+            decoder.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        RawFrame raw;
+        while ((raw = pending.getAndSet(null)) != null) {
+            try {
+                publish(raw);
+            } catch (Exception e) {
+                log.warn("Dropping screencast frame: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void publish(RawFrame raw) throws IOException {
+        long start = System.nanoTime();
+        BufferedImage image = FramePreprocessor.decode(raw.data());
+        // Frames cover the whole viewport, possibly at device pixel ratio
+        double deviceWidth = ((Number) raw.metadata().getOrDefault("deviceWidth", image.getWidth())).doubleValue();
+        double scale = image.getWidth() / deviceWidth;
+        var crop = new Rectangle((int) (clip.x * scale), (int) (clip.y * scale),
+                (int) (clip.width * scale), (int) (clip.height * scale));
+        BufferedImage frame = FramePreprocessor.preProcess(image, crop);
+        metrics.record(StepStage.PREPROCESS, start);
+
+        long availableMillis = System.currentTimeMillis();
+        // Metadata timestamp is the browser-side capture time in seconds since the epoch
+        var timestamp = raw.metadata().get("timestamp");
+        long capturedMillis = timestamp == null ? availableMillis : (long) (((Number) timestamp).doubleValue() * 1000);
+        recordLatency(availableMillis - capturedMillis);
+
+        synchronized (frameLock) {
+            latest = new CapturedFrame(frame, ++sequence, capturedMillis, availableMillis);
+            frameLock.notifyAll();
+        }
+    }
+
+    private void recordLatency(long latencyMillis) {
+        long frames = frameCount.incrementAndGet();
+        latencyTotalMillis.addAndGet(latencyMillis);
+        latencyMaxMillis.accumulateAndGet(latencyMillis, Math::max);
+        if (frames % LATENCY_LOG_INTERVAL == 0) {
+            log.info("Screencast frames: {} | capture-to-available avg: {}ms, max: {}ms",
+                    frames, String.format("%.1f", getAverageLatencyMillis()), getMaxLatencyMillis());
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record RawFrame(String data, Map<String, Object> metadata) {
+    }
+
+    /**
+     * A preprocessed frame.
+     *
+     * @param sequence        increasing frame number
+     * @param capturedMillis  browser-side capture time
+     * @param availableMillis time the preprocessed frame became available
+     */
+    public record CapturedFrame(BufferedImage image, long sequence, long capturedMillis, long availableMillis) {
+    }
+}
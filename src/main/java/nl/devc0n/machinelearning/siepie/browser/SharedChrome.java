@@ -0,0 +1,272 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * One Chrome process shared by all actors, each actor getting its own browser context.
+ * <p>
+ * A browser context is an incognito-like profile inside the same browser: its own cookies,
+ * storage and cache, and its pages receive their own input. Opening one costs a page and a
+ * renderer instead of a ChromeDriver plus a full Chrome process tree.
+ * <p>
+ * Chrome is launched on first use and stopped on {@link #close()} or JVM shutdown.
+ */
+@Slf4j
+public class SharedChrome implements AutoCloseable {
+
+    private static final Pattern DEVTOOLS_URL = Pattern.compile("DevTools listening on (ws://\\S+)");
+    private static final Duration LAUNCH_TIMEOUT = Duration.ofSeconds(30);
+    // Also runs from a shutdown hook, a dead browser must not hold up the JVM exit
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(2);
+    private static final List<String> CHROME_CANDIDATES = List.of(
+            "google-chrome", "google-chrome-stable", "chromium", "chromium-browser",
+            "/Applications/Google Chrome.app/Contents/MacOS/Google Chrome",
+            "C:\\Program Files\\Google\\Chrome\\Application\\chrome.exe",
+            "C:\\Program Files (x86)\\Google\\Chrome\\Application\\chrome.exe");
+
+    private final BrowserSettings settings;
+    private Process process;
+    private Path profile;
+    private CdpClient cdp;
+    private Thread shutdownHook;
+
+    public SharedChrome(BrowserSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Open a blank page of the game's viewport size in a new browser context.
+     */
+    public synchronized Target openTarget() {
+        CdpClient client = connection();
+        String contextId = (String) client.execute(null, "Target.createBrowserContext", Map.of())
+                .get("browserContextId");
+        String targetId = (String) client.execute(null, "Target.createTarget", Map.of(
+                "url", "about:blank",
+                "browserContextId", contextId,
+                "width", GamePage.VIEWPORT_WIDTH,
+                "height", GamePage.VIEWPORT_HEIGHT)).get("targetId");
+        String sessionId = (String) client.execute(null, "Target.attachToTarget", Map.of(
+                "targetId", targetId,
+                "flatten", true)).get("sessionId");
+        return new Target(contextId, targetId, sessionId, client);
+    }
+
+    /**
+     * Close the page and throw away its browser context.
+     */
+    public synchronized void closeTarget(Target target) {
+        if (cdp == null) return;
+        cdp.removeListeners(target.sessionId());
+        try {
+            cdp.execute(null, "Target.closeTarget", Map.of("targetId", target.targetId()));
+            cdp.execute(null, "Target.disposeBrowserContext", Map.of("browserContextId", target.browserContextId()));
+        } catch (IllegalStateException e) {
+            log.warn("Closing browser context {} failed: {}", target.browserContextId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Proportional set size of Chrome and all its child processes, shared pages split between
+     * the processes that map them.
+     *
+     * @return empty when Chrome is not running or the platform does not report it
+     */
+    public synchronized Optional<Long> memoryBytes() {
+        if (process == null || !process.isAlive()) return Optional.empty();
+        List<ProcessHandle> processes = new ArrayList<>();
+        processes.add(process.toHandle());
+        process.descendants().forEach(processes::add);
+        long total = 0;
+        for (ProcessHandle handle : processes) {
+            Path rollup = Path.of("/proc", Long.toString(handle.pid()), "smaps_rollup");
+            try (Stream<String> lines = Files.lines(rollup)) {
+                total += lines.filter(line -> line.startsWith("Pss:"))
+                        .mapToLong(line -> Long.parseLong(line.replaceAll("\\D", "")) * 1024)
+                        .sum();
+            } catch (IOException | UncheckedIOException e) {
+                if (handle.equals(process.toHandle())) return Optional.empty();
+                // A child that exited in the meantime
+            }
+        }
+        return Optional.of(total);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (shutdownHook != null) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // Already shutting down
+            }
+            shutdownHook = null;
+        }
+        stop();
+    }
+
+    private CdpClient connection() {
+        if (cdp == null) {
+            launch();
+        }
+        return cdp;
+    }
+
+    private void launch() {
+        long start = System.nanoTime();
+        try {
+            profile = Files.createTempDirectory("siepie-chrome");
+            List<String> command = new ArrayList<>(List.of(
+                    chromeBinary(),
+                    "--remote-debugging-port=0",
+                    "--remote-allow-origins=*",
+                    "--user-data-dir=" + profile,
+                    "--no-first-run",
+                    "--no-default-browser-check",
+                    "--disable-extensions",
+                    "--mute-audio",
+                    // Every actor is a background page as far as Chrome is concerned
+                    "--disable-background-timer-throttling",
+                    "--disable-renderer-backgrounding",
+                    "--disable-backgrounding-occluded-windows"));
+            if (settings.headless()) {
+                command.add("--headless=new");
+            }
+            command.add("about:blank");
+            process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            shutdownHook = new Thread(this::stop, "shared-chrome-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+            URI url = awaitDevToolsUrl();
+            cdp = CdpClient.connect(url);
+            log.info("Shared Chrome started in {} ms, DevTools at {}", (System.nanoTime() - start) / 1_000_000, url);
+        } catch (IOException e) {
+            stop();
+            throw new UncheckedIOException("Starting Chrome failed", e);
+        } catch (RuntimeException e) {
+            stop();
+            throw e;
+        }
+    }
+
+    /**
+     * Read Chrome's stderr up to the DevTools line, and keep draining it afterwards so Chrome
+     * never blocks on a full pipe.
+     */
+    private URI awaitDevToolsUrl() throws IOException {
+        var url = new CompletableFuture<URI>();
+        var reader = new BufferedReader(new InputStreamReader(process.getErrorStream(), StandardCharsets.UTF_8));
+        Thread drain = new Thread(() -> {
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher matcher = DEVTOOLS_URL.matcher(line);
+                    if (!url.isDone() && matcher.find()) {
+                        url.complete(URI.create(matcher.group(1)));
+                    } else {
+                        log.trace("chrome: {}", line);
+                    }
+                }
+                url.completeExceptionally(new IOException("Chrome exited with " + process.waitFor()));
+            } catch (IOException e) {
+                url.completeExceptionally(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "shared-chrome-stderr");
+        drain.setDaemon(true);
+        drain.start();
+        try {
+            return url.get(LAUNCH_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            throw new IOException("Chrome did not report a DevTools url within " + LAUNCH_TIMEOUT.toSeconds() + "s", e);
+        }
+    }
+
+    private String chromeBinary() {
+        if (settings.chromeBinary() != null && !settings.chromeBinary().isBlank()) {
+            return settings.chromeBinary();
+        }
+        String fromEnvironment = System.getenv("CHROME_BIN");
+        if (fromEnvironment != null && !fromEnvironment.isBlank()) {
+            return fromEnvironment;
+        }
+        String[] path = System.getenv().getOrDefault("PATH", "").split(File.pathSeparator);
+        for (String candidate : CHROME_CANDIDATES) {
+            if (candidate.contains(File.separator) || candidate.contains("/")) {
+                if (Files.isExecutable(Path.of(candidate))) return candidate;
+                continue;
+            }
+            for (String directory : path) {
+                if (!directory.isEmpty() && Files.isExecutable(Path.of(directory, candidate))) {
+                    return Path.of(directory, candidate).toString();
+                }
+            }
+        }
+        throw new IllegalStateException("No Chrome found, set siepie.browser.chrome-binary or CHROME_BIN");
+    }
+
+    private synchronized void stop() {
+        if (cdp != null) {
+            try {
+                cdp.execute(null, "Browser.close", Map.of(), CLOSE_TIMEOUT);
+            } catch (IllegalStateException e) {
+                // The connection drops while Chrome exits
+            }
+            cdp.close();
+            cdp = null;
+        }
+        if (process != null) {
+            try {
+                if (!process.waitFor(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                    process.descendants().forEach(ProcessHandle::destroyForcibly);
+                    process.destroyForcibly().waitFor(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            process = null;
+        }
+        if (profile != null) {
+            try (Stream<Path> files = Files.walk(profile)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            } catch (IOException e) {
+                log.debug("Could not delete Chrome profile {}", profile, e);
+            }
+            profile = null;
+        }
+    }
+
+    /**
+     * A page in its own browser context, attached as a flattened session.
+     */
+    public record Target(String browserContextId, String targetId, String sessionId, CdpClient cdp) {
+
+        public CdpChannel channel() {
+            return cdp.channel(sessionId);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package nl.devc0n.machinelearning.siepie.checkpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.TrainingState;
+import nl.devc0n.machinelearning.siepie.network.NetworkSnapshot;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes checkpoints of the full training state without stalling the step loop.
+ * <p>
+ * {@link #save()} only copies the parameters, updater state and target parameters into a
+ * preallocated buffer on the calling thread. A background thread serializes the buffer, forces
+ * it to disk and renames it into place atomically, so a crash never leaves a half-written
+ * checkpoint behind, and deletes all but the newest {@code keepLast} checkpoints.
+ * <p>
+ * A checkpoint is a DL4J model zip ({@code MultiLayerNetwork.load} reads it) with two extra
+ * entries for the target network and the agent counters.
+ */
+@Slf4j
+public class CheckpointManager implements AutoCloseable {
+
+    private static final String CONFIGURATION_ENTRY = "configuration.json";
+    private static final String COEFFICIENTS_ENTRY = "coefficients.bin";
+    private static final String UPDATER_STATE_ENTRY = "updaterState.bin";
+    private static final String TARGET_COEFFICIENTS_ENTRY = "targetCoefficients.bin";
+    private static final String TRAINING_STATE_ENTRY = "trainingState.json";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".zip";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // One buffer being written, one free for the next snapshot
+    private static final int BUFFERS = 2;
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(60);
+
+    private final AgentSiepie agent;
+    private final Path directory;
+    private final int keepLast;
+    private final BlockingQueue<NetworkSnapshot> freeBuffers = new ArrayBlockingQueue<>(BUFFERS);
+    private final ExecutorService writer;
+
+    public CheckpointManager(AgentSiepie agent, CheckpointSettings settings) throws IOException {
+        this.agent = agent;
+        this.directory = settings.directory();
+        this.keepLast = settings.keepLast();
+        Files.createDirectories(directory);
+        deleteTempFiles();
+        for (int i = 0; i < BUFFERS; i++) {
+            freeBuffers.add(agent.newSnapshot());
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Snapshot the agent now and write the checkpoint in the background.
+     *
+     * @return false when the checkpoint was skipped because earlier ones are still being written
+     */
+    public boolean save() {
+        NetworkSnapshot buffer = freeBuffers.poll();
+        if (buffer == null) {
+            log.warn("Checkpoint skipped, earlier checkpoints are still being written");
+            return false;
+        }
+        submit(buffer);
+        return true;
+    }
+
+    /**
+     * Snapshot the agent once a buffer is free and wait until the checkpoint is on disk, for the
+     * final checkpoint at shutdown.
+     *
+     * @return the checkpoint, empty when it could not be written within {@code timeout}
+     */
+    public Optional<Path> saveAndWait(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        NetworkSnapshot buffer = freeBuffers.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        if (buffer == null) {
+            log.error("Checkpoint not saved, earlier checkpoints are still being written after {}", timeout);
+            return Optional.empty();
+        }
+        try {
+            return Optional.ofNullable(submit(buffer).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+        } catch (ExecutionException e) {
+            // Already logged by the writer
+            return Optional.empty();
+        } catch (TimeoutException e) {
+            log.error("Checkpoint not written within {}", timeout);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Save the last checkpoint of a run, waiting for earlier ones instead of skipping it.
+     *
+     * @return whether it was written
+     */
+    public boolean saveFinal() {
+        try {
+            Optional<Path> path = saveAndWait(SHUTDOWN_TIMEOUT);
+            if (path.isPresent()) {
+                log.info("Final checkpoint saved to {}", path.get());
+                return true;
+            }
+            log.error("Final checkpoint was not saved");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while saving the final checkpoint");
+        }
+        return false;
+    }
+
+    private Future<Path> submit(NetworkSnapshot buffer) {
+        long start = System.nanoTime();
+        TrainingState state = agent.snapshot(buffer);
+        log.debug("Checkpoint snapshot took {} µs", (System.nanoTime() - start) / 1000);
+
+        return writer.submit(() -> {
+            try {
+                Path path = write(buffer, state);
+                log.info("Checkpoint saved to {}", path);
+                return path;
+            } catch (IOException e) {
+                log.error("Writing checkpoint to {} failed", directory, e);
+                throw e;
+            } finally {
+                freeBuffers.add(buffer);
+            }
+        });
+    }
+
+    /**
+     * Newest complete checkpoint in the directory.
+     */
+    public Optional<Path> latest() throws IOException {
+        List<Path> checkpoints = checkpoints();
+        return checkpoints.isEmpty() ? Optional.empty() : Optional.of(checkpoints.getLast());
+    }
+
+    /**
+     * Restore the agent from the newest checkpoint, if there is one.
+     */
+    public Optional<Path> restoreLatest() throws IOException {
+        Optional<Path> latest = latest();
+        if (latest.isPresent()) {
+            restore(latest.get(), agent);
+        }
+        return latest;
+    }
+
+    /**
+     * Restore network, updater state, target network and counters from {@code path}. A plain
+     * model zip written by {@link AgentSiepie#save} works too, the target network then starts
+     * from the model and the counters are left alone.
+     */
+    public static void restore(Path path, AgentSiepie agent) throws IOException {
+        long start = System.nanoTime();
+        MultiLayerNetwork model = MultiLayerNetwork.load(path.toFile(), true);
+        INDArray targetParams = null;
+        TrainingState state = null;
+        try (ZipFile zip = new ZipFile(path.toFile())) {
+            ZipEntry target = zip.getEntry(TARGET_COEFFICIENTS_ENTRY);
+            if (target != null) {
+                try (var in = new DataInputStream(new BufferedInputStream(zip.getInputStream(target)))) {
+                    targetParams = Nd4j.read(in);
+                }
+            }
+            ZipEntry training = zip.getEntry(TRAINING_STATE_ENTRY);
+            if (training != null) {
+                try (InputStream in = zip.getInputStream(training)) {
+                    state = JSON.readValue(in, TrainingState.class);
+                }
+            }
+        }
+        agent.restore(model, targetParams, state);
+        log.info("Restored {} in {} ms{}", path, (System.nanoTime() - start) / 1_000_000,
+                state == null ? "" : " at episode " + state.episodeCount() + ", step " + state.totalSteps());
+    }
+
+    /**
+     * Wait for checkpoints that are still being written.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(SHUTDOWN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                log.warn("Checkpoint writer did not finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Path write(NetworkSnapshot snapshot, TrainingState state) throws IOException {
+        Path path = directory.resolve(String.format("%s%010d%s", CHECKPOINT_PREFIX, state.totalSteps(), CHECKPOINT_SUFFIX));
+        Path temp = directory.resolve(path.getFileName() + TEMP_SUFFIX);
+
+        try (var file = new FileOutputStream(temp.toFile());
+             var zip = new ZipOutputStream(new BufferedOutputStream(file))) {
+            var out = new DataOutputStream(zip);
+            writeEntry(zip, CONFIGURATION_ENTRY, snapshot.configuration().getBytes(StandardCharsets.UTF_8));
+            writeArray(zip, out, COEFFICIENTS_ENTRY, snapshot.params());
+            if (snapshot.updaterState() != null) {
+                writeArray(zip, out, UPDATER_STATE_ENTRY, snapshot.updaterState());
+            }
+            writeArray(zip, out, TARGET_COEFFICIENTS_ENTRY, snapshot.targetParams());
+            writeEntry(zip, TRAINING_STATE_ENTRY, JSON.writeValueAsBytes(state));
+            zip.finish();
+            zip.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        deleteOldCheckpoints();
+        return path;
+    }
+
+    private static void writeEntry(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    private static void writeArray(ZipOutputStream zip, DataOutputStream out, String name, INDArray array) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        Nd4j.write(array, out);
+        out.flush();
+        zip.closeEntry();
+    }
+
+    /**
+     * Make the rename itself durable.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Directories cannot be opened on Windows, the rename is durable there already
+        }
+    }
+
+    private void deleteOldCheckpoints() throws IOException {
+        List<Path> checkpoints = checkpoints();
+        for (Path old : checkpoints.subList(0, Math.max(0, checkpoints.size() - keepLast))) {
+            Files.deleteIfExists(old);
+        }
+    }
+
+    private void deleteTempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(file -> file.getFileName().toString().endsWith(TEMP_SUFFIX)).toList()) {
+                log.warn("Deleting unfinished checkpoint {}", file);
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Complete checkpoints, oldest first.
+     */
+    private List<Path> checkpoints() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(CHECKPOINT_PREFIX) && name.endsWith(CHECKPOINT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+}
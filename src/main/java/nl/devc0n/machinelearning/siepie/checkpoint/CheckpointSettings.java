@@ -0,0 +1,27 @@
+package nl.devc0n.machinelearning.siepie.checkpoint;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Checkpointing during training, see {@link CheckpointManager}.
+ *
+ * @param directory       where checkpoints are written
+ * @param keepLast        number of most recent checkpoints to keep, older ones are deleted
+ * @param episodeInterval finished episodes between checkpoints
+ */
+public record CheckpointSettings(@DefaultValue("checkpoints") Path directory,
+                                 @DefaultValue("5") int keepLast,
+                                 @DefaultValue("10") int episodeInterval) {
+
+    public CheckpointSettings {
+        if (keepLast < 1 || episodeInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint keep-last and episode interval must be positive");
+        }
+    }
+
+    public static CheckpointSettings defaults() {
+        return new CheckpointSettings(Path.of("checkpoints"), 5, 10);
+    }
+}
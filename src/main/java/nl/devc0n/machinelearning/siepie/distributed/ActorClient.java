@@ -0,0 +1,268 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The actor end of distributed training: sends finished episodes to a {@link LearnerServer} and
+ * passes the weights it broadcasts on.
+ * <p>
+ * Episodes are compressed and written by the client's own thread, {@link #submit} only waits
+ * for a credit from the learner. A lost connection is retried every second, episodes submitted
+ * meanwhile are sent after the reconnect.
+ */
+@Slf4j
+public class ActorClient implements AutoCloseable {
+
+    private static final long SELECT_TIMEOUT_MILLIS = 50;
+    private static final long RECONNECT_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int CONNECT_TIMEOUT_MILLIS = 5_000;
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final long CREDIT_POLL_MILLIS = 100;
+
+    private final DistributedSettings settings;
+    private final String name;
+    private final WeightListener weightListener;
+    private final Semaphore credits = new Semaphore(0);
+    private final ConcurrentLinkedQueue<Outgoing> outbox = new ConcurrentLinkedQueue<>();
+    private final AtomicLong sentEpisodes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong creditWaitNanos = new AtomicLong();
+    private final Object weightsLock = new Object();
+    private volatile long weightsVersion = -1;
+    private volatile boolean running = true;
+    private volatile boolean closing;
+    private Selector selector;
+    private Thread thread;
+    // Only touched by the client thread
+    private Connection connection;
+    private EpisodeCodec codec;
+    private long nextConnectAttempt;
+
+    /**
+     * @param name           how the learner logs this actor
+     * @param weightListener receives the learner's weights, on the client thread
+     */
+    public ActorClient(DistributedSettings settings, String name, WeightListener weightListener) {
+        this.settings = settings;
+        this.name = name;
+        this.weightListener = weightListener;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        codec = new EpisodeCodec(settings.compressionLevel());
+        thread = new Thread(this::run, "actor-client");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a finished episode for the learner. Waits while the learner holds back credits.
+     *
+     * @param epsilon exploration rate the episode was played with
+     */
+    public void submit(Episode episode, double epsilon) throws InterruptedException {
+        if (!credits.tryAcquire()) {
+            long start = System.nanoTime();
+            while (!credits.tryAcquire(CREDIT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (!running || closing) {
+                    throw new IllegalStateException("Actor client is closed");
+                }
+            }
+            creditWaitNanos.addAndGet(System.nanoTime() - start);
+        }
+        outbox.add(new Outgoing(episode, epsilon));
+        selector.wakeup();
+    }
+
+    /**
+     * Wait until weights of at least {@code version} arrived.
+     *
+     * @return false when they did not arrive within {@code timeout}
+     */
+    public boolean awaitWeights(long version, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (weightsLock) {
+            while (weightsVersion < version) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(weightsLock, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Version of the most recent weights from the learner, -1 before the first.
+     */
+    public long getWeightsVersion() {
+        return weightsVersion;
+    }
+
+    public long getSentEpisodes() {
+        return sentEpisodes.get();
+    }
+
+    /**
+     * Compressed episode bytes sent to the learner.
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    /**
+     * Time {@link #submit} spent waiting for credits, i.e. how long the learner held this actor back.
+     */
+    public long getCreditWaitNanos() {
+        return creditWaitNanos.get();
+    }
+
+    private void run() {
+        long closeDeadline = Long.MAX_VALUE;
+        while (running) {
+            try {
+                if (closing) {
+                    if (closeDeadline == Long.MAX_VALUE) {
+                        closeDeadline = System.nanoTime() + CLOSE_TIMEOUT_NANOS;
+                    }
+                    boolean drained = outbox.isEmpty() && (connection == null || connection.queuedBytes() == 0);
+                    if (drained || System.nanoTime() > closeDeadline) break;
+                }
+                if (connection == null) {
+                    connect();
+                }
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                    if (key.isValid() && key.isReadable() && !connection.read(this::onMessage)) {
+                        throw new IOException("Learner closed the connection");
+                    }
+                }
+                selector.selectedKeys().clear();
+                sendEpisodes();
+            } catch (IOException e) {
+                selector.selectedKeys().clear();
+                disconnect(e.getMessage());
+            } catch (RuntimeException e) {
+                log.error("Actor client failed", e);
+                disconnect(e.getMessage());
+            }
+        }
+        if (connection != null) {
+            connection.close();
+        }
+    }
+
+    private void connect() throws IOException {
+        long now = System.nanoTime();
+        if (now < nextConnectAttempt) return;
+        nextConnectAttempt = now + RECONNECT_DELAY_NANOS;
+
+        var channel = SocketChannel.open();
+        try {
+            channel.socket().connect(new InetSocketAddress(settings.host(), settings.port()), CONNECT_TIMEOUT_MILLIS);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        connection = new Connection(channel, selector);
+        // The learner grants fresh credits to every connection
+        credits.drainPermits();
+        byte[] actorName = name.getBytes(StandardCharsets.UTF_8);
+        var hello = Connection.message(Connection.HELLO, 4 + actorName.length)
+                .putInt(Connection.PROTOCOL_VERSION)
+                .put(actorName);
+        connection.send(hello.flip());
+        log.info("Actor {} connected to learner at {}", name, connection.peer());
+    }
+
+    private void disconnect(String reason) {
+        if (connection == null) {
+            log.debug("Learner at {}:{} not reachable: {}", settings.host(), settings.port(), reason);
+            return;
+        }
+        log.warn("Lost connection to learner, {} bytes not sent: {}", connection.queuedBytes(), reason);
+        connection.close();
+        connection = null;
+    }
+
+    private void sendEpisodes() throws IOException {
+        if (connection == null) return;
+        Outgoing outgoing;
+        while ((outgoing = outbox.poll()) != null) {
+            ByteBuffer message = codec.encode(outgoing.episode(), outgoing.epsilon());
+            sentBytes.addAndGet(message.remaining() - Connection.HEADER_BYTES);
+            connection.send(message);
+            sentEpisodes.incrementAndGet();
+        }
+    }
+
+    private void onMessage(byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case Connection.CREDIT -> credits.release(payload.getInt());
+            case Connection.WEIGHTS -> {
+                long version = payload.getLong();
+                float[] weights = new float[payload.getInt()];
+                payload.asFloatBuffer().get(weights);
+                weightListener.accept(version, weights);
+                synchronized (weightsLock) {
+                    weightsVersion = version;
+                    weightsLock.notifyAll();
+                }
+            }
+            default -> throw new IOException("Unexpected message type " + type);
+        }
+    }
+
+    /**
+     * Send what is queued, waiting a few seconds at most, and disconnect.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        if (thread != null) {
+            selector.wakeup();
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(CLOSE_TIMEOUT_NANOS) + 1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        running = false;
+        try {
+            if (selector != null) selector.close();
+        } catch (IOException e) {
+            log.warn("Closing actor client failed", e);
+        }
+        if (codec != null) {
+            codec.close();
+        }
+    }
+
+    /**
+     * Takes the weights the learner broadcasts.
+     */
+    @FunctionalInterface
+    public interface WeightListener {
+        void accept(long version, float[] weights);
+    }
+
+    private record Outgoing(Episode episode, double epsilon) {
+    }
+}
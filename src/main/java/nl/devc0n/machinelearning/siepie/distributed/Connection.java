@@ -0,0 +1,167 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Length-prefixed messages over a non-blocking socket, only used from the thread that runs
+ * its selector. A message is
+ * <pre>
+ * int  length   of type and payload
+ * byte type
+ * byte payload[length - 1]
+ * </pre>
+ * All values are little-endian, like the episode log.
+ */
+final class Connection implements AutoCloseable {
+
+    /**
+     * Actor to learner, payload: int PROTOCOL_VERSION, UTF-8 actor name.
+     */
+    static final byte HELLO = 1;
+    /**
+     * Actor to learner, payload: see {@link EpisodeCodec}.
+     */
+    static final byte EPISODE = 2;
+    /**
+     * Learner to actor, payload: int number of further episodes the actor may send.
+     */
+    static final byte CREDIT = 3;
+    /**
+     * Learner to actor, payload: long version, int count, float weights[count].
+     */
+    static final byte WEIGHTS = 4;
+    static final int PROTOCOL_VERSION = 1;
+    static final int HEADER_BYTES = 5;
+    private static final int MAX_MESSAGE_BYTES = 512 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    private ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private long queuedBytes;
+
+    Connection(SocketChannel channel, Selector selector) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        this.channel = channel;
+        this.key = channel.register(selector, SelectionKey.OP_READ);
+    }
+
+    /**
+     * Keep {@code owner} with the selection key, to find it from selected keys.
+     */
+    void attach(Object owner) {
+        key.attach(owner);
+    }
+
+    /**
+     * A message buffer with the header written, put the payload and {@link ByteBuffer#flip()} it.
+     */
+    static ByteBuffer message(byte type, int payloadBytes) {
+        var message = ByteBuffer.allocate(HEADER_BYTES + payloadBytes).order(ByteOrder.LITTLE_ENDIAN);
+        message.putInt(payloadBytes + 1).put(type);
+        return message;
+    }
+
+    /**
+     * Read what the socket has and call {@code handler} for every complete message. The payload
+     * is only valid during the call.
+     *
+     * @return false once the peer closed the connection
+     */
+    boolean read(MessageHandler handler) throws IOException {
+        while (true) {
+            int read = channel.read(in);
+            if (read < 0) return false;
+            if (read == 0) return true;
+            dispatch(handler);
+        }
+    }
+
+    /**
+     * Queue a flipped message and write as much of the queue as the socket takes.
+     */
+    void send(ByteBuffer message) throws IOException {
+        queuedBytes += message.remaining();
+        out.add(message);
+        flush();
+    }
+
+    /**
+     * Continue writing queued messages, called when the socket is writable again.
+     */
+    void flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer head = out.peek();
+            queuedBytes -= channel.write(head);
+            if (head.hasRemaining()) break;
+            out.poll();
+        }
+        key.interestOps(out.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Bytes queued but not yet taken by the socket.
+     */
+    long queuedBytes() {
+        return queuedBytes;
+    }
+
+    String peer() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "closed connection";
+        }
+    }
+
+    @Override
+    public void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    private void dispatch(MessageHandler handler) throws IOException {
+        in.flip();
+        while (in.remaining() >= 4) {
+            int start = in.position();
+            int length = in.getInt(start);
+            if (length < 1 || length > MAX_MESSAGE_BYTES) {
+                throw new IOException("Invalid message length " + length + " from " + peer());
+            }
+            if (in.remaining() < 4 + length) break;
+            byte type = in.get(start + 4);
+            ByteBuffer payload = in.slice(start + HEADER_BYTES, length - 1).order(ByteOrder.LITTLE_ENDIAN);
+            in.position(start + 4 + length);
+            handler.onMessage(type, payload);
+        }
+        in.compact();
+        // Make room for the whole of a message that is larger than the buffer
+        if (in.position() >= 4) {
+            int needed = 4 + in.getInt(0);
+            if (needed > in.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(needed).order(ByteOrder.LITTLE_ENDIAN);
+                in.flip();
+                larger.put(in);
+                in = larger;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    interface MessageHandler {
+        void onMessage(byte type, ByteBuffer payload) throws IOException;
+    }
+}
@@ -0,0 +1,101 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.SiepieApplication;
+import nl.devc0n.machinelearning.siepie.SiepieProperties;
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.Learner;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointManager;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.TrainingStatistics;
+
+import java.io.IOException;
+
+/**
+ * The learner process of distributed training. Nothing is played here: actor processes connect
+ * to a {@link LearnerServer}, their episodes go to the {@link Learner} thread and its weights go
+ * back to them.
+ */
+@Slf4j
+public class DistributedLearner implements AutoCloseable {
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 10_000;
+
+    private final AgentSiepie agent;
+    private final ReplayBuffer replayBuffer;
+    private final LearnerServer server;
+    private final CheckpointManager checkpoints;
+    private final TrainingStatistics statistics;
+    private final int checkpointInterval;
+    private volatile boolean running = true;
+
+    public DistributedLearner(SiepieProperties properties, StepMetrics metrics) throws IOException {
+        this.replayBuffer = new ReplayBuffer(properties.replay().capacity());
+        // Always a learner thread, the server thread only hands the episodes over
+        this.agent = new AgentSiepie(replayBuffer, true);
+        agent.enableDataParallel(properties.dataParallel());
+        if (properties.replay().persist()) {
+            agent.persistEpisodes(properties.replay().directory());
+        }
+        metrics.bind(agent, replayBuffer);
+        this.statistics = new TrainingStatistics(properties.statistics(), agent::getTotalSteps);
+        agent.trackStatistics(statistics);
+        this.checkpoints = new CheckpointManager(agent, properties.checkpoint());
+        this.checkpointInterval = properties.checkpoint().episodeInterval();
+        SiepieApplication.restoreCheckpoint(checkpoints, agent);
+
+        Learner learner = agent.getLearner();
+        this.server = new LearnerServer(properties.distributed(), agent::ingest, learner::getQueueDepth,
+                new LearnerServer.WeightSource() {
+                    @Override
+                    public long version() {
+                        return learner.getUpdates();
+                    }
+
+                    @Override
+                    public float[] weights() {
+                        return agent.copyWeights();
+                    }
+                });
+        metrics.bind(server);
+    }
+
+    /**
+     * Serve actors and checkpoint every {@code episodeInterval} episodes until {@link #close()}.
+     */
+    public void run() throws IOException, InterruptedException {
+        statistics.start();
+        server.start();
+        int checkpointed = agent.getEpisodeCount() / checkpointInterval;
+        while (running) {
+            Thread.sleep(PROGRESS_INTERVAL_MILLIS);
+            log.info("==> Actors: {} | Episodes: {} | Steps: {} | Received: {} MB | Buffer: {} steps | {}",
+                    server.getConnectedActors(), agent.getEpisodeCount(), agent.getTotalSteps(),
+                    server.getReceivedBytes() >> 20, replayBuffer.getTotalSteps(), statistics.summary());
+
+            int checkpoint = agent.getEpisodeCount() / checkpointInterval;
+            if (checkpoint != checkpointed) {
+                checkpoints.save();
+                checkpointed = checkpoint;
+            }
+        }
+    }
+
+    /**
+     * Stop serving actors and write a final checkpoint.
+     */
+    @Override
+    public void close() {
+        running = false;
+        server.close();
+        try {
+            agent.getLearner().stop();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoints.saveFinal();
+        checkpoints.close();
+        statistics.close();
+    }
+}
@@ -0,0 +1,19 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+/**
+ * What this process does in a training run spread over several JVMs.
+ */
+public enum DistributedRole {
+    /**
+     * Play and train in this process.
+     */
+    NONE,
+    /**
+     * Play only, send finished episodes to the learner and act with the weights it sends back.
+     */
+    ACTOR,
+    /**
+     * Train only, on the episodes of every connected actor.
+     */
+    LEARNER
+}
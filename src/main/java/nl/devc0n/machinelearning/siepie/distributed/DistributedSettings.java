@@ -0,0 +1,34 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for actors and a learner in separate processes, see {@link LearnerServer} and
+ * {@link ActorClient}.
+ *
+ * @param role             what this process does
+ * @param host             learner address actors connect to, or the address the learner binds
+ * @param port             learner port, 0 binds any free port
+ * @param credits          episodes an actor may have in flight before it waits for the learner
+ * @param maxBacklog       episodes waiting for the learner thread above which credits are held back
+ * @param weightInterval   minimum time between weight broadcasts to the actors
+ * @param compressionLevel Deflater level of the episode frames, 1 is fastest
+ */
+public record DistributedSettings(@DefaultValue("NONE") DistributedRole role,
+                                  @DefaultValue("127.0.0.1") String host,
+                                  @DefaultValue("7451") int port,
+                                  @DefaultValue("4") int credits,
+                                  @DefaultValue("32") int maxBacklog,
+                                  @DefaultValue("10s") Duration weightInterval,
+                                  @DefaultValue("1") int compressionLevel) {
+
+    public static DistributedSettings defaults() {
+        return new DistributedSettings(DistributedRole.NONE, "127.0.0.1", 7451, 4, 32, Duration.ofSeconds(10), 1);
+    }
+
+    public DistributedSettings withPort(int port) {
+        return new DistributedSettings(role, host, port, credits, maxBacklog, weightInterval, compressionLevel);
+    }
+}
@@ -0,0 +1,157 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.GameStep;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Finished episodes as an actor sends them to the learner: a header followed by the columns of
+ * an {@link nl.devc0n.machinelearning.siepie.memory.EpisodeLog} record, deflated.
+ * <pre>
+ * int   finalScore
+ * float epsilon        exploration rate the episode was played with
+ * int   steps (n)
+ * int   frameSize
+ * int   columnsLength  before compression
+ * byte  deflated[]     frames[(n + 1) * frameSize], actions[n], terminals[n],
+ *                      float rewards[n], int stepNumbers[n]
+ * </pre>
+ * Frames stay uint8 grayscale, successive frames are much alike and deflate well.
+ * <p>
+ * Keeps its Deflater, Inflater and buffers between episodes, one codec per thread.
+ */
+final class EpisodeCodec implements AutoCloseable {
+
+    static final int HEADER_BYTES = 20;
+    private static final long MAX_COLUMNS_BYTES = Integer.MAX_VALUE - 64;
+
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater();
+    private byte[] columns = new byte[0];
+    private byte[] compressed = new byte[0];
+
+    EpisodeCodec(int compressionLevel) {
+        this.deflater = new Deflater(compressionLevel);
+    }
+
+    /**
+     * @return a complete {@link Connection#EPISODE} message, flipped
+     */
+    ByteBuffer encode(Episode episode, double epsilon) {
+        List<GameStep> steps = episode.getSteps();
+        int n = steps.size();
+        int frameSize = episode.getInitialFrame().length;
+        long columnsLength = columnsLength(n, frameSize);
+        if (columnsLength > MAX_COLUMNS_BYTES) {
+            throw new IllegalArgumentException("Episode of " + n + " steps is too large to send");
+        }
+        int length = (int) columnsLength;
+        if (columns.length < length) {
+            columns = new byte[length];
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(columns, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(episode.getInitialFrame());
+        for (GameStep step : steps) buffer.put(step.getFrame());
+        for (GameStep step : steps) buffer.put((byte) step.getAction().index);
+        for (GameStep step : steps) buffer.put((byte) (step.isTerminal() ? 1 : 0));
+        for (GameStep step : steps) buffer.putFloat(step.getReward());
+        for (GameStep step : steps) buffer.putInt(step.getStepNumber());
+
+        deflater.reset();
+        deflater.setInput(columns, 0, length);
+        deflater.finish();
+        int deflated = 0;
+        while (!deflater.finished()) {
+            if (deflated == compressed.length) {
+                compressed = Arrays.copyOf(compressed, Math.max(64 * 1024, compressed.length * 2));
+            }
+            deflated += deflater.deflate(compressed, deflated, compressed.length - deflated);
+        }
+
+        ByteBuffer message = Connection.message(Connection.EPISODE, HEADER_BYTES + deflated);
+        message.putInt(episode.getFinalScore())
+                .putFloat((float) epsilon)
+                .putInt(n)
+                .putInt(frameSize)
+                .putInt(length)
+                .put(compressed, 0, deflated);
+        return message.flip();
+    }
+
+    ReceivedEpisode decode(ByteBuffer payload) throws IOException {
+        if (payload.remaining() < HEADER_BYTES) {
+            throw new IOException("Episode message of " + payload.remaining() + " bytes is too short");
+        }
+        int finalScore = payload.getInt();
+        double epsilon = payload.getFloat();
+        int n = payload.getInt();
+        int frameSize = payload.getInt();
+        int length = payload.getInt();
+        if (n < 0 || frameSize <= 0 || length != columnsLength(n, frameSize)) {
+            throw new IOException("Invalid episode header: " + n + " steps of " + frameSize + " bytes in " + length);
+        }
+        if (columns.length < length) {
+            columns = new byte[length];
+        }
+
+        inflater.reset();
+        inflater.setInput(payload);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(columns, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += count;
+            }
+            if (inflated != length || !inflater.finished()) {
+                throw new IOException("Episode columns inflated to " + inflated + " of " + length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt episode columns", e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(columns, 0, length).order(ByteOrder.LITTLE_ENDIAN);
+        int actions = (n + 1) * frameSize;
+        int terminals = actions + n;
+        int rewards = terminals + n;
+        int stepNumbers = rewards + 4 * n;
+        var episode = new Episode(Arrays.copyOfRange(columns, 0, frameSize));
+        for (int j = 0; j < n; j++) {
+            int frame = (j + 1) * frameSize;
+            var step = new GameStep(Arrays.copyOfRange(columns, frame, frame + frameSize),
+                    Action.fromIndex(columns[actions + j]),
+                    buffer.getInt(stepNumbers + 4 * j));
+            step.setReward(buffer.getFloat(rewards + 4 * j));
+            step.setTerminal(columns[terminals + j] != 0);
+            episode.addStep(step);
+        }
+        episode.markFinished(finalScore);
+        return new ReceivedEpisode(episode, epsilon);
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+    private static long columnsLength(int n, int frameSize) {
+        return ((long) n + 1) * frameSize + 10L * n;
+    }
+
+    /**
+     * An episode as played by an actor, with the exploration rate it was played with.
+     */
+    record ReceivedEpisode(Episode episode, double epsilon) {
+    }
+}
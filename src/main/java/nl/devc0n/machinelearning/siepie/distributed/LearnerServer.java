@@ -0,0 +1,300 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * The learner end of distributed training: accepts actor connections, hands the episodes they
+ * send to the learner and broadcasts its weights back.
+ * <p>
+ * One thread runs a selector over all actors. Backpressure is credit based: an actor starts
+ * with {@link DistributedSettings#credits()} credits and spends one per episode. The credit
+ * comes back once the episode is handed to the learner, but only while fewer than
+ * {@link DistributedSettings#maxBacklog()} episodes wait for the learner, so a learner that
+ * falls behind stalls the actors instead of buffering without bound.
+ * <p>
+ * Weights go out at most once per {@link DistributedSettings#weightInterval()}, and only when
+ * the learner trained since. An actor that has not taken the previous weights yet skips a
+ * broadcast. New actors get the current weights right away.
+ */
+@Slf4j
+public class LearnerServer implements AutoCloseable {
+
+    private static final long SELECT_TIMEOUT_MILLIS = 50;
+
+    private final DistributedSettings settings;
+    private final EpisodeSink episodes;
+    private final IntSupplier backlog;
+    private final WeightSource weights;
+    private final List<Actor> actors = new ArrayList<>();
+    private final AtomicLong receivedEpisodes = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private volatile int connectedActors;
+    private volatile boolean running = true;
+    private Selector selector;
+    private ServerSocketChannel server;
+    private Thread thread;
+    // Only touched by the server thread
+    private EpisodeCodec codec;
+    private ByteBuffer weightsMessage;
+    private long weightsVersion = -1;
+    private long weightsRefreshedAt;
+
+    /**
+     * @param episodes receives every episode, on the server thread
+     * @param backlog  episodes handed over that the learner has not taken in yet
+     * @param weights  the learner's current weights
+     */
+    public LearnerServer(DistributedSettings settings, EpisodeSink episodes, IntSupplier backlog, WeightSource weights) {
+        this.settings = settings;
+        this.episodes = episodes;
+        this.backlog = backlog;
+        this.weights = weights;
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(settings.host(), settings.port()));
+        server.configureBlocking(false);
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        codec = new EpisodeCodec(settings.compressionLevel());
+        thread = new Thread(this::run, "learner-server");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Learner listening for actors on {}", server.getLocalAddress());
+    }
+
+    /**
+     * Port the server is bound to, useful when {@link DistributedSettings#port()} is 0.
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("Learner server is closed", e);
+        }
+    }
+
+    public long getReceivedEpisodes() {
+        return receivedEpisodes.get();
+    }
+
+    /**
+     * Compressed episode bytes received from all actors.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    public int getConnectedActors() {
+        return connectedActors;
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MILLIS);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.attachment() instanceof Actor actor) {
+                        handle(actor, key);
+                    }
+                }
+                selector.selectedKeys().clear();
+                grantCredits();
+                broadcastWeights();
+            } catch (IOException e) {
+                if (running) {
+                    log.error("Learner server failed", e);
+                }
+            } catch (RuntimeException e) {
+                log.error("Learner server failed", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        var channel = server.accept();
+        if (channel == null) return;
+        var actor = new Actor(new Connection(channel, selector));
+        actor.connection.attach(actor);
+        actors.add(actor);
+        connectedActors = actors.size();
+    }
+
+    private void handle(Actor actor, SelectionKey key) {
+        try {
+            if (key.isWritable()) {
+                actor.connection.flush();
+            }
+            if (key.isReadable() && !actor.connection.read((type, payload) -> onMessage(actor, type, payload))) {
+                disconnect(actor, "closed the connection");
+            }
+        } catch (IOException e) {
+            disconnect(actor, e.getMessage());
+        } catch (RuntimeException e) {
+            // A malformed message from one actor, the others keep going
+            log.error("Handling a message from actor {} failed", actor.name != null ? actor.name : actor.connection.peer(), e);
+            disconnect(actor, e.toString());
+        }
+    }
+
+    private void onMessage(Actor actor, byte type, ByteBuffer payload) throws IOException {
+        switch (type) {
+            case Connection.HELLO -> {
+                int version = payload.getInt();
+                if (version != Connection.PROTOCOL_VERSION) {
+                    throw new IOException("Actor speaks protocol " + version + ", learner " + Connection.PROTOCOL_VERSION);
+                }
+                actor.name = StandardCharsets.UTF_8.decode(payload).toString();
+                log.info("Actor {} connected from {}", actor.name, actor.connection.peer());
+                refreshWeights();
+                actor.connection.send(weightsMessage.duplicate());
+                actor.sentVersion = weightsVersion;
+                actor.owedCredits = settings.credits();
+            }
+            case Connection.EPISODE -> {
+                receivedBytes.addAndGet(payload.remaining());
+                var received = codec.decode(payload);
+                episodes.accept(received.episode(), received.epsilon());
+                receivedEpisodes.incrementAndGet();
+                actor.owedCredits++;
+            }
+            default -> throw new IOException("Unexpected message type " + type);
+        }
+    }
+
+    /**
+     * Return spent credits while the learner keeps up, the actors wait otherwise.
+     */
+    private void grantCredits() {
+        for (Actor actor : List.copyOf(actors)) {
+            if (actor.owedCredits == 0 || backlog.getAsInt() >= settings.maxBacklog()) continue;
+            var message = Connection.message(Connection.CREDIT, 4).putInt(actor.owedCredits);
+            actor.owedCredits = 0;
+            try {
+                actor.connection.send(message.flip());
+            } catch (IOException e) {
+                disconnect(actor, e.getMessage());
+            }
+        }
+    }
+
+    private void broadcastWeights() {
+        // Created by the first hello
+        if (weightsMessage == null) return;
+        if (weights.version() != weightsVersion
+                && System.nanoTime() - weightsRefreshedAt >= settings.weightInterval().toNanos()) {
+            refreshWeights();
+        }
+        for (Actor actor : List.copyOf(actors)) {
+            // Still busy with earlier weights, the next broadcast is newer anyway
+            if (actor.name == null || actor.sentVersion == weightsVersion || actor.connection.queuedBytes() > 0) continue;
+            try {
+                actor.connection.send(weightsMessage.duplicate());
+                actor.sentVersion = weightsVersion;
+            } catch (IOException e) {
+                disconnect(actor, e.getMessage());
+            }
+        }
+    }
+
+    private void refreshWeights() {
+        long version = weights.version();
+        if (weightsMessage != null && version == weightsVersion) return;
+        float[] current = weights.weights();
+        var message = Connection.message(Connection.WEIGHTS, 12 + 4 * current.length)
+                .putLong(version)
+                .putInt(current.length);
+        for (float value : current) {
+            message.putFloat(value);
+        }
+        weightsMessage = message.flip();
+        weightsVersion = version;
+        weightsRefreshedAt = System.nanoTime();
+    }
+
+    private void disconnect(Actor actor, String reason) {
+        log.warn("Actor {} disconnected: {}", actor.name != null ? actor.name : actor.connection.peer(), reason);
+        actor.connection.close();
+        actors.remove(actor);
+        connectedActors = actors.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (thread != null) {
+            selector.wakeup();
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        actors.forEach(actor -> actor.connection.close());
+        actors.clear();
+        try {
+            if (server != null) server.close();
+            if (selector != null) selector.close();
+        } catch (IOException e) {
+            log.warn("Closing learner server failed", e);
+        }
+        if (codec != null) {
+            codec.close();
+        }
+    }
+
+    /**
+     * Takes the episodes actors send.
+     */
+    @FunctionalInterface
+    public interface EpisodeSink {
+        /**
+         * @param epsilon exploration rate the actor played the episode with
+         */
+        void accept(Episode episode, double epsilon);
+    }
+
+    /**
+     * The weights the learner hands to actors.
+     */
+    public interface WeightSource {
+        /**
+         * Increases whenever the weights change.
+         */
+        long version();
+
+        /**
+         * A copy of the flat parameter vector.
+         */
+        float[] weights();
+    }
+
+    private static final class Actor {
+        final Connection connection;
+        String name;
+        int owedCredits;
+        long sentVersion = -1;
+
+        Actor(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
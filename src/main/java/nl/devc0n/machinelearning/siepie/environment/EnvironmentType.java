@@ -0,0 +1,12 @@
+package nl.devc0n.machinelearning.siepie.environment;
+
+public enum EnvironmentType {
+    /**
+     * The real game in Chrome, see {@link nl.devc0n.machinelearning.siepie.BrowserManager}.
+     */
+    BROWSER,
+    /**
+     * The headless {@link LaneGameSimulator}.
+     */
+    SIMULATOR
+}
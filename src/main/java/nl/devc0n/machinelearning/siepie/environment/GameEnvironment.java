@@ -0,0 +1,55 @@
+package nl.devc0n.machinelearning.siepie.environment;
+
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+
+/**
+ * A game the agent can play: the browser game or the in-process simulator.
+ */
+public interface GameEnvironment extends AutoCloseable {
+
+    /**
+     * Size of the frames the network sees.
+     */
+    int FRAME_WIDTH = 84;
+    int FRAME_HEIGHT = 84;
+
+    /**
+     * Bring the game up to the point where the first episode is running.
+     */
+    void start();
+
+    /**
+     * @return the current frame as an 84x84 {@code TYPE_BYTE_GRAY} image, a new image on every call
+     */
+    BufferedImage takeScreenshot() throws IOException;
+
+    /**
+     * The current frame as {@link #FRAME_WIDTH} x {@link #FRAME_HEIGHT} grayscale pixels, row by
+     * row. The step loop keeps frames in episodes and frame stacks, so every call returns a new
+     * array.
+     */
+    default byte[] captureFrame() throws IOException {
+        return ((DataBufferByte) takeScreenshot().getRaster().getDataBuffer()).getData();
+    }
+
+    void performAction(Action action);
+
+    boolean detectDeathScreen();
+
+    int extractFinalScore() throws InterruptedException;
+
+    void restartGame() throws InterruptedException;
+
+    /**
+     * Real-time games keep running between steps, so the step loop has to pace itself.
+     * Simulated games only advance when an action is performed.
+     */
+    boolean isRealTime();
+
+    @Override
+    void close();
+}
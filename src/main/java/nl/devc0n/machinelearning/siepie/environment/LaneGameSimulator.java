@@ -0,0 +1,251 @@
+package nl.devc0n.machinelearning.siepie.environment;
+
+import lombok.Getter;
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Headless stand-in for the browser game: three lanes with obstacles scrolling towards the
+ * player, rendered straight into 84x84 grayscale frames.
+ * <p>
+ * Blocks have to be dodged by changing lane, low hurdles by jumping ({@link Action#UP}) and
+ * beams by ducking ({@link Action#DOWN}). The game speeds up over time. It only advances when
+ * an action is performed, so it runs as fast as the caller steps it.
+ */
+public class LaneGameSimulator implements GameEnvironment {
+
+    private static final int SIZE = 84;
+    private static final int LANES = 3;
+    private static final int LANE_WIDTH = SIZE / LANES;
+    private static final int PLAYER_TOP = 64;
+    private static final int PLAYER_HEIGHT = 12;
+    private static final int OBSTACLE_HEIGHT = 12;
+    // One step covers about 200ms of game time
+    private static final int TICKS_PER_STEP = 3;
+    private static final int JUMP_TICKS = 9;
+    private static final int DUCK_TICKS = 9;
+    private static final float START_SPEED = 1.0f;
+    private static final float MAX_SPEED = 3.0f;
+    private static final float ACCELERATION = 0.0005f;
+    private static final int START_SPAWN_INTERVAL = 26;
+    private static final int MIN_SPAWN_INTERVAL = 10;
+
+    private static final byte BACKGROUND_SHADE = 60;
+    private static final byte LANE_SHADE = 100;
+    private static final byte BLOCK_SHADE = (byte) 255;
+    private static final byte HURDLE_SHADE = (byte) 200;
+    private static final byte BEAM_SHADE = (byte) 150;
+    private static final byte PLAYER_SHADE = (byte) 230;
+    private static final byte SHADOW_SHADE = 30;
+
+    private final SplittableRandom random;
+    private final List<Obstacle> obstacles = new ArrayList<>();
+    private int lane;
+    private int jumpTicks;
+    private int duckTicks;
+    private float speed;
+    private int ticks;
+    private int nextSpawn;
+    private boolean dead;
+    @Getter
+    private long totalSteps;
+
+    public LaneGameSimulator(long seed) {
+        this.random = new SplittableRandom(seed);
+    }
+
+    public LaneGameSimulator() {
+        this(System.nanoTime());
+    }
+
+    @Override
+    public void start() {
+        reset();
+    }
+
+    @Override
+    public BufferedImage takeScreenshot() {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        render(((DataBufferByte) image.getRaster().getDataBuffer()).getData());
+        return image;
+    }
+
+    @Override
+    public byte[] captureFrame() {
+        byte[] frame = new byte[SIZE * SIZE];
+        render(frame);
+        return frame;
+    }
+
+    @Override
+    public void performAction(Action action) {
+        if (dead) return;
+        totalSteps++;
+
+        boolean onGround = jumpTicks == 0 && duckTicks == 0;
+        switch (action) {
+            case LEFT -> lane = Math.max(0, lane - 1);
+            case RIGHT -> lane = Math.min(LANES - 1, lane + 1);
+            case UP -> {
+                if (onGround) jumpTicks = JUMP_TICKS;
+            }
+            case DOWN -> {
+                if (onGround) duckTicks = DUCK_TICKS;
+            }
+            case NOTHING -> {
+            }
+        }
+
+        for (int i = 0; i < TICKS_PER_STEP && !dead; i++) {
+            tick();
+        }
+    }
+
+    @Override
+    public boolean detectDeathScreen() {
+        return dead;
+    }
+
+    @Override
+    public int extractFinalScore() {
+        return ticks / 10;
+    }
+
+    @Override
+    public void restartGame() {
+        reset();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        obstacles.clear();
+    }
+
+    private void reset() {
+        obstacles.clear();
+        lane = LANES / 2;
+        jumpTicks = 0;
+        duckTicks = 0;
+        speed = START_SPEED;
+        ticks = 0;
+        nextSpawn = START_SPAWN_INTERVAL;
+        dead = false;
+    }
+
+    private void tick() {
+        ticks++;
+        if (jumpTicks > 0) jumpTicks--;
+        if (duckTicks > 0) duckTicks--;
+        speed = Math.min(MAX_SPEED, speed + ACCELERATION);
+
+        if (--nextSpawn <= 0) {
+            spawn();
+            int interval = START_SPAWN_INTERVAL - ticks / 200;
+            nextSpawn = Math.max(MIN_SPAWN_INTERVAL, interval);
+        }
+
+        Iterator<Obstacle> it = obstacles.iterator();
+        while (it.hasNext()) {
+            Obstacle obstacle = it.next();
+            obstacle.y += speed;
+            if (obstacle.y >= SIZE) {
+                it.remove();
+            } else if (hits(obstacle)) {
+                dead = true;
+            }
+        }
+    }
+
+    private void spawn() {
+        int type = random.nextInt(3);
+        int obstacleLane = random.nextInt(LANES);
+        obstacles.add(new Obstacle(obstacleLane, type, -OBSTACLE_HEIGHT));
+        // Sometimes a second block, but always leave a lane open
+        if (type == Obstacle.BLOCK && random.nextInt(3) == 0) {
+            obstacles.add(new Obstacle((obstacleLane + 1 + random.nextInt(LANES - 1)) % LANES,
+                    Obstacle.BLOCK, -OBSTACLE_HEIGHT));
+        }
+    }
+
+    private boolean hits(Obstacle obstacle) {
+        if (obstacle.lane != lane) return false;
+        if (obstacle.y + OBSTACLE_HEIGHT <= PLAYER_TOP || obstacle.y >= PLAYER_TOP + PLAYER_HEIGHT) return false;
+        return switch (obstacle.type) {
+            case Obstacle.HURDLE -> jumpTicks == 0;
+            case Obstacle.BEAM -> duckTicks == 0;
+            default -> true;
+        };
+    }
+
+    private void render(byte[] pixels) {
+        Arrays.fill(pixels, BACKGROUND_SHADE);
+
+        // Dashed lane markings scroll with the game so motion is visible between frames
+        int dashOffset = (int) (ticks * speed) % 8;
+        for (int l = 1; l < LANES; l++) {
+            int x = l * LANE_WIDTH;
+            for (int y = 0; y < SIZE; y++) {
+                if (((y + dashOffset) & 7) < 4) pixels[y * SIZE + x] = LANE_SHADE;
+            }
+        }
+
+        for (Obstacle obstacle : obstacles) {
+            int x = obstacle.lane * LANE_WIDTH + 3;
+            int top = (int) obstacle.y;
+            switch (obstacle.type) {
+                case Obstacle.HURDLE -> fill(pixels, x, top + OBSTACLE_HEIGHT / 2, LANE_WIDTH - 6, OBSTACLE_HEIGHT / 2, HURDLE_SHADE);
+                case Obstacle.BEAM -> fill(pixels, x, top, LANE_WIDTH - 6, OBSTACLE_HEIGHT / 3, BEAM_SHADE);
+                default -> fill(pixels, x, top, LANE_WIDTH - 6, OBSTACLE_HEIGHT, BLOCK_SHADE);
+            }
+        }
+
+        int playerX = lane * LANE_WIDTH + 7;
+        int playerWidth = LANE_WIDTH - 14;
+        if (jumpTicks > 0) {
+            fill(pixels, playerX, PLAYER_TOP + PLAYER_HEIGHT - 2, playerWidth, 2, SHADOW_SHADE);
+            fill(pixels, playerX, PLAYER_TOP - 6, playerWidth, PLAYER_HEIGHT, PLAYER_SHADE);
+        } else if (duckTicks > 0) {
+            fill(pixels, playerX, PLAYER_TOP + PLAYER_HEIGHT / 2, playerWidth, PLAYER_HEIGHT / 2, PLAYER_SHADE);
+        } else {
+            fill(pixels, playerX, PLAYER_TOP, playerWidth, PLAYER_HEIGHT, PLAYER_SHADE);
+        }
+    }
+
+    private static void fill(byte[] pixels, int x, int y, int width, int height, byte value) {
+        int fromY = Math.max(0, y);
+        int toY = Math.min(SIZE, y + height);
+        int fromX = Math.max(0, x);
+        int toX = Math.min(SIZE, x + width);
+        for (int row = fromY; row < toY; row++) {
+            Arrays.fill(pixels, row * SIZE + fromX, row * SIZE + toX, value);
+        }
+    }
+
+    private static final class Obstacle {
+        static final int BLOCK = 0;
+        static final int HURDLE = 1;
+        static final int BEAM = 2;
+
+        final int lane;
+        final int type;
+        float y;
+
+        Obstacle(int lane, int type, float y) {
+            this.lane = lane;
+            this.type = type;
+            this.y = y;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.GameStep;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Append-only on-disk log of finished episodes, read back with {@link MappedEpisodes}.
+ * <p>
+ * Episodes are written by a background thread into segment files of at most
+ * {@link #SEGMENT_BYTES}. A record holds the raw uint8 frames followed by the action,
+ * terminal, reward and step-number columns:
+ * <pre>
+ * int   RECORD_MAGIC
+ * int   steps (n)
+ * int   frameSize
+ * byte  frames[(n + 1) * frameSize]   initial frame first
+ * byte  actions[n]
+ * byte  terminals[n]
+ * float rewards[n]
+ * int   stepNumbers[n]
+ * int   COMMIT_MAGIC
+ * </pre>
+ * All values are little-endian. A record without its commit marker, left behind by a crash,
+ * is ignored by the reader. Every log instance starts a new segment, so segments written
+ * earlier never change and can be mapped safely.
+ */
+@Slf4j
+public class EpisodeLog implements AutoCloseable {
+
+    static final int FILE_MAGIC = 0x53504C47; // "SPLG"
+    static final int FILE_VERSION = 1;
+    static final int FILE_HEADER_BYTES = 8;
+    static final int RECORD_MAGIC = 0x45504931;
+    static final int COMMIT_MAGIC = 0x454E4431;
+    static final int RECORD_HEADER_BYTES = 12;
+    static final long SEGMENT_BYTES = 256L * 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final ExecutorService writer;
+    private final AtomicInteger pending = new AtomicInteger();
+    // Only touched by the writer thread
+    private FileChannel segment;
+    private int segmentNumber;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    public EpisodeLog(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        List<Path> existing = segments(directory);
+        this.segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.getLast());
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "episode-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a finished episode for writing. The episode must not be changed afterwards.
+     */
+    public void append(Episode episode) {
+        if (episode.getSteps().isEmpty()) return;
+        pending.incrementAndGet();
+        writer.execute(() -> {
+            try {
+                write(episode);
+            } catch (IOException e) {
+                log.error("Writing episode to {} failed", directory, e);
+            } finally {
+                pending.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Completes once everything appended so far is written and forced to disk.
+     */
+    public CompletableFuture<Void> flush() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                if (segment != null) segment.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, writer);
+    }
+
+    public int getPendingEpisodes() {
+        return pending.get();
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS)) {
+                log.warn("Episode log writer did not finish, {} episodes not written", pending.get());
+                writer.shutdownNow();
+            }
+            if (segment != null) {
+                segment.force(false);
+                segment.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Closing episode log segment failed", e);
+        }
+    }
+
+    private void write(Episode episode) throws IOException {
+        List<GameStep> steps = episode.getSteps();
+        int n = steps.size();
+        int frameSize = episode.getInitialFrame().length;
+        int length = recordLength(n, frameSize);
+
+        if (segment == null || segment.position() + length > SEGMENT_BYTES) {
+            rollSegment();
+        }
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        buffer.clear();
+        buffer.putInt(RECORD_MAGIC).putInt(n).putInt(frameSize);
+        buffer.put(episode.getInitialFrame());
+        for (GameStep step : steps) buffer.put(step.getFrame());
+        for (GameStep step : steps) buffer.put((byte) step.getAction().index);
+        for (GameStep step : steps) buffer.put((byte) (step.isTerminal() ? 1 : 0));
+        for (GameStep step : steps) buffer.putFloat(step.getReward());
+        for (GameStep step : steps) buffer.putInt(step.getStepNumber());
+        buffer.putInt(COMMIT_MAGIC);
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+        }
+        segmentNumber++;
+        Path file = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION).flip();
+        segment.write(header);
+        log.debug("Episode log segment {} started", file);
+    }
+
+    static int recordLength(int steps, int frameSize) {
+        return RECORD_HEADER_BYTES + (steps + 1) * frameSize + steps * (1 + 1 + 4 + 4) + 4;
+    }
+
+    /**
+     * Segment files in {@code directory}, oldest first.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
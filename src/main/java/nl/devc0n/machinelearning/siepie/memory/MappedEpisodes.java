@@ -0,0 +1,252 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.GameStep;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static nl.devc0n.machinelearning.siepie.memory.EpisodeLog.*;
+
+/**
+ * Read-only, memory-mapped view of the segments of an {@link EpisodeLog}.
+ * <p>
+ * Only a small index of the episodes lives on the heap, frame stacks are built straight from
+ * the mapped files when they are read, so the log can be far larger than the heap. Transitions
+ * are numbered over all episodes in log order. Safe for concurrent readers until closed.
+ */
+@Slf4j
+public class MappedEpisodes implements TransitionSource, AutoCloseable {
+
+    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final float PIXEL_SCALE = 1.0f / 255.0f;
+    private static final int FRAME_HEIGHT = 84;
+    private static final int FRAME_WIDTH = 84;
+    private static final int FRAME_STACK = 4;
+
+    private final Arena arena = Arena.ofShared();
+    private final List<MemorySegment> segments = new ArrayList<>();
+    private final int frameSize = FRAME_HEIGHT * FRAME_WIDTH;
+
+    // Episode index, one entry per complete record
+    private int episodes;
+    private int[] episodeSegment = new int[1024];
+    private long[] episodeOffset = new long[1024];
+    private int[] episodeSteps = new int[1024];
+    private long[] firstTransition = new long[1024];
+    private long transitions;
+
+    private MappedEpisodes() {
+    }
+
+    /**
+     * Map all segments in {@code directory}. Records that are incomplete, such as the tail of
+     * a segment that was being written during a crash, are left out.
+     */
+    public static MappedEpisodes open(Path directory) throws IOException {
+        var mapped = new MappedEpisodes();
+        try {
+            for (Path file : EpisodeLog.segments(directory)) {
+                mapped.map(file);
+            }
+        } catch (IOException | RuntimeException e) {
+            mapped.close();
+            throw e;
+        }
+        log.info("Mapped {} episodes, {} transitions from {}", mapped.episodes, mapped.transitions, directory);
+        return mapped;
+    }
+
+    public int episodeCount() {
+        return episodes;
+    }
+
+    @Override
+    public long transitionCount() {
+        return transitions;
+    }
+
+    /**
+     * Index of the oldest episode from which on the log holds at most {@code maxFrames} frames,
+     * counting the initial frame of every episode next to one frame per step.
+     */
+    public int newestEpisodesWithin(long maxFrames) {
+        int first = episodes;
+        long total = 0;
+        while (first > 0 && total + episodeSteps[first - 1] + 1 <= maxFrames) {
+            total += episodeSteps[--first] + 1;
+        }
+        return first;
+    }
+
+    /**
+     * Copy an episode back onto the heap, e.g. to fill a {@link ReplayBuffer}.
+     */
+    public Episode episode(int index) {
+        MemorySegment segment = segments.get(episodeSegment[index]);
+        long record = episodeOffset[index];
+        int n = episodeSteps[index];
+        long frames = record + RECORD_HEADER_BYTES;
+
+        var episode = new Episode(frame(segment, frames));
+        for (int j = 1; j <= n; j++) {
+            var step = new GameStep(frame(segment, frames + (long) j * frameSize),
+                    Action.fromIndex(segment.get(ValueLayout.JAVA_BYTE, actionsOffset(record, n) + j - 1)),
+                    segment.get(INT, stepNumbersOffset(record, n) + 4L * (j - 1)));
+            step.setReward(segment.get(FLOAT, rewardsOffset(record, n) + 4L * (j - 1)));
+            step.setTerminal(segment.get(ValueLayout.JAVA_BYTE, terminalsOffset(record, n) + j - 1) != 0);
+            episode.addStep(step);
+        }
+        return episode;
+    }
+
+    /**
+     * Sample transitions uniformly over the whole log.
+     */
+    @Override
+    public TransitionBatch sampleBatch(int batchSize, SplittableRandom random) {
+        if (transitions == 0) {
+            return TransitionBatch.empty();
+        }
+        int stackLength = FRAME_STACK * frameSize;
+        float[] states = new float[batchSize * stackLength];
+        float[] nextStates = new float[batchSize * stackLength];
+        int[] actions = new int[batchSize];
+        float[] rewards = new float[batchSize];
+        boolean[] terminals = new boolean[batchSize];
+        long[] positions = new long[batchSize];
+        float[] weights = new float[batchSize];
+        // Samplers call this concurrently, so the scratch frame belongs to the call
+        byte[] scratch = new byte[frameSize];
+
+        for (int i = 0; i < batchSize; i++) {
+            long transition = random.nextLong(transitions);
+            int episode = episodeOf(transition);
+            MemorySegment segment = segments.get(episodeSegment[episode]);
+            long record = episodeOffset[episode];
+            int n = episodeSteps[episode];
+            // Transition j of an episode goes from frame j - 1 to frame j, frame 0 is the initial frame
+            int j = (int) (transition - firstTransition[episode]) + 1;
+
+            long frames = record + RECORD_HEADER_BYTES;
+            copyStack(segment, frames, j - 1, states, i * stackLength, scratch);
+            copyStack(segment, frames, j, nextStates, i * stackLength, scratch);
+            actions[i] = segment.get(ValueLayout.JAVA_BYTE, actionsOffset(record, n) + j - 1);
+            terminals[i] = segment.get(ValueLayout.JAVA_BYTE, terminalsOffset(record, n) + j - 1) != 0;
+            rewards[i] = segment.get(FLOAT, rewardsOffset(record, n) + 4L * (j - 1));
+            positions[i] = transition;
+            weights[i] = 1.0f;
+        }
+
+        int[] shape = {batchSize, FRAME_STACK, FRAME_HEIGHT, FRAME_WIDTH};
+        return new TransitionBatch(Nd4j.create(states, shape), Nd4j.create(nextStates, shape),
+                actions, rewards, terminals, positions, weights);
+    }
+
+    @Override
+    public void close() {
+        // Unmaps every segment
+        arena.close();
+    }
+
+    /**
+     * Bulk-copies each frame of the stack into {@code scratch}, then scales it into {@code dst}.
+     */
+    private void copyStack(MemorySegment segment, long frames, int newest, float[] dst, int offset, byte[] scratch) {
+        for (int k = 0; k < FRAME_STACK; k++) {
+            // Stacks near the start of the episode repeat the initial frame
+            int frame = Math.max(newest - (FRAME_STACK - 1 - k), 0);
+            long src = frames + (long) frame * frameSize;
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, src, scratch, 0, frameSize);
+            int out = offset + k * frameSize;
+            for (int i = 0; i < frameSize; i++) {
+                dst[out + i] = (scratch[i] & 0xFF) * PIXEL_SCALE;
+            }
+        }
+    }
+
+    private byte[] frame(MemorySegment segment, long offset) {
+        return segment.asSlice(offset, frameSize).toArray(ValueLayout.JAVA_BYTE);
+    }
+
+    private int episodeOf(long transition) {
+        int index = Arrays.binarySearch(firstTransition, 0, episodes, transition);
+        // Not found gives -(insertion point) - 1, the episode starts just before it
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private void map(Path file) throws IOException {
+        MemorySegment segment;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+        }
+        if (segment.byteSize() < FILE_HEADER_BYTES
+                || segment.get(INT, 0) != FILE_MAGIC || segment.get(INT, 4) != FILE_VERSION) {
+            log.warn("Skipping {}, not an episode log segment", file);
+            return;
+        }
+        int segmentIndex = segments.size();
+        segments.add(segment);
+
+        long offset = FILE_HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= segment.byteSize()) {
+            if (segment.get(INT, offset) != RECORD_MAGIC) break;
+            int n = segment.get(INT, offset + 4);
+            int recordFrameSize = segment.get(INT, offset + 8);
+            if (n <= 0 || recordFrameSize != frameSize) break;
+            long length = recordLength(n, frameSize);
+            if (offset + length > segment.byteSize() || segment.get(INT, offset + length - 4) != COMMIT_MAGIC) break;
+            index(segmentIndex, offset, n);
+            offset += length;
+        }
+        if (offset < segment.byteSize()) {
+            log.warn("Ignoring {} bytes of incomplete records at the end of {}", segment.byteSize() - offset, file);
+        }
+    }
+
+    private void index(int segment, long offset, int steps) {
+        if (episodes == episodeSteps.length) {
+            int capacity = episodes * 2;
+            episodeSegment = Arrays.copyOf(episodeSegment, capacity);
+            episodeOffset = Arrays.copyOf(episodeOffset, capacity);
+            episodeSteps = Arrays.copyOf(episodeSteps, capacity);
+            firstTransition = Arrays.copyOf(firstTransition, capacity);
+        }
+        episodeSegment[episodes] = segment;
+        episodeOffset[episodes] = offset;
+        episodeSteps[episodes] = steps;
+        firstTransition[episodes] = transitions;
+        episodes++;
+        transitions += steps;
+    }
+
+    private long actionsOffset(long record, int steps) {
+        return record + RECORD_HEADER_BYTES + (long) (steps + 1) * frameSize;
+    }
+
+    private long terminalsOffset(long record, int steps) {
+        return actionsOffset(record, steps) + steps;
+    }
+
+    private long rewardsOffset(long record, int steps) {
+        return terminalsOffset(record, steps) + steps;
+    }
+
+    private long stepNumbersOffset(long record, int steps) {
+        return rewardsOffset(record, steps) + 4L * steps;
+    }
+}
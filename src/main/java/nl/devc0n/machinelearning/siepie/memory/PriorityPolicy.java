@@ -0,0 +1,20 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+/**
+ * How the replay buffer assigns sampling priorities to transitions.
+ */
+public enum PriorityPolicy {
+    /**
+     * Every transition is equally likely.
+     */
+    UNIFORM,
+    /**
+     * Episodes are weighted by {@code max(1, length / 50)} and steps are drawn uniformly
+     * within the episode, like the original episode-based sampler.
+     */
+    EPISODE_LENGTH,
+    /**
+     * Proportional prioritized replay on the absolute TD-error, with importance-sampling weights.
+     */
+    TD_ERROR
+}
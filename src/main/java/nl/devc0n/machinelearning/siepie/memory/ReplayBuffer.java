@@ -2,70 +2,212 @@ package nl.devc0n.machinelearning.siepie.memory;
 
 import nl.devc0n.machinelearning.siepie.model.Episode;
 import nl.devc0n.machinelearning.siepie.model.GameStep;
+import org.nd4j.linalg.factory.Nd4j;
 
 import java.util.*;
 
-public class ReplayBuffer {
+/**
+ * Replay memory backed by a {@link TransitionStore}: frames are stored once as raw bytes
+ * and frame stacks are rebuilt when a batch is sampled.
+ * <p>
+ * Sampling goes through a {@link SumTree} of per-transition priorities, so inserts,
+ * evictions and priority updates are O(log n) and a batch draw is O(batch * log n).
+ */
+public class ReplayBuffer implements TransitionSource {
 
-    private final Deque<Episode> episodes = new ArrayDeque<>();
-    private final int maxEpisodes;
+    public static final int DEFAULT_CAPACITY = 100_000; // ~700MB of 84x84 frames
+    private static final int FRAME_HEIGHT = 84;
+    private static final int FRAME_WIDTH = 84;
+    private static final int FRAME_STACK = 4;
+    // Prioritized replay (TD_ERROR policy)
+    private static final double ALPHA = 0.6;
+    private static final double BETA_START = 0.4;
+    private static final int BETA_ANNEAL_BATCHES = 100_000;
+    private static final double PRIORITY_EPSILON = 1e-3;
+
+    private final TransitionStore store;
+    private final SumTree priorities;
+    private final PriorityPolicy policy;
     private final Random random = new Random();
+    private double maxPriority = 1.0;
+    private double beta = BETA_START;
+    private int sampleableSteps;
+
+    /**
+     * @param capacity maximum number of frames (roughly the number of transitions) to keep
+     */
+    public ReplayBuffer(int capacity, PriorityPolicy policy) {
+        this.store = new TransitionStore(capacity, FRAME_HEIGHT * FRAME_WIDTH, FRAME_STACK);
+        this.priorities = new SumTree(capacity);
+        this.policy = policy;
+    }
 
-    public ReplayBuffer(int maxEpisodes) {
-        this.maxEpisodes = maxEpisodes;
+    public ReplayBuffer(int capacity) {
+        this(capacity, PriorityPolicy.EPISODE_LENGTH);
     }
 
     public ReplayBuffer() {
-        this(1000); // Default: keep last 100 episodes
+        this(DEFAULT_CAPACITY);
     }
 
-    public void addEpisode(Episode episode) {
-        episodes.addLast(episode);
-        while (episodes.size() > maxEpisodes) {
-            episodes.removeFirst(); // Remove oldest
+    public synchronized void addEpisode(Episode episode) {
+        if (episode.getSteps().isEmpty()) return;
+
+        int episodeLength = episode.getSteps().size();
+        double priority = switch (policy) {
+            case UNIFORM -> 1.0;
+            // Same distribution as repeating each episode length/50 times and picking a step
+            case EPISODE_LENGTH -> (double) Math.max(1, episodeLength / 50) / episodeLength;
+            case TD_ERROR -> maxPriority;
+        };
+
+        long start = store.appendEpisodeStart(episode.getInitialFrame());
+        setPriority(store.slot(start), 0);
+        invalidateEvictedStacks();
+
+        int offset = 1;
+        for (GameStep step : episode.getSteps()) {
+            long position = store.appendStep(step.getFrame(), offset++, step.getAction().index,
+                    step.getReward(), step.isTerminal(), step.getStepNumber());
+            setPriority(store.slot(position), priority);
+            invalidateEvictedStacks();
         }
     }
 
     /**
-     * Sample a batch of steps from stored episodes
-     * Prioritizes sampling from better episodes (survived longer)
+     * Sample a batch of transitions proportional to their priority, one draw per equal
+     * segment of the priority mass. All frame stacks are written into one state and one
+     * next-state tensor.
      */
-    public List<GameStep> sampleBatch(int batchSize) {
-        List<GameStep> batch = new ArrayList<>();
-
-        // Prioritize sampling from better episodes
-        List<Episode> weightedEpisodes = new ArrayList<>();
-        for (Episode ep : episodes) {
-            int weight = Math.max(1, ep.getEpisodeLength() / 50);
-            for (int i = 0; i < weight; i++) {
-                weightedEpisodes.add(ep);
-            }
+    public synchronized TransitionBatch sampleBatch(int batchSize) {
+        if (sampleableSteps == 0) {
+            return TransitionBatch.empty();
         }
 
-        if (weightedEpisodes.isEmpty()) {
-            return batch;
-        }
+        int stackLength = store.stackSize() * store.frameSize();
+        float[] states = new float[batchSize * stackLength];
+        float[] nextStates = new float[batchSize * stackLength];
+        int[] actions = new int[batchSize];
+        float[] rewards = new float[batchSize];
+        boolean[] terminals = new boolean[batchSize];
+        long[] positions = new long[batchSize];
+        float[] weights = new float[batchSize];
+
+        double total = priorities.total();
+        double segment = total / batchSize;
+        // Largest weight belongs to the least likely transition, used for normalization
+        double maxWeight = Math.pow(sampleableSteps * priorities.min() / total, -beta);
 
         for (int i = 0; i < batchSize; i++) {
-            Episode ep = weightedEpisodes.get(random.nextInt(weightedEpisodes.size()));
-            if (!ep.getSteps().isEmpty()) {
-                GameStep step = ep.getSteps().get(random.nextInt(ep.getSteps().size()));
-                batch.add(step);
+            int slot = priorities.find((i + random.nextDouble()) * segment);
+            // Rounding at the edge of the tree can land on an empty leaf
+            while (priorities.get(slot) <= 0) {
+                slot = priorities.find(random.nextDouble() * total);
             }
+            long position = store.positionOf(slot);
+
+            store.copyStack(position, false, states, i * stackLength);
+            store.copyStack(position, true, nextStates, i * stackLength);
+            actions[i] = store.action(position);
+            rewards[i] = store.reward(position);
+            terminals[i] = store.terminal(position);
+            positions[i] = position;
+
+            if (policy == PriorityPolicy.TD_ERROR) {
+                double probability = priorities.get(slot) / total;
+                weights[i] = (float) (Math.pow(sampleableSteps * probability, -beta) / maxWeight);
+            } else {
+                weights[i] = 1.0f;
+            }
+        }
+
+        beta = Math.min(1.0, beta + (1.0 - BETA_START) / BETA_ANNEAL_BATCHES);
+        int[] shape = {batchSize, store.stackSize(), FRAME_HEIGHT, FRAME_WIDTH};
+        return new TransitionBatch(Nd4j.create(states, shape), Nd4j.create(nextStates, shape),
+                actions, rewards, terminals, positions, weights);
+    }
+
+    /**
+     * Prioritized draws use the buffer's own random, {@code random} is ignored. Callers still
+     * take turns on the buffer lock, so concurrent sampling gains nothing here.
+     */
+    @Override
+    public TransitionBatch sampleBatch(int batchSize, SplittableRandom random) {
+        return sampleBatch(batchSize);
+    }
+
+    /**
+     * Feed the TD-errors of a trained batch back as new priorities. Transitions that were
+     * overwritten since they were sampled are skipped. Only used by {@link PriorityPolicy#TD_ERROR}.
+     */
+    @Override
+    public synchronized void updatePriorities(TransitionBatch batch, float[] tdErrors) {
+        if (policy != PriorityPolicy.TD_ERROR) return;
+
+        for (int i = 0; i < batch.size(); i++) {
+            long position = batch.positions()[i];
+            if (!store.isValid(position)) continue;
+
+            double priority = Math.pow(Math.abs(tdErrors[i]) + PRIORITY_EPSILON, ALPHA);
+            setPriority(store.slot(position), priority);
+            maxPriority = Math.max(maxPriority, priority);
         }
+    }
 
-        return batch;
+    public synchronized int getTotalSteps() {
+        return sampleableSteps;
     }
 
-    public int getTotalSteps() {
-        return episodes.stream().mapToInt(e -> e.getSteps().size()).sum();
+    @Override
+    public long transitionCount() {
+        return getTotalSteps();
     }
 
-    public int getEpisodeCount() {
-        return episodes.size();
+    public int getCapacity() {
+        return store.capacity();
+    }
+
+    /**
+     * Fill the buffer with the newest episodes of an {@link EpisodeLog}, as many as fit.
+     *
+     * @return the number of episodes added
+     */
+    public int warmStart(MappedEpisodes episodes) {
+        int first = episodes.newestEpisodesWithin(getCapacity());
+        for (int i = first; i < episodes.episodeCount(); i++) {
+            addEpisode(episodes.episode(i));
+        }
+        return episodes.episodeCount() - first;
+    }
+
+    public synchronized int getEpisodeCount() {
+        return store.episodeCount();
+    }
+
+    public synchronized void clear() {
+        store.clear();
+        priorities.clear();
+        sampleableSteps = 0;
+        maxPriority = 1.0;
+    }
+
+    /**
+     * Transitions right after the oldest frame lose part of their stack when that frame
+     * is overwritten, so they are taken out of the sampling distribution.
+     */
+    private void invalidateEvictedStacks() {
+        long oldest = store.oldestPosition();
+        for (long position = oldest; position < oldest + store.stackSize(); position++) {
+            if (position < store.nextPosition() && !store.isValid(position)) {
+                setPriority(store.slot(position), 0);
+            }
+        }
     }
 
-    public void clear() {
-        episodes.clear();
+    private void setPriority(int slot, double priority) {
+        double previous = priorities.get(slot);
+        if (previous > 0 && priority <= 0) sampleableSteps--;
+        if (previous <= 0 && priority > 0) sampleableSteps++;
+        priorities.set(slot, priority);
     }
 }
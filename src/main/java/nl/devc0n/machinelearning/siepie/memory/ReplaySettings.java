@@ -0,0 +1,22 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Replay memory settings.
+ *
+ * @param capacity  frames kept in the in-memory {@link ReplayBuffer}
+ * @param persist   also append finished episodes to an {@link EpisodeLog}, and fill the replay
+ *                  buffer from it on startup
+ * @param directory where the episode log lives
+ */
+public record ReplaySettings(@DefaultValue("100000") int capacity,
+                             @DefaultValue("false") boolean persist,
+                             @DefaultValue("replay") Path directory) {
+
+    public static ReplaySettings defaults() {
+        return new ReplaySettings(ReplayBuffer.DEFAULT_CAPACITY, false, Path.of("replay"));
+    }
+}
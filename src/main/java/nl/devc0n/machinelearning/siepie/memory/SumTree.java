@@ -0,0 +1,70 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import java.util.Arrays;
+
+/**
+ * Binary segment tree over transition priorities. Updates and prefix-sum lookups are
+ * O(log n), the total and the smallest positive priority are O(1).
+ */
+class SumTree {
+
+    private final int size;
+    private final double[] sums;
+    private final double[] mins;
+
+    SumTree(int capacity) {
+        int leaves = 1;
+        while (leaves < capacity) leaves <<= 1;
+        this.size = leaves;
+        this.sums = new double[2 * leaves];
+        this.mins = new double[2 * leaves];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+    }
+
+    void set(int leaf, double priority) {
+        int i = leaf + size;
+        sums[i] = priority;
+        mins[i] = priority > 0 ? priority : Double.POSITIVE_INFINITY;
+        for (i >>>= 1; i >= 1; i >>>= 1) {
+            sums[i] = sums[2 * i] + sums[2 * i + 1];
+            mins[i] = Math.min(mins[2 * i], mins[2 * i + 1]);
+        }
+    }
+
+    double get(int leaf) {
+        return sums[leaf + size];
+    }
+
+    double total() {
+        return sums[1];
+    }
+
+    /**
+     * Smallest positive priority, or positive infinity when the tree is empty.
+     */
+    double min() {
+        return mins[1];
+    }
+
+    /**
+     * Find the leaf where the running prefix sum passes {@code value}.
+     */
+    int find(double value) {
+        int i = 1;
+        while (i < size) {
+            int left = 2 * i;
+            if (value < sums[left]) {
+                i = left;
+            } else {
+                value -= sums[left];
+                i = left + 1;
+            }
+        }
+        return i - size;
+    }
+
+    void clear() {
+        Arrays.fill(sums, 0);
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+    }
+}
@@ -0,0 +1,45 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.Arrays;
+
+/**
+ * A sampled batch as tensors and primitive columns, together with the buffer positions it
+ * came from and its importance-sampling weights.
+ *
+ * @param states     states before the action, shape [B, K, H, W]
+ * @param nextStates states after the action, shape [B, K, H, W]
+ * @param positions  buffer positions, handed back with {@link ReplayBuffer#updatePriorities}
+ * @param weights    importance-sampling weights, normalized so the largest is 1
+ */
+public record TransitionBatch(INDArray states, INDArray nextStates, int[] actions, float[] rewards,
+                              boolean[] terminals, long[] positions, float[] weights) {
+
+    public static TransitionBatch empty() {
+        return new TransitionBatch(null, null, new int[0], new float[0], new boolean[0], new long[0], new float[0]);
+    }
+
+    public int size() {
+        return actions.length;
+    }
+
+    public boolean isEmpty() {
+        return actions.length == 0;
+    }
+
+    /**
+     * Samples {@code from} (inclusive) to {@code to} (exclusive), the states are views.
+     */
+    public TransitionBatch slice(int from, int to) {
+        return new TransitionBatch(
+                states.get(NDArrayIndex.interval(from, to), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()),
+                nextStates.get(NDArrayIndex.interval(from, to), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()),
+                Arrays.copyOfRange(actions, from, to),
+                Arrays.copyOfRange(rewards, from, to),
+                Arrays.copyOfRange(terminals, from, to),
+                Arrays.copyOfRange(positions, from, to),
+                Arrays.copyOfRange(weights, from, to));
+    }
+}
@@ -0,0 +1,24 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import java.util.SplittableRandom;
+
+/**
+ * Something transitions can be sampled from for training, the live {@link ReplayBuffer} or
+ * the episodes recorded on disk in {@link MappedEpisodes}.
+ */
+public interface TransitionSource {
+
+    /**
+     * Sample a batch. Implementations must allow several threads to sample at once, each with
+     * its own {@code random}.
+     */
+    TransitionBatch sampleBatch(int batchSize, SplittableRandom random);
+
+    long transitionCount();
+
+    /**
+     * Feed the TD-errors of a trained batch back, for sources that sample by priority.
+     */
+    default void updatePriorities(TransitionBatch batch, float[] tdErrors) {
+    }
+}
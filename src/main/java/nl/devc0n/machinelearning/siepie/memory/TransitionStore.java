@@ -0,0 +1,203 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+/**
+ * Flat circular store of raw grayscale frames plus primitive transition columns.
+ * <p>
+ * Every frame is kept exactly once as unsigned bytes. A slot holds the frame that was observed
+ * after taking {@code actions[slot]}, so the state and next state of a transition are rebuilt
+ * from the preceding frames of the same episode when it is sampled. The first frame of an
+ * episode occupies a slot without a transition (episode offset 0).
+ * <p>
+ * Positions are absolute (monotonically increasing), slots are {@code position % capacity}.
+ */
+class TransitionStore {
+
+    private static final int PAGE_SHIFT = 12; // 4096 frames per page
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final float PIXEL_SCALE = 1.0f / 255.0f;
+
+    private final int capacity;
+    private final int frameSize;
+    private final int stackSize;
+
+    // Frames are paged so the store is not limited by the 2GB array size
+    private final byte[][] pages;
+    private final byte[] actions;
+    private final float[] rewards;
+    private final boolean[] terminals;
+    private final int[] stepNumbers;
+    private final int[] episodeOffsets;
+
+    private long nextPosition;
+    private int transitionCount;
+    private int episodeCount;
+
+    TransitionStore(int capacity, int frameSize, int stackSize) {
+        if (capacity <= stackSize) {
+            throw new IllegalArgumentException("Capacity must exceed the stack size, got " + capacity);
+        }
+        this.capacity = capacity;
+        this.frameSize = frameSize;
+        this.stackSize = stackSize;
+        this.pages = new byte[(capacity + PAGE_SIZE - 1) >>> PAGE_SHIFT][];
+        this.actions = new byte[capacity];
+        this.rewards = new float[capacity];
+        this.terminals = new boolean[capacity];
+        this.stepNumbers = new int[capacity];
+        this.episodeOffsets = new int[capacity];
+    }
+
+    /**
+     * Append the first frame of an episode.
+     *
+     * @return absolute position of the frame
+     */
+    long appendEpisodeStart(byte[] frame) {
+        return append(frame, 0, 0, 0f, false, -1);
+    }
+
+    /**
+     * Append the frame observed after a step, together with the transition columns.
+     *
+     * @param episodeOffset distance to the episode start frame, must be at least 1
+     * @return absolute position of the transition
+     */
+    long appendStep(byte[] frame, int episodeOffset, int action, float reward, boolean terminal, int stepNumber) {
+        return append(frame, episodeOffset, action, reward, terminal, stepNumber);
+    }
+
+    private long append(byte[] frame, int episodeOffset, int action, float reward, boolean terminal, int stepNumber) {
+        if (frame.length != frameSize) {
+            throw new IllegalArgumentException("Expected frame of " + frameSize + " bytes, got " + frame.length);
+        }
+        long position = nextPosition;
+        int slot = slot(position);
+
+        // Evict whatever occupied the slot before
+        if (position >= capacity) {
+            if (episodeOffsets[slot] == 0) {
+                episodeCount--;
+            } else {
+                transitionCount--;
+            }
+        }
+
+        byte[] page = pages[slot >>> PAGE_SHIFT];
+        if (page == null) {
+            int framesInPage = Math.min(PAGE_SIZE, capacity - (slot & ~(PAGE_SIZE - 1)));
+            page = new byte[framesInPage * frameSize];
+            pages[slot >>> PAGE_SHIFT] = page;
+        }
+        System.arraycopy(frame, 0, page, (slot & (PAGE_SIZE - 1)) * frameSize, frameSize);
+
+        actions[slot] = (byte) action;
+        rewards[slot] = reward;
+        terminals[slot] = terminal;
+        stepNumbers[slot] = stepNumber;
+        episodeOffsets[slot] = episodeOffset;
+
+        if (episodeOffset == 0) {
+            episodeCount++;
+        } else {
+            transitionCount++;
+        }
+        nextPosition++;
+        return position;
+    }
+
+    int slot(long position) {
+        return (int) (position % capacity);
+    }
+
+    long nextPosition() {
+        return nextPosition;
+    }
+
+    long oldestPosition() {
+        return Math.max(0, nextPosition - capacity);
+    }
+
+    /**
+     * Map a slot back to the absolute position it currently holds.
+     */
+    long positionOf(int slot) {
+        long oldest = oldestPosition();
+        int delta = slot - slot(oldest);
+        if (delta < 0) delta += capacity;
+        return oldest + delta;
+    }
+
+    /**
+     * A transition can be sampled when the slot holds a step and every frame of its
+     * state stack is still in the store.
+     */
+    boolean isValid(long position) {
+        if (position < oldestPosition() || position >= nextPosition) return false;
+        int offset = episodeOffsets[slot(position)];
+        if (offset == 0) return false;
+        return Math.max(position - stackSize, position - offset) >= oldestPosition();
+    }
+
+    /**
+     * Rebuild a normalized [K, H, W] stack into {@code dst}.
+     *
+     * @param position transition position
+     * @param next     false for the state before the action, true for the state after it
+     */
+    void copyStack(long position, boolean next, float[] dst, int dstOffset) {
+        long episodeStart = position - episodeOffsets[slot(position)];
+        long newest = next ? position : position - 1;
+        for (int k = 0; k < stackSize; k++) {
+            long framePosition = Math.max(newest - (stackSize - 1 - k), episodeStart);
+            int slot = slot(framePosition);
+            byte[] page = pages[slot >>> PAGE_SHIFT];
+            int src = (slot & (PAGE_SIZE - 1)) * frameSize;
+            int out = dstOffset + k * frameSize;
+            for (int i = 0; i < frameSize; i++) {
+                dst[out + i] = (page[src + i] & 0xFF) * PIXEL_SCALE;
+            }
+        }
+    }
+
+    int action(long position) {
+        return actions[slot(position)];
+    }
+
+    float reward(long position) {
+        return rewards[slot(position)];
+    }
+
+    boolean terminal(long position) {
+        return terminals[slot(position)];
+    }
+
+    int stepNumber(long position) {
+        return stepNumbers[slot(position)];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int frameSize() {
+        return frameSize;
+    }
+
+    int stackSize() {
+        return stackSize;
+    }
+
+    int transitionCount() {
+        return transitionCount;
+    }
+
+    int episodeCount() {
+        return episodeCount;
+    }
+
+    void clear() {
+        nextPosition = 0;
+        transitionCount = 0;
+        episodeCount = 0;
+    }
+}
@@ -0,0 +1,109 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Streaming estimate of a single quantile with the P² algorithm (Jain and Chlamtac): five
+ * markers whose heights are adjusted with a piecewise-parabolic fit as values come in.
+ * Constant memory and no allocation per value. Not thread-safe.
+ */
+final class P2Quantile {
+
+    private static final int MARKERS = 5;
+
+    private final double p;
+    private final double[] heights = new double[MARKERS];
+    private final int[] positions = new int[MARKERS];
+    private final double[] desired = new double[MARKERS];
+    private final double[] increments;
+    private final double[] sorted = new double[MARKERS];
+    private long count;
+
+    P2Quantile(double p) {
+        this.p = p;
+        this.increments = new double[]{0, p / 2, p, (1 + p) / 2, 1};
+        reset();
+    }
+
+    void reset() {
+        count = 0;
+        for (int i = 0; i < MARKERS; i++) {
+            positions[i] = i;
+        }
+        desired[0] = 0;
+        desired[1] = 2 * p;
+        desired[2] = 4 * p;
+        desired[3] = 2 + 2 * p;
+        desired[4] = 4;
+    }
+
+    void add(double x) {
+        if (count < MARKERS) {
+            heights[(int) count++] = x;
+            if (count == MARKERS) Arrays.sort(heights);
+            return;
+        }
+        count++;
+
+        // Cell k with heights[k] <= x < heights[k + 1], widening the outer markers if needed
+        int k;
+        if (x < heights[0]) {
+            heights[0] = x;
+            k = 0;
+        } else if (x >= heights[MARKERS - 1]) {
+            heights[MARKERS - 1] = x;
+            k = MARKERS - 2;
+        } else {
+            k = 0;
+            while (x >= heights[k + 1]) k++;
+        }
+        for (int i = k + 1; i < MARKERS; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < MARKERS; i++) {
+            desired[i] += increments[i];
+        }
+
+        for (int i = 1; i < MARKERS - 1; i++) {
+            double offset = desired[i] - positions[i];
+            if ((offset >= 1 && positions[i + 1] - positions[i] > 1)
+                    || (offset <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int step = offset >= 1 ? 1 : -1;
+                double candidate = parabolic(i, step);
+                heights[i] = heights[i - 1] < candidate && candidate < heights[i + 1] ? candidate : linear(i, step);
+                positions[i] += step;
+            }
+        }
+    }
+
+    /**
+     * Current estimate, {@code NaN} before the first value.
+     */
+    double value() {
+        if (count == 0) return Double.NaN;
+        if (count < MARKERS) {
+            // Too few values for the markers, take the exact quantile
+            int n = (int) count;
+            System.arraycopy(heights, 0, sorted, 0, n);
+            Arrays.sort(sorted, 0, n);
+            return sorted[(int) Math.round(p * (n - 1))];
+        }
+        return heights[2];
+    }
+
+    long count() {
+        return count;
+    }
+
+    private double parabolic(int i, int step) {
+        double below = positions[i] - positions[i - 1];
+        double above = positions[i + 1] - positions[i];
+        return heights[i] + (double) step / (positions[i + 1] - positions[i - 1])
+                * ((below + step) * (heights[i + 1] - heights[i]) / above
+                + (above - step) * (heights[i] - heights[i - 1]) / below);
+    }
+
+    private double linear(int i, int step) {
+        return heights[i] + step * (heights[i + step] - heights[i]) / (positions[i + step] - positions[i]);
+    }
+}
@@ -0,0 +1,73 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+/**
+ * Means over the last {@code n} values for several window sizes at once, kept in one primitive
+ * ring sized for the largest window. Adding a value is O(windows) and never allocates.
+ * Not thread-safe.
+ */
+final class RollingWindow {
+
+    private final int[] windows;
+    private final double[] values;
+    private final double[] sums;
+    private long count;
+    private int head;
+
+    RollingWindow(int... windows) {
+        int capacity = 0;
+        for (int window : windows) {
+            if (window < 1) throw new IllegalArgumentException("Window must be positive: " + window);
+            capacity = Math.max(capacity, window);
+        }
+        this.windows = windows.clone();
+        this.values = new double[capacity];
+        this.sums = new double[windows.length];
+    }
+
+    void add(double value) {
+        int capacity = values.length;
+        for (int i = 0; i < windows.length; i++) {
+            // The value leaving window i, read before the slot is overwritten
+            if (count >= windows[i]) {
+                sums[i] -= values[(head - windows[i] + capacity) % capacity];
+            }
+            sums[i] += value;
+        }
+        values[head] = value;
+        head = (head + 1) % capacity;
+        count++;
+        if (head == 0) {
+            // Running sums of doubles drift, start again from the exact values once per lap
+            recomputeSums();
+        }
+    }
+
+    /**
+     * Mean of the last {@code windows[index]} values, or of all values while there are fewer,
+     * {@code NaN} when empty.
+     */
+    double mean(int index) {
+        long n = Math.min(count, windows[index]);
+        return n == 0 ? Double.NaN : sums[index] / n;
+    }
+
+    int windowCount() {
+        return windows.length;
+    }
+
+    int window(int index) {
+        return windows[index];
+    }
+
+    private void recomputeSums() {
+        int capacity = values.length;
+        for (int i = 0; i < windows.length; i++) {
+            long n = Math.min(count, windows[i]);
+            double sum = 0;
+            for (int j = 1; j <= n; j++) {
+                sum += values[(head - j + capacity) % capacity];
+            }
+            sums[i] = sum;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Training statistics time series, see {@link TrainingStatistics}.
+ *
+ * @param enabled   write the time series file
+ * @param directory where the time series files are written, one per run
+ * @param interval  time between two records
+ */
+public record StatisticsSettings(@DefaultValue("true") boolean enabled,
+                                 @DefaultValue("stats") Path directory,
+                                 @DefaultValue("10s") Duration interval) {
+
+    public StatisticsSettings {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Statistics interval must be positive: " + interval);
+        }
+    }
+
+    public static StatisticsSettings defaults() {
+        return new StatisticsSettings(true, Path.of("stats"), Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,239 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.Learner;
+import nl.devc0n.machinelearning.siepie.browser.BrowserPool;
+import nl.devc0n.machinelearning.siepie.distributed.ActorClient;
+import nl.devc0n.machinelearning.siepie.distributed.LearnerServer;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Step-loop latency per {@link StepStage} plus training counters, registered with Micrometer.
+ * <p>
+ * Timing a stage is a single call that also returns the start of the next stage:
+ * <pre>
+ * long t = System.nanoTime();
+ * environment.performAction(action);
+ * t = metrics.record(StepStage.ACTION, t);
+ * </pre>
+ */
+@Component
+public class StepMetrics {
+
+    private static final String STEP_TIMER = "siepie.step";
+    private static final String DEAD_TIME_TIMER = "siepie.episode.dead-time";
+    private static final String JITTER_TIMER = "siepie.step.jitter";
+    private static final String OVERRUN_COUNTER = "siepie.step.overruns";
+    private static final String COMMAND_TIMER = "siepie.browser.command";
+
+    private final MeterRegistry registry;
+    private final Map<StepStage, Timer> timers = new EnumMap<>(StepStage.class);
+    private final Timer deadTime;
+    private final Timer jitter;
+    private final Counter overruns;
+    private final Map<String, Timer> commands = new ConcurrentHashMap<>();
+
+    public StepMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (StepStage stage : StepStage.values()) {
+            timers.put(stage, Timer.builder(STEP_TIMER)
+                    .tag("stage", stage.tagValue())
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry));
+        }
+        deadTime = Timer.builder(DEAD_TIME_TIMER)
+                .description("Time between death and the next playable game")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        jitter = Timer.builder(JITTER_TIMER)
+                .description("How late the step loop woke up after its deadline")
+                .publishPercentiles(0.5, 0.99)
+                .register(registry);
+        overruns = Counter.builder(OVERRUN_COUNTER)
+                .description("Steps that ran past their deadline")
+                .register(registry);
+    }
+
+    /**
+     * Metrics that are only kept in memory, for runs outside the Spring context.
+     */
+    public static StepMetrics standalone() {
+        return new StepMetrics(new SimpleMeterRegistry());
+    }
+
+    /**
+     * Record the time since {@code startNanos} for {@code stage}.
+     *
+     * @return the current {@link System#nanoTime()}, the start of the next stage
+     */
+    public long record(StepStage stage, long startNanos) {
+        long now = System.nanoTime();
+        timers.get(stage).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void recordNanos(StepStage stage, long nanos) {
+        timers.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordJitter(long nanos) {
+        jitter.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordOverrun() {
+        overruns.increment();
+    }
+
+    /**
+     * Record the round trip of a browser command, {@code transport} being the way it was sent.
+     */
+    public void recordCommand(String transport, String method, long nanos) {
+        commands.computeIfAbsent(transport + " " + method, key -> Timer.builder(COMMAND_TIMER)
+                        .tag("transport", transport)
+                        .tag("method", method)
+                        .publishPercentiles(0.5, 0.99)
+                        .register(registry))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record the time from the end of an episode at {@code startNanos} until the next game is playable.
+     */
+    public void recordDeadTime(long startNanos) {
+        deadTime.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Expose episode, step, buffer and learner counters of a training run.
+     */
+    public void bind(AgentSiepie agent, ReplayBuffer replayBuffer) {
+        FunctionCounter.builder("siepie.episodes", agent, AgentSiepie::getEpisodeCount)
+                .register(registry);
+        FunctionCounter.builder("siepie.steps", agent, AgentSiepie::getTotalSteps)
+                .register(registry);
+        Gauge.builder("siepie.replay.steps", replayBuffer, ReplayBuffer::getTotalSteps)
+                .strongReference(true)
+                .register(registry);
+        Learner learner = agent.getLearner();
+        if (learner != null) {
+            FunctionCounter.builder("siepie.learner.updates", learner, Learner::getUpdates)
+                    .register(registry);
+            Gauge.builder("siepie.learner.queue", learner, Learner::getQueueDepth)
+                    .strongReference(true)
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Expose how often the browser pool replaced a browser and how long workers waited for it.
+     */
+    public void bind(BrowserPool pool) {
+        FunctionCounter.builder("siepie.pool.recycles", pool, BrowserPool::getRecycles)
+                .register(registry);
+        FunctionCounter.builder("siepie.pool.downtime", pool, p -> p.getDowntimeNanos() / 1e9)
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("siepie.pool.spares", pool, BrowserPool::getSpares)
+                .strongReference(true)
+                .register(registry);
+    }
+
+    /**
+     * Expose how many actors the learner process serves and what they sent.
+     */
+    public void bind(LearnerServer server) {
+        Gauge.builder("siepie.distributed.actors", server, LearnerServer::getConnectedActors)
+                .strongReference(true)
+                .register(registry);
+        FunctionCounter.builder("siepie.distributed.episodes", server, LearnerServer::getReceivedEpisodes)
+                .register(registry);
+        FunctionCounter.builder("siepie.distributed.bytes", server, LearnerServer::getReceivedBytes)
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Expose what an actor process sent and how long the learner held it back.
+     */
+    public void bind(ActorClient client) {
+        FunctionCounter.builder("siepie.distributed.episodes", client, ActorClient::getSentEpisodes)
+                .register(registry);
+        FunctionCounter.builder("siepie.distributed.bytes", client, ActorClient::getSentBytes)
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder("siepie.distributed.credit-wait", client, c -> c.getCreditWaitNanos() / 1e9)
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("siepie.distributed.weights-version", client, ActorClient::getWeightsVersion)
+                .strongReference(true)
+                .register(registry);
+    }
+
+    /**
+     * p50/p99/max in milliseconds per stage and the current counter values.
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        timers.forEach((stage, timer) -> stages.put(stage.tagValue(), stageSummary(timer)));
+
+        Map<String, Object> counters = new LinkedHashMap<>();
+        counters.put("overruns", (long) overruns.count());
+        registry.find("siepie.episodes").functionCounters()
+                .forEach(counter -> counters.put("episodes", (long) counter.count()));
+        registry.find("siepie.steps").functionCounters()
+                .forEach(counter -> counters.put("steps", (long) counter.count()));
+        registry.find("siepie.replay.steps").gauges()
+                .forEach(gauge -> counters.put("bufferSteps", (long) gauge.value()));
+        registry.find("siepie.learner.updates").functionCounters()
+                .forEach(counter -> counters.put("learnerUpdates", (long) counter.count()));
+        registry.find("siepie.learner.queue").gauges()
+                .forEach(gauge -> counters.put("learnerQueueDepth", (long) gauge.value()));
+        registry.find("siepie.pool.recycles").functionCounters()
+                .forEach(counter -> counters.put("browserRecycles", (long) counter.count()));
+        registry.find("siepie.pool.downtime").functionCounters()
+                .forEach(counter -> counters.put("browserDowntimeSeconds", counter.count()));
+        registry.find("siepie.distributed.actors").gauges()
+                .forEach(gauge -> counters.put("actors", (long) gauge.value()));
+        registry.find("siepie.distributed.episodes").functionCounters()
+                .forEach(counter -> counters.put("distributedEpisodes", (long) counter.count()));
+        registry.find("siepie.distributed.credit-wait").functionCounters()
+                .forEach(counter -> counters.put("creditWaitSeconds", counter.count()));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("stages", stages);
+        summary.put("deadTime", stageSummary(deadTime));
+        summary.put("jitter", stageSummary(jitter));
+        Map<String, Object> commandSummaries = new TreeMap<>();
+        commands.forEach((command, timer) -> commandSummaries.put(command, stageSummary(timer)));
+        summary.put("commands", commandSummaries);
+        summary.put("counters", counters);
+        return summary;
+    }
+
+    private static Map<String, Object> stageSummary(Timer timer) {
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", snapshot.count());
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            summary.put("p" + Math.round(percentile.percentile() * 100), percentile.value(TimeUnit.MILLISECONDS));
+        }
+        summary.put("max", snapshot.max(TimeUnit.MILLISECONDS));
+        return summary;
+    }
+}
@@ -0,0 +1,24 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * Step-loop latency percentiles and training counters as JSON.
+ */
+@RestController
+public class StepMetricsController {
+
+    private final StepMetrics metrics;
+
+    public StepMetricsController(StepMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @GetMapping("/metrics/steps")
+    public Map<String, Object> steps() {
+        return metrics.summary();
+    }
+}
@@ -0,0 +1,32 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+/**
+ * Stages of one environment step, timed separately to see where the step budget goes.
+ */
+public enum StepStage {
+    /**
+     * Getting the next frame from the environment, including {@link #PREPROCESS} when that
+     * happens on the step thread.
+     */
+    CAPTURE,
+    /**
+     * Decoding and downscaling a captured frame.
+     */
+    PREPROCESS,
+    FRAME_STACK,
+    INFERENCE,
+    ACTION,
+    DEATH_DETECTION,
+    /**
+     * Time left in the step budget that the loop sleeps away.
+     */
+    SLACK,
+    /**
+     * Recording the step, including inline training when there is no asynchronous learner.
+     */
+    TRAIN;
+
+    public String tagValue() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,26 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+/**
+ * Series tracked by {@link TrainingStatistics}.
+ */
+public enum TrainingStat {
+    /**
+     * Steps per episode, recorded once per episode.
+     */
+    EPISODE_LENGTH,
+    FINAL_SCORE,
+    EPSILON,
+    /**
+     * Mean absolute TD-error of a training batch, recorded once per update.
+     */
+    TD_ERROR,
+    LOSS,
+    /**
+     * Environment steps per second over all workers, sampled once per statistics interval.
+     */
+    STEPS_PER_SECOND;
+
+    public String seriesName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,264 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Long-running training statistics per {@link TrainingStat}: moving means over the last 20, 100
+ * and 1000 values, and P² estimates of the median, p90 and p99 per interval.
+ * <p>
+ * Recording is safe from any thread and never allocates, every series has its own lock and
+ * preallocated buffers. Once per interval a record of all series is appended to a binary time
+ * series file (little-endian):
+ * <pre>
+ * header:  int FILE_MAGIC, int FILE_VERSION, long intervalMillis,
+ *          int quantileCount, float quantiles[], int windowCount, int windows[],
+ *          int seriesCount, per series: short nameLength, byte name[] (UTF-8)
+ * record:  long epochMillis, per series:
+ *          int count, float mean, float quantiles[], float windowMeans[]
+ * </pre>
+ * Count, mean and quantiles cover the values recorded during the interval, the window means
+ * the last n values overall. Missing values are NaN.
+ */
+@Slf4j
+public class TrainingStatistics implements AutoCloseable {
+
+    static final int FILE_MAGIC = 0x53505453; // "SPTS"
+    static final int FILE_VERSION = 1;
+    static final int[] WINDOWS = {20, 100, 1000};
+    static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final DateTimeFormatter FILE_NAME = DateTimeFormatter.ofPattern("'stats-'yyyyMMdd-HHmmss'.bin'");
+
+    private final StatisticsSettings settings;
+    private final LongSupplier totalSteps;
+    private final Series[] series = new Series[TrainingStat.values().length];
+    private final ByteBuffer record = ByteBuffer.allocate(recordLength()).order(ByteOrder.LITTLE_ENDIAN);
+    private ScheduledExecutorService writer;
+    // Only touched by the writer thread after start
+    private FileChannel file;
+    private long lastSteps;
+    private long lastSampleNanos;
+
+    /**
+     * @param totalSteps environment steps so far over all workers, for {@link TrainingStat#STEPS_PER_SECOND}
+     */
+    public TrainingStatistics(StatisticsSettings settings, LongSupplier totalSteps) {
+        this.settings = settings;
+        this.totalSteps = totalSteps;
+        for (int i = 0; i < series.length; i++) {
+            series[i] = new Series();
+        }
+    }
+
+    /**
+     * Start sampling steps per second and, when enabled, writing the time series file.
+     */
+    public void start() throws IOException {
+        lastSteps = totalSteps.getAsLong();
+        lastSampleNanos = System.nanoTime();
+        if (settings.enabled()) {
+            Files.createDirectories(settings.directory());
+            Path path = settings.directory().resolve(LocalDateTime.now().format(FILE_NAME));
+            file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            writeFully(header());
+            log.info("Training statistics are written to {}", path);
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statistics-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = settings.interval().toMillis();
+        writer.scheduleAtFixedRate(this::tick, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void recordEpisode(int length, int finalScore, double epsilon) {
+        record(TrainingStat.EPISODE_LENGTH, length);
+        record(TrainingStat.FINAL_SCORE, finalScore);
+        record(TrainingStat.EPSILON, epsilon);
+    }
+
+    /**
+     * Record one training update.
+     */
+    public void recordUpdate(float[] tdErrors, double loss) {
+        if (tdErrors.length > 0) {
+            double sum = 0;
+            for (float tdError : tdErrors) {
+                sum += Math.abs(tdError);
+            }
+            record(TrainingStat.TD_ERROR, sum / tdErrors.length);
+        }
+        record(TrainingStat.LOSS, loss);
+    }
+
+    public void record(TrainingStat stat, double value) {
+        series[stat.ordinal()].add(value);
+    }
+
+    /**
+     * Mean of the last {@code window} values of a series, {@code window} being one of 20, 100 or 1000.
+     */
+    public double mean(TrainingStat stat, int window) {
+        for (int i = 0; i < WINDOWS.length; i++) {
+            if (WINDOWS[i] == window) return series[stat.ordinal()].mean(i);
+        }
+        throw new IllegalArgumentException("No window of " + window + " values");
+    }
+
+    /**
+     * Largest value recorded so far, {@code NaN} before the first value.
+     */
+    public double max(TrainingStat stat) {
+        return series[stat.ordinal()].max();
+    }
+
+    /**
+     * One-line overview for the training log.
+     */
+    public String summary() {
+        return String.format("Length MA-20: %.1f | MA-100: %.1f | max: %.0f | Score MA-100: %.1f | "
+                        + "TD-error MA-100: %.4f | Loss MA-100: %.4f | Steps/s: %.1f",
+                mean(TrainingStat.EPISODE_LENGTH, 20), mean(TrainingStat.EPISODE_LENGTH, 100),
+                max(TrainingStat.EPISODE_LENGTH), mean(TrainingStat.FINAL_SCORE, 100),
+                mean(TrainingStat.TD_ERROR, 100), mean(TrainingStat.LOSS, 100),
+                mean(TrainingStat.STEPS_PER_SECOND, 20));
+    }
+
+    @Override
+    public void close() {
+        if (writer == null) return;
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+            if (file != null) file.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Closing training statistics failed", e);
+        }
+    }
+
+    /**
+     * Sample steps per second and append a record.
+     */
+    void tick() {
+        long now = System.nanoTime();
+        long steps = totalSteps.getAsLong();
+        record(TrainingStat.STEPS_PER_SECOND, (steps - lastSteps) / ((now - lastSampleNanos) / 1e9));
+        lastSteps = steps;
+        lastSampleNanos = now;
+
+        record.clear();
+        record.putLong(System.currentTimeMillis());
+        for (Series s : series) {
+            s.writeInterval(record);
+        }
+        record.flip();
+        if (file == null) return;
+        try {
+            writeFully(record);
+        } catch (IOException e) {
+            log.error("Writing training statistics failed", e);
+        }
+    }
+
+    static int recordLength() {
+        return Long.BYTES + TrainingStat.values().length * Series.BYTES;
+    }
+
+    private ByteBuffer header() {
+        TrainingStat[] stats = TrainingStat.values();
+        int length = 4 * Integer.BYTES + Long.BYTES + Integer.BYTES
+                + QUANTILES.length * Float.BYTES + WINDOWS.length * Integer.BYTES;
+        for (TrainingStat stat : stats) {
+            length += Short.BYTES + stat.seriesName().getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putLong(settings.interval().toMillis());
+        header.putInt(QUANTILES.length);
+        for (double quantile : QUANTILES) header.putFloat((float) quantile);
+        header.putInt(WINDOWS.length);
+        for (int window : WINDOWS) header.putInt(window);
+        header.putInt(stats.length);
+        for (TrainingStat stat : stats) {
+            byte[] name = stat.seriesName().getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) name.length).put(name);
+        }
+        return header.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+    }
+
+    /**
+     * One series, guarded by its own lock.
+     */
+    private static final class Series {
+        static final int BYTES = Integer.BYTES + Float.BYTES * (1 + QUANTILES.length + WINDOWS.length);
+
+        private final RollingWindow window = new RollingWindow(WINDOWS);
+        private final P2Quantile[] quantiles = new P2Quantile[QUANTILES.length];
+        private long intervalCount;
+        private double intervalSum;
+        private double max = Double.NaN;
+
+        Series() {
+            for (int i = 0; i < quantiles.length; i++) {
+                quantiles[i] = new P2Quantile(QUANTILES[i]);
+            }
+        }
+
+        synchronized void add(double value) {
+            window.add(value);
+            for (P2Quantile quantile : quantiles) {
+                quantile.add(value);
+            }
+            intervalCount++;
+            intervalSum += value;
+            if (!(value <= max)) max = value;
+        }
+
+        synchronized double mean(int windowIndex) {
+            return window.mean(windowIndex);
+        }
+
+        synchronized double max() {
+            return max;
+        }
+
+        /**
+         * Append the interval statistics and start a new interval.
+         */
+        synchronized void writeInterval(ByteBuffer out) {
+            out.putInt((int) intervalCount);
+            out.putFloat(intervalCount == 0 ? Float.NaN : (float) (intervalSum / intervalCount));
+            for (P2Quantile quantile : quantiles) {
+                out.putFloat((float) quantile.value());
+                quantile.reset();
+            }
+            for (int i = 0; i < window.windowCount(); i++) {
+                out.putFloat((float) window.mean(i));
+            }
+            intervalCount = 0;
+            intervalSum = 0;
+        }
+    }
+}
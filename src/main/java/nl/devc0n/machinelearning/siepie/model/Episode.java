@@ -8,11 +8,16 @@ import java.util.List;
 @Getter
 public class Episode {
     private final List<GameStep> steps;
+    /**
+     * Grayscale pixels of the first frame, the frame stack before the first step repeats it.
+     */
+    private final byte[] initialFrame;
     private int finalScore;
     private int episodeLength;
 
-    public Episode() {
+    public Episode(byte[] initialFrame) {
         this.steps = new ArrayList<>();
+        this.initialFrame = initialFrame;
     }
 
     public void addStep(GameStep step) {
@@ -34,4 +39,13 @@ public class Episode {
 
         this.episodeLength = steps.size();
     }
+
+    /**
+     * Mark an episode that was already finished elsewhere, e.g. by an actor process, as finished
+     * without trimming its steps again.
+     */
+    public void markFinished(int finalScore) {
+        this.finalScore = finalScore;
+        this.episodeLength = steps.size();
+    }
 }
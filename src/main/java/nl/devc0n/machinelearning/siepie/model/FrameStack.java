@@ -1,64 +1,114 @@
 package nl.devc0n.machinelearning.siepie.model;
 
-import lombok.extern.slf4j.Slf4j;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
-import java.util.ArrayDeque;
-import java.util.Deque;
 
-@Slf4j
+/**
+ * The last K grayscale frames, kept as a preallocated ring of normalized float slots.
+ * <p>
+ * A push only converts the new frame, the stack is handed out as an oldest-to-newest copy
+ * of the ring with one bulk copy per slot.
+ */
 public class FrameStack {
+    private static final float PIXEL_SCALE = 1.0f / 255.0f;
+
     /**
-     * Queue of buffered images. The queue is ordered from oldest to newest image.
+     * Maximum size of the stack.
      */
-    private final Deque<BufferedImage> q;
+    private final int k;
+    private final int height;
+    private final int width;
+    private final int frameSize;
 
     /**
-     * Maximum size of the queue.
+     * Normalized pixels [0, 1], slot {@code i} starts at {@code i * frameSize}.
      */
-    private final int k;
+    private final float[] ring;
+
+    /**
+     * Raw pixels of the frame held in each slot.
+     */
+    private final byte[][] frames;
+
+    /**
+     * Slot of the most recently pushed frame.
+     */
+    private int newest;
 
     public FrameStack(int k, BufferedImage initial) {
+        this(k, initial.getHeight(), initial.getWidth(), pixels(initial));
+    }
+
+    /**
+     * @param initial grayscale pixels of the first frame, row by row, kept by reference
+     */
+    public FrameStack(int k, int height, int width, byte[] initial) {
         this.k = k;
-        q = new ArrayDeque<>(k);
-        for (int i = 0; i < k; i++) q.addLast(initial);
+        this.height = height;
+        this.width = width;
+        this.frameSize = height * width;
+        this.ring = new float[k * frameSize];
+        this.frames = new byte[k][];
+
+        normalize(initial, 0);
+        for (int i = 0; i < k; i++) {
+            if (i > 0) System.arraycopy(ring, 0, ring, i * frameSize, frameSize);
+            frames[i] = initial;
+        }
+        newest = k - 1;
     }
 
     public void push(BufferedImage img) {
-        if (q.size() == k) q.removeFirst();
-        q.addLast(img);
+        push(pixels(img));
+    }
+
+    /**
+     * @param pixels grayscale pixels of the frame, row by row, kept by reference
+     */
+    public void push(byte[] pixels) {
+        newest = (newest + 1) % k;
+        normalize(pixels, newest * frameSize);
+        frames[newest] = pixels;
+    }
+
+    /**
+     * Grayscale pixels of the most recently pushed frame.
+     */
+    public byte[] newestFrame() {
+        return frames[newest];
     }
 
-    public BufferedImage[] asArray() {
-        return q.toArray(new BufferedImage[0]);
+    /**
+     * Copy the stack, oldest frame first, as normalized pixels into {@code dst}.
+     */
+    public void copyInto(float[] dst, int offset) {
+        for (int i = 0; i < k; i++) {
+            int slot = (newest + 1 + i) % k;
+            System.arraycopy(ring, slot * frameSize, dst, offset + i * frameSize, frameSize);
+        }
     }
 
+    /**
+     * @return the stack as a [K, H, W] array, oldest frame first
+     */
     public INDArray toINDArray() {
-        var start = System.currentTimeMillis();
-        BufferedImage[] frames = asArray();
-        int K = frames.length;
-        int H = frames[0].getHeight();
-        int W = frames[0].getWidth();
-        INDArray arr = Nd4j.create(K, H, W);
-
-        int idx = 0;
-        for (BufferedImage img : frames) {
-            // For TYPE_BYTE_GRAY, raster is slightly faster than getRGB()
-            byte[] pixels = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-
-            for (int y = 0; y < H; y++) {
-                for (int x = 0; x < W; x++) {
-                    // byte is signed (-128 to 127), convert to unsigned (0 to 255)
-                    int gray = pixels[y * W + x] & 0xFF;
-                    arr.putScalar(new int[]{idx, y, x}, gray / 255.0);
-                }
-            }
-            idx++;
+        float[] stack = new float[k * frameSize];
+        copyInto(stack, 0);
+        return Nd4j.create(stack, new int[]{k, height, width});
+    }
+
+    private void normalize(byte[] pixels, int offset) {
+        for (int i = 0; i < frameSize; i++) {
+            // byte is signed (-128 to 127), convert to unsigned (0 to 255)
+            ring[offset + i] = (pixels[i] & 0xFF) * PIXEL_SCALE;
         }
-        log.debug("Frame stack took {}ms", System.currentTimeMillis() - start);
-        return arr;
+    }
+
+    private static byte[] pixels(BufferedImage img) {
+        // For TYPE_BYTE_GRAY the raster holds the pixels directly
+        return ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
     }
 }
@@ -1,27 +1,31 @@
 package nl.devc0n.machinelearning.siepie.model;
 
-import org.nd4j.linalg.api.ndarray.INDArray;
-
+/**
+ * A single recorded step. Only the frame observed after the action is kept, the
+ * frame stacks are rebuilt from the preceding frames of the episode.
+ */
 public class GameStep {
-    private final INDArray frameStack;
+    private final byte[] frame;
     private final Action action;
     private float reward;
-    private final INDArray nextFrameStack;
     private boolean terminal;
     private final int stepNumber;
 
-    public GameStep(INDArray frameStack, Action action, INDArray nextFrameStack, int stepNumber) {
-        this.frameStack = frameStack;
+    public GameStep(byte[] frame, Action action, int stepNumber) {
+        this.frame = frame;
         this.action = action;
-        this.nextFrameStack = nextFrameStack;
         this.stepNumber = stepNumber;
         this.terminal = false;
         this.reward = 0.01f; // Default survival bonus
     }
 
     // Getters and setters
-    public INDArray getFrameStack() {
-        return frameStack;
+
+    /**
+     * Grayscale pixels (unsigned bytes) of the frame observed after the action.
+     */
+    public byte[] getFrame() {
+        return frame;
     }
 
     public Action getAction() {
@@ -36,10 +40,6 @@ public class GameStep {
         this.reward = reward;
     }
 
-    public INDArray getNextFrameStack() {
-        return nextFrameStack;
-    }
-
     public boolean isTerminal() {
         return terminal;
     }
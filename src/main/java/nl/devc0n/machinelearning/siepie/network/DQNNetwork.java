@@ -1,7 +1,7 @@
 package nl.devc0n.machinelearning.siepie.network;
 
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
 import nl.devc0n.machinelearning.siepie.model.Action;
-import nl.devc0n.machinelearning.siepie.model.GameStep;
 import org.deeplearning4j.nn.conf.GradientNormalization;
 import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
 import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
@@ -18,22 +18,41 @@ import org.nd4j.linalg.lossfunctions.LossFunctions;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DQNNetwork {
-    private static final int INPUT_HEIGHT = 84;
-    private static final int INPUT_WIDTH = 84;
-    private static final int FRAME_STACK = 4;
+    static final int INPUT_HEIGHT = 84;
+    static final int INPUT_WIDTH = 84;
+    static final int FRAME_STACK = 4;
     private static final double GAMMA = 0.99;
+    private static final long REQUANTIZE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
     private MultiLayerNetwork model;
     private MultiLayerNetwork targetModel;
+    /**
+     * Network used for action selection. The training network itself unless an actor replica
+     * was enabled, then a copy that pulls the weights published by {@link #publishActorWeights()}.
+     */
+    private volatile ActorModel actor;
     private final int trainingIterations = 0;
+    private volatile double lastLoss = Double.NaN;
+    /**
+     * Select the bootstrap action with the online network and evaluate it with the target network.
+     */
+    private final boolean doubleDqn;
+    /**
+     * Set when updates are split over model replicas, see {@link #enableDataParallel}.
+     */
+    private DataParallelTrainer dataParallel;
 
-    public DQNNetwork() {
+    public DQNNetwork(boolean doubleDqn) {
+        this.doubleDqn = doubleDqn;
         buildNetwork();
     }
 
+    public DQNNetwork() {
+        this(false);
+    }
+
     private void buildNetwork() {
         int numActions = Action.getNumActions();
 
@@ -77,73 +96,356 @@ public class DQNNetwork {
         model.setListeners(new ScoreIterationListener(100));
 
         targetModel = model.clone();
+        actor = new ActorModel(model, null);
+    }
+
+    /**
+     * Give the actors their own copy of the weights so inference no longer shares the network
+     * that a learner thread is fitting.
+     */
+    public synchronized void enableActorReplica() {
+        if (actor.snapshot() != null) return;
+        actor = new ActorModel(model.clone(), new ParameterSnapshot(model.params()));
+    }
+
+    /**
+     * Hand the current training weights to the actors. Only copies into a preallocated
+     * snapshot, the actor replica picks it up in place before its next forward pass.
+     *
+     * @return the published version, 0 without an actor replica
+     */
+    public synchronized long publishActorWeights() {
+        ParameterSnapshot snapshot = actor.snapshot();
+        return snapshot == null ? 0 : snapshot.publish(model.params());
+    }
+
+    /**
+     * Version of the weights most recently handed to the actors.
+     */
+    public long getPublishedVersion() {
+        ParameterSnapshot snapshot = actor.snapshot();
+        return snapshot == null ? 0 : snapshot.version();
+    }
+
+    /**
+     * Let the actors pick actions with an int8 {@link QuantizedPolicy} built from the published
+     * weights instead of the float network. Enables the actor replica, call before actors start.
+     */
+    public synchronized void enableQuantizedActor() {
+        enableActorReplica();
+        if (actor.quantized() != null) return;
+        MultiLayerNetwork replica = actor.network();
+        actor = new ActorModel(replica, actor.snapshot(),
+                QuantizedPolicy.quantize(replica, FRAME_STACK, INPUT_HEIGHT, INPUT_WIDTH));
+    }
+
+    /**
+     * Train on several cores with model replicas, or with the number of ND4J threads that suits
+     * this host, as picked by {@link DataParallelTuner}.
+     *
+     * @param batchSize the batch size training will use, the tuner measures with it
+     */
+    public void enableDataParallel(DataParallelSettings settings, int batchSize) {
+        var choice = DataParallelTuner.choose(settings, batchSize);
+        enableDataParallel(choice.replicas());
+    }
+
+    /**
+     * Split every batch over {@code replicas} copies of the network, 1 trains this network alone.
+     */
+    public synchronized void enableDataParallel(int replicas) {
+        if (dataParallel != null) {
+            dataParallel.close();
+            dataParallel = null;
+        }
+        if (replicas > 1) {
+            dataParallel = new DataParallelTrainer(model, targetModel, replicas, doubleDqn);
+        }
+    }
+
+    /**
+     * The network being trained.
+     */
+    synchronized MultiLayerNetwork getModel() {
+        return model;
+    }
+
+    /**
+     * The replicas updates are split over, {@code null} when this network trains alone.
+     */
+    synchronized DataParallelTrainer getDataParallel() {
+        return dataParallel;
+    }
+
+    /**
+     * Fraction of {@code frameStacks} on which the quantized actor picks the same greedy action
+     * as the float weights it was built from, 1 without a quantized actor.
+     *
+     * @param frameStacks shape [N, K, H, W]
+     */
+    public double quantizedAgreement(INDArray frameStacks) {
+        ActorModel current = actor;
+        if (current.quantized() == null) return 1.0;
+        synchronized (current) {
+            current.refresh();
+            current.quantized().update(current.network());
+            return current.quantized().agreement(current.network(), frameStacks);
+        }
     }
 
     public Action selectAction(INDArray frameStack, double epsilon) {
         if (Math.random() < epsilon) {
-            // Bias early exploration: 50% do nothing, 50% move
-            if (Math.random() < 0.5) {
-                return Action.NOTHING;
-            }
-            return Action.fromIndex(1 + (int) (Math.random() * 4));
+            return randomAction();
         }
 
         // Add batch dimension: [K, H, W] -> [1, K, H, W]
         INDArray batchedInput = frameStack.reshape(1, FRAME_STACK, INPUT_HEIGHT, INPUT_WIDTH);
-        INDArray qValues = model.output(batchedInput);
+        return Action.fromIndex(bestActions(batchedInput)[0]);
+    }
 
-        int bestAction = Nd4j.argMax(qValues, 1).getInt(0);
-        return Action.fromIndex(bestAction);
+    /**
+     * Epsilon-greedy actions for a batch of frame stacks with a single forward pass.
+     *
+     * @param frameStacks shape [N, K, H, W]
+     */
+    public Action[] selectActions(INDArray frameStacks, double epsilon) {
+        int count = (int) frameStacks.size(0);
+        Action[] actions = new Action[count];
+        int[] bestActions = bestActions(frameStacks);
+        for (int i = 0; i < count; i++) {
+            actions[i] = Math.random() < epsilon ? randomAction() : Action.fromIndex(bestActions[i]);
+        }
+        return actions;
     }
 
-    public void train(List<GameStep> batch) {
-        if (batch.isEmpty()) return;
+    private int[] bestActions(INDArray input) {
+        ActorModel current = actor;
+        // MultiLayerNetwork is not thread-safe, actors may share it
+        synchronized (current) {
+            current.refresh();
+            if (current.quantized() != null) {
+                return current.quantized().bestActions(input);
+            }
+            return Nd4j.argMax(current.network().output(input), 1).toIntVector();
+        }
+    }
 
-        // Collect all states and targets
-        List<INDArray> statesList = new ArrayList<>();
-        List<INDArray> targetsList = new ArrayList<>();
+    private static Action randomAction() {
+        // Bias early exploration: 50% do nothing, 50% move
+        if (Math.random() < 0.5) {
+            return Action.NOTHING;
+        }
+        return Action.fromIndex(1 + (int) (Math.random() * 4));
+    }
 
-        for (GameStep step : batch) {
-            // Add batch dimension for forward pass: [K, H, W] -> [1, K, H, W]
-            INDArray batchedFrame = step.getFrameStack().reshape(1, FRAME_STACK, INPUT_HEIGHT, INPUT_WIDTH);
-            INDArray currentQ = model.output(batchedFrame);
+    /**
+     * Fit the online network on a sampled batch with one forward pass per network.
+     * <p>
+     * Importance-sampling weights scale the TD-error in the target, for the MSE loss this is
+     * the same gradient as weighting each sample's loss.
+     *
+     * @return the TD-error (target - Q(s, a)) of every sample, for priority updates
+     */
+    public synchronized float[] train(TransitionBatch batch) {
+        if (batch.isEmpty()) return new float[0];
 
-            float targetQ;
-            if (step.isTerminal()) {
-                targetQ = step.getReward();
-            } else {
-                INDArray batchedNextFrame = step.getNextFrameStack().reshape(1, FRAME_STACK, INPUT_HEIGHT, INPUT_WIDTH);
-                INDArray nextQ = targetModel.output(batchedNextFrame);
-                float maxNextQ = nextQ.maxNumber().floatValue();
-                targetQ = step.getReward() + (float) GAMMA * maxNextQ;
-            }
+        ActorModel current = actor;
+        if (current.snapshot() != null) {
+            return fit(batch);
+        }
+        // Without a replica the actors run inference on this same network
+        synchronized (current) {
+            return fit(batch);
+        }
+    }
+
+    private float[] fit(TransitionBatch batch) {
+        if (dataParallel != null) {
+            float[] tdErrors = dataParallel.train(batch);
+            lastLoss = dataParallel.getLastLoss();
+            return tdErrors;
+        }
+        float[] tdErrors = fit(model, targetModel, batch, doubleDqn);
+        lastLoss = model.score();
+        return tdErrors;
+    }
+
+    /**
+     * One DQN update of {@code model} on {@code batch}, bootstrapping from {@code targetModel}.
+     *
+     * @return the TD-error of every sample
+     */
+    static float[] fit(MultiLayerNetwork model, MultiLayerNetwork targetModel, TransitionBatch batch, boolean doubleDqn) {
+        int batchSize = batch.size();
+        int numActions = Action.getNumActions();
 
-            INDArray target = currentQ.dup();
-            target.putScalar(new int[]{0, step.getAction().index}, targetQ);
+        INDArray currentQ = model.output(batch.states());
+        INDArray nextQ = targetModel.output(batch.nextStates());
 
-            // Store WITH proper shape for stacking
-            // Ensure frameStack maintains 4D shape [1, K, H, W] for proper vstacking
-            statesList.add(step.getFrameStack().reshape(1, FRAME_STACK, INPUT_HEIGHT, INPUT_WIDTH));
-            targetsList.add(target.getRow(0)); // Remove batch dimension
+        INDArray bootstrapQ;
+        if (doubleDqn) {
+            // Online network picks the next action, target network evaluates it
+            INDArray nextActions = Nd4j.argMax(model.output(batch.nextStates()), 1);
+            bootstrapQ = nextQ.mul(oneHot(nextActions.toIntVector(), numActions)).sum(1);
+        } else {
+            bootstrapQ = nextQ.max(1);
         }
 
+        float[] notTerminal = new float[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            notTerminal[i] = batch.terminals()[i] ? 0f : 1f;
+        }
+
+        // y = r + gamma * max Q'(s', a'), just r for terminal steps
+        INDArray targetQ = Nd4j.createFromArray(batch.rewards())
+                .addi(bootstrapQ.muli(Nd4j.createFromArray(notTerminal)).muli(GAMMA));
+
+        INDArray actionMask = oneHot(batch.actions(), numActions);
+        INDArray predictedQ = currentQ.mul(actionMask).sum(1);
+        INDArray tdErrors = targetQ.subi(predictedQ);
 
-        INDArray states = Nd4j.concat(0, statesList.toArray(new INDArray[0]));
-        INDArray targets = Nd4j.vstack(targetsList.toArray(new INDArray[0]));
+        // Only the taken action moves, by its weighted TD-error
+        INDArray weightedErrors = tdErrors.mul(Nd4j.createFromArray(batch.weights())).reshape(batchSize, 1);
+        INDArray targets = currentQ.add(actionMask.muliColumnVector(weightedErrors));
 
-        model.fit(states, targets);
+        model.fit(batch.states(), targets);
+        return tdErrors.toFloatVector();
     }
 
-    public void updateTargetNetwork() {
-        targetModel = model.clone();
+    private static INDArray oneHot(int[] indices, int depth) {
+        float[] mask = new float[indices.length * depth];
+        for (int i = 0; i < indices.length; i++) {
+            mask[i * depth + indices[i]] = 1f;
+        }
+        return Nd4j.create(mask, new int[]{indices.length, depth});
     }
 
-    public void save(String path) throws IOException {
+    /**
+     * Loss of the most recent training step, {@code NaN} before the first.
+     */
+    public double getLastLoss() {
+        return lastLoss;
+    }
+
+    public synchronized void updateTargetNetwork() {
+        // Same architecture, so copy the flat parameter vector in place
+        targetModel.setParams(model.params());
+        if (dataParallel != null) {
+            dataParallel.updateTargets(model.params());
+        }
+    }
+
+    public synchronized void save(String path) throws IOException {
         model.save(new File(path));
     }
 
-    public void load(String path) throws IOException {
-        model = MultiLayerNetwork.load(new File(path), true);
-        targetModel = model.clone();
+    public synchronized void load(String path) throws IOException {
+        restore(MultiLayerNetwork.load(new File(path), true), null);
+    }
+
+    /**
+     * Copy of the training weights as a flat vector, e.g. to send to actors in other processes.
+     */
+    public synchronized float[] copyParams() {
+        return model.params().toFloatVector();
+    }
+
+    /**
+     * Pick actions with {@code params} from now on, for an actor whose learner runs in another
+     * process. Also replaces the training weights, which such an actor does not train.
+     */
+    public synchronized void loadParams(float[] params) {
+        if (params.length != model.numParams()) {
+            throw new IllegalArgumentException("Expected " + model.numParams() + " parameters, got " + params.length);
+        }
+        ActorModel current = actor;
+        // Without a replica the actors run inference on this same network
+        synchronized (current) {
+            model.params().assign(Nd4j.createFromArray(params));
+        }
+        publishActorWeights();
+    }
+
+    /**
+     * Empty snapshot buffers for {@link #snapshot(NetworkSnapshot)}.
+     */
+    public synchronized NetworkSnapshot newSnapshot() {
+        return new NetworkSnapshot(model.getLayerWiseConfigurations().toJson());
+    }
+
+    /**
+     * Copy parameters, updater state and target parameters into {@code into}. Only waits for
+     * a training step that is in progress, the copies themselves are flat array copies.
+     */
+    public synchronized void snapshot(NetworkSnapshot into) {
+        into.params = NetworkSnapshot.copy(model.params(), into.params);
+        into.updaterState = NetworkSnapshot.copy(model.getUpdater().getStateViewArray(), into.updaterState);
+        into.targetParams = NetworkSnapshot.copy(targetModel.params(), into.targetParams);
+    }
+
+    /**
+     * Continue from a restored network, including its updater state.
+     *
+     * @param targetParams target network parameters, {@code null} to start the target from {@code restored}
+     */
+    public synchronized void restore(MultiLayerNetwork restored, INDArray targetParams) {
+        model = restored;
+        targetModel.setParams(targetParams != null ? targetParams : model.params());
+        if (dataParallel != null) {
+            enableDataParallel(dataParallel.replicaCount());
+        }
+        if (actor.snapshot() == null) {
+            actor = new ActorModel(model, null);
+        } else {
+            publishActorWeights();
+        }
+    }
+
+    /**
+     * The network actors run inference on, with the snapshot it follows when it is a replica.
+     * Synchronize on it around a forward pass.
+     */
+    private static final class ActorModel {
+        private final MultiLayerNetwork network;
+        private final ParameterSnapshot snapshot;
+        private final QuantizedPolicy quantized;
+        private long version;
+        private long quantizedVersion;
+        private long quantizedAt;
+
+        ActorModel(MultiLayerNetwork network, ParameterSnapshot snapshot, QuantizedPolicy quantized) {
+            this.network = network;
+            this.snapshot = snapshot;
+            this.quantized = quantized;
+        }
+
+        ActorModel(MultiLayerNetwork network, ParameterSnapshot snapshot) {
+            this(network, snapshot, null);
+        }
+
+        MultiLayerNetwork network() {
+            return network;
+        }
+
+        ParameterSnapshot snapshot() {
+            return snapshot;
+        }
+
+        QuantizedPolicy quantized() {
+            return quantized;
+        }
+
+        void refresh() {
+            if (snapshot != null) {
+                version = snapshot.refresh(network, version);
+            }
+            // Requantizing costs a few ms, so follow the published weights at a lower rate
+            long now = System.nanoTime();
+            if (quantized != null && quantizedVersion != version && now - quantizedAt >= REQUANTIZE_INTERVAL_NANOS) {
+                quantized.update(network);
+                quantizedVersion = version;
+                quantizedAt = now;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Settings for training on several cores, see {@link DataParallelTrainer} and {@link DataParallelTuner}.
+ *
+ * @param enabled        split updates over model replicas and set the ND4J threads per op
+ * @param replicas       model replicas, 0 lets the tuner pick
+ * @param intraOpThreads ND4J/OpenMP threads per op, 0 lets the tuner pick
+ * @param tuneTrial      how long the tuner trains with each candidate
+ */
+public record DataParallelSettings(@DefaultValue("false") boolean enabled,
+                                   @DefaultValue("0") int replicas,
+                                   @DefaultValue("0") int intraOpThreads,
+                                   @DefaultValue("3s") Duration tuneTrial) {
+
+    public static DataParallelSettings defaults() {
+        return new DataParallelSettings(false, 0, 0, Duration.ofSeconds(3));
+    }
+}
@@ -0,0 +1,161 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Synchronous data-parallel DQN updates over replicas of the online and target networks.
+ * <p>
+ * Every update splits the batch into one shard per replica. Each replica computes the targets
+ * of its shard and fits it on its own thread. The parameters and Adam state of the replicas
+ * are then averaged into the master network and copied back, so every update starts from the
+ * same weights on all replicas. The target networks of all replicas are only ever set together,
+ * from the averaged weights.
+ */
+final class DataParallelTrainer implements AutoCloseable {
+
+    private final MultiLayerNetwork master;
+    private final Replica[] replicas;
+    private final boolean doubleDqn;
+    private double lastLoss = Double.NaN;
+
+    /**
+     * @param master       network that holds the averaged weights, what is saved and published
+     * @param masterTarget its target network, the replicas start from a copy
+     */
+    DataParallelTrainer(MultiLayerNetwork master, MultiLayerNetwork masterTarget, int replicaCount, boolean doubleDqn) {
+        this.master = master;
+        this.doubleDqn = doubleDqn;
+        this.replicas = new Replica[replicaCount];
+        for (int r = 0; r < replicaCount; r++) {
+            MultiLayerNetwork online = master.clone();
+            if (r > 0) {
+                // The score is logged by the first replica only
+                online.setListeners();
+            }
+            int index = r;
+            ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "data-parallel-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+            replicas[r] = new Replica(online, masterTarget.clone(), worker);
+        }
+        broadcast();
+    }
+
+    /**
+     * One update on all replicas, the master network holds the averaged result afterwards.
+     *
+     * @return the TD-error of every sample, in batch order
+     */
+    float[] train(TransitionBatch batch) {
+        int size = batch.size();
+        int shards = Math.min(replicas.length, size);
+        @SuppressWarnings("unchecked")
+        Future<float[]>[] results = new Future[shards];
+        for (int r = 0; r < shards; r++) {
+            TransitionBatch shard = batch.slice(size * r / shards, size * (r + 1) / shards);
+            Replica replica = replicas[r];
+            results[r] = replica.worker().submit(() -> DQNNetwork.fit(replica.online(), replica.target(), shard, doubleDqn));
+        }
+
+        float[] tdErrors = new float[size];
+        double loss = 0;
+        for (int r = 0; r < shards; r++) {
+            float[] shardErrors = await(results[r]);
+            System.arraycopy(shardErrors, 0, tdErrors, size * r / shards, shardErrors.length);
+            loss += replicas[r].online().score() * shardErrors.length;
+        }
+        average(shards);
+        lastLoss = loss / size;
+        return tdErrors;
+    }
+
+    /**
+     * Set the target network of every replica.
+     */
+    void updateTargets(INDArray params) {
+        for (Replica replica : replicas) {
+            replica.target().setParams(params);
+        }
+    }
+
+    double getLastLoss() {
+        return lastLoss;
+    }
+
+    int replicaCount() {
+        return replicas.length;
+    }
+
+    MultiLayerNetwork replica(int index) {
+        return replicas[index].online();
+    }
+
+    MultiLayerNetwork replicaTarget(int index) {
+        return replicas[index].target();
+    }
+
+    @Override
+    public void close() {
+        for (Replica replica : replicas) {
+            replica.worker().shutdownNow();
+        }
+    }
+
+    /**
+     * Average the first {@code count} replicas into the master and start all replicas from it.
+     */
+    private void average(int count) {
+        INDArray params = master.params();
+        params.assign(replicas[0].online().params());
+        for (int r = 1; r < count; r++) {
+            params.addi(replicas[r].online().params());
+        }
+        params.divi(count);
+
+        INDArray state = master.getUpdater().getStateViewArray();
+        if (state != null) {
+            state.assign(replicas[0].online().getUpdater().getStateViewArray());
+            for (int r = 1; r < count; r++) {
+                state.addi(replicas[r].online().getUpdater().getStateViewArray());
+            }
+            state.divi(count);
+        }
+        // Adam's bias correction follows the iteration count
+        master.setIterationCount(replicas[0].online().getIterationCount());
+        broadcast();
+    }
+
+    private void broadcast() {
+        INDArray state = master.getUpdater().getStateViewArray();
+        for (Replica replica : replicas) {
+            replica.online().params().assign(master.params());
+            if (state != null) {
+                replica.online().getUpdater().getStateViewArray().assign(state);
+            }
+            replica.online().setIterationCount(master.getIterationCount());
+        }
+    }
+
+    private static float[] await(Future<float[]> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a replica update", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replica update failed", e.getCause());
+        }
+    }
+
+    private record Replica(MultiLayerNetwork online, MultiLayerNetwork target, ExecutorService worker) {
+    }
+}
@@ -0,0 +1,153 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+
+/**
+ * Picks the number of model replicas and ND4J/OpenMP threads per op for this host by training
+ * with each candidate for a short trial.
+ * <p>
+ * Every replica runs its ops on its own thread, so candidates keep replicas times threads at or
+ * below the number of cores. The baseline is the single network with ND4J's own thread count,
+ * every candidate is reported as updates per second and as a factor of the baseline.
+ */
+@Slf4j
+public final class DataParallelTuner {
+
+    private static final int WARMUP_UPDATES = 3;
+    private static final long SEED = 42;
+
+    private DataParallelTuner() {
+    }
+
+    /**
+     * Apply the replicas and threads of {@code settings}, tuning the ones left at 0.
+     */
+    public static Choice choose(DataParallelSettings settings, int batchSize) {
+        if (settings.replicas() > 0 && settings.intraOpThreads() > 0) {
+            applyThreads(settings.intraOpThreads());
+            log.info("Data-parallel training with {} replicas x {} threads", settings.replicas(), settings.intraOpThreads());
+            return new Choice(settings.replicas(), settings.intraOpThreads(), Double.NaN, Double.NaN);
+        }
+        return tune(batchSize, settings.tuneTrial(), settings.replicas(), settings.intraOpThreads());
+    }
+
+    /**
+     * Time every candidate, apply the threads of the fastest and return it.
+     *
+     * @param replicas replicas to try, 0 for powers of two up to the number of cores
+     * @param threads  threads per op to try, 0 for powers of two up to the cores left per replica
+     */
+    public static Choice tune(int batchSize, Duration trial, int replicas, int threads) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int defaultThreads = Nd4j.getEnvironment().maxThreads();
+        TransitionBatch batch = syntheticBatch(batchSize);
+
+        double baseline = updatesPerSecond(1, defaultThreads, batch, trial);
+        log.info("Tuning data-parallel training on {} cores, batch {}: 1 replica x {} threads (baseline): {} updates/s",
+                cores, batchSize, defaultThreads, String.format("%.1f", baseline));
+        Choice best = new Choice(1, defaultThreads, baseline, baseline);
+
+        for (int r : candidates(replicas, Math.min(cores, batchSize))) {
+            for (int t : candidates(threads, Math.max(1, cores / r))) {
+                if (r == 1 && t == defaultThreads) continue;
+                double measured = updatesPerSecond(r, t, batch, trial);
+                log.info("  {} replicas x {} threads: {} updates/s, {}x", r, t,
+                        String.format("%.1f", measured), String.format("%.2f", measured / baseline));
+                if (measured > best.updatesPerSecond()) {
+                    best = new Choice(r, t, measured, baseline);
+                }
+            }
+        }
+        applyThreads(best.intraOpThreads());
+        log.info("Data-parallel training with {} replicas x {} threads: {} updates/s, {}x the single network",
+                best.replicas(), best.intraOpThreads(), String.format("%.1f", best.updatesPerSecond()),
+                String.format("%.2f", best.speedup()));
+        return best;
+    }
+
+    /**
+     * Threads ND4J may use for a single op, process wide.
+     */
+    public static void applyThreads(int threads) {
+        Nd4j.getEnvironment().setMaxThreads(threads);
+        Nd4j.getEnvironment().setMaxMasterThreads(threads);
+    }
+
+    private static double updatesPerSecond(int replicas, int threads, TransitionBatch batch, Duration trial) {
+        applyThreads(threads);
+        var network = new DQNNetwork();
+        network.enableDataParallel(replicas);
+        try {
+            for (int i = 0; i < WARMUP_UPDATES; i++) {
+                network.train(batch);
+            }
+            long start = System.nanoTime();
+            long end = start + trial.toNanos();
+            long updates = 0;
+            long now;
+            do {
+                network.train(batch);
+                updates++;
+                now = System.nanoTime();
+            } while (now < end);
+            return updates / ((now - start) / 1e9);
+        } finally {
+            network.enableDataParallel(1);
+        }
+    }
+
+    /**
+     * {@code fixed} alone, or the powers of two up to {@code max} and {@code max} itself.
+     */
+    private static int[] candidates(int fixed, int max) {
+        if (fixed > 0) return new int[]{fixed};
+        var values = new TreeSet<Integer>();
+        for (int value = 1; value <= max; value *= 2) {
+            values.add(value);
+        }
+        values.add(max);
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Random frame stacks, the time of an update does not depend on what the frames show.
+     */
+    private static TransitionBatch syntheticBatch(int batchSize) {
+        var random = new SplittableRandom(SEED);
+        // Its own generator, reseeding the process-wide one would change what training draws later
+        var tensorRandom = Nd4j.getRandomFactory().getNewRandomInstance(SEED);
+        int[] actions = random.ints(batchSize, 0, Action.getNumActions()).toArray();
+        float[] rewards = new float[batchSize];
+        boolean[] terminals = new boolean[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            rewards[i] = (float) random.nextDouble(-1, 1);
+            terminals[i] = random.nextInt(20) == 0;
+        }
+        float[] weights = new float[batchSize];
+        Arrays.fill(weights, 1f);
+        long[] shape = {batchSize, DQNNetwork.FRAME_STACK, DQNNetwork.INPUT_HEIGHT, DQNNetwork.INPUT_WIDTH};
+        return new TransitionBatch(Nd4j.rand(tensorRandom, shape).castTo(DataType.FLOAT),
+                Nd4j.rand(tensorRandom, shape).castTo(DataType.FLOAT),
+                actions, rewards, terminals, new long[batchSize], weights);
+    }
+
+    /**
+     * @param updatesPerSecond         measured with this choice, NaN when it was configured
+     * @param baselineUpdatesPerSecond measured with the single network
+     */
+    public record Choice(int replicas, int intraOpThreads, double updatesPerSecond, double baselineUpdatesPerSecond) {
+
+        public double speedup() {
+            return updatesPerSecond / baselineUpdatesPerSecond;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+/**
+ * Reusable copy of everything needed to resume training a {@link DQNNetwork}: the flat
+ * parameters, the updater (Adam) state and the target network parameters.
+ * <p>
+ * Filled by {@link DQNNetwork#snapshot(NetworkSnapshot)} with in-place copies, so taking a
+ * snapshot does not allocate once the buffers exist.
+ */
+public final class NetworkSnapshot {
+
+    final String configuration;
+    INDArray params;
+    INDArray updaterState;
+    INDArray targetParams;
+
+    NetworkSnapshot(String configuration) {
+        this.configuration = configuration;
+    }
+
+    /**
+     * Network configuration as written to {@code configuration.json} by DL4J.
+     */
+    public String configuration() {
+        return configuration;
+    }
+
+    public INDArray params() {
+        return params;
+    }
+
+    /**
+     * Flattened updater state, {@code null} when the updater has no state.
+     */
+    public INDArray updaterState() {
+        return updaterState;
+    }
+
+    public INDArray targetParams() {
+        return targetParams;
+    }
+
+    static INDArray copy(INDArray source, INDArray into) {
+        if (source == null) return null;
+        if (into == null || into.length() != source.length()) return source.dup();
+        return into.assign(source);
+    }
+}
@@ -0,0 +1,61 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Double-buffered copy of a network's flat parameter vector, published with a version number.
+ * <p>
+ * A single writer copies the parameters into the buffer that is not currently published and
+ * then bumps the version, readers copy the published buffer into their own network. Both
+ * buffers are allocated once, so publishing and refreshing never allocate. A reader that was
+ * overtaken by two publishes while copying (the writer started overwriting its buffer) retries.
+ */
+class ParameterSnapshot {
+
+    private final INDArray[] buffers;
+    /**
+     * Version of the most recently completed publish, lives in {@code buffers[version & 1]}.
+     */
+    private final AtomicLong version = new AtomicLong();
+    /**
+     * Version the writer is currently writing (or last wrote).
+     */
+    private final AtomicLong writing = new AtomicLong();
+
+    ParameterSnapshot(INDArray params) {
+        this.buffers = new INDArray[]{params.dup(), params.dup()};
+    }
+
+    /**
+     * Copy {@code params} into the spare buffer and publish it. Only one thread may publish.
+     */
+    long publish(INDArray params) {
+        long next = version.get() + 1;
+        writing.set(next);
+        buffers[(int) (next & 1)].assign(params);
+        version.set(next);
+        return next;
+    }
+
+    long version() {
+        return version.get();
+    }
+
+    /**
+     * Copy the published parameters into {@code network} when they are newer than {@code seen}.
+     *
+     * @return the version the network now holds
+     */
+    long refresh(MultiLayerNetwork network, long seen) {
+        while (true) {
+            long current = version.get();
+            if (current == seen) return seen;
+            network.params().assign(buffers[(int) (current & 1)]);
+            // The buffer is only rewritten for version current + 2
+            if (writing.get() < current + 2) return current;
+        }
+    }
+}
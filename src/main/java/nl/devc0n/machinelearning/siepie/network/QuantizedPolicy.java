@@ -0,0 +1,299 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+
+/**
+ * Inference-only copy of the DQN with int8 weights, for actors that only pick actions.
+ * <p>
+ * The three conv layers and the 512-unit dense layer keep one int8 weight per float weight with
+ * a scale per output channel. Activations are quantized per layer to 0..127 on the fly, so each
+ * output is an integer dot product scaled back once. The small output layer stays float. Holds
+ * no updater state and about a quarter of the float weight memory.
+ * <p>
+ * Not thread-safe, forward passes reuse scratch buffers.
+ */
+public final class QuantizedPolicy {
+
+    private static final int QUANT_MAX = 127;
+    private static final int CONV_LAYERS = 3;
+    private static final int HIDDEN_LAYER = 3;
+    private static final int OUTPUT_LAYER = 4;
+
+    private final Conv[] convs = new Conv[CONV_LAYERS];
+    private final Quantized hidden;
+    private final int actions;
+    private final float[] outputWeights;
+    private final float[] outputBias;
+    private final int inputSize;
+
+    // Scratch, sized for the largest layer
+    private final byte[] quantized;
+    private final float[] activations;
+    private final float[] hiddenActivations;
+
+    private QuantizedPolicy(MultiLayerNetwork network, int channels, int height, int width) {
+        this.inputSize = channels * height * width;
+        int largest = inputSize;
+        for (int i = 0; i < CONV_LAYERS; i++) {
+            var conf = (ConvolutionLayer) network.getLayer(i).conf().getLayer();
+            if (conf.getPadding()[0] != 0 || conf.getPadding()[1] != 0) {
+                throw new IllegalArgumentException("Padded convolutions are not supported");
+            }
+            long[] shape = network.getParam(i + "_W").shape();
+            convs[i] = new Conv((int) shape[0], channels, height, width, conf.getKernelSize()[0], conf.getStride()[0]);
+            channels = convs[i].layer.outputs;
+            height = convs[i].outHeight;
+            width = convs[i].outWidth;
+            largest = Math.max(largest, channels * height * width);
+        }
+        long[] hiddenShape = network.getParam(HIDDEN_LAYER + "_W").shape();
+        this.hidden = new Quantized((int) hiddenShape[1], (int) hiddenShape[0]);
+        long[] outputShape = network.getParam(OUTPUT_LAYER + "_W").shape();
+        this.actions = (int) outputShape[1];
+        this.outputWeights = new float[actions * hidden.outputs];
+        this.outputBias = new float[actions];
+
+        this.quantized = new byte[largest];
+        this.activations = new float[largest];
+        this.hiddenActivations = new float[hidden.outputs];
+    }
+
+    /**
+     * Quantize {@code network}, which must have the {@link DQNNetwork} architecture.
+     */
+    public static QuantizedPolicy quantize(MultiLayerNetwork network, int channels, int height, int width) {
+        var policy = new QuantizedPolicy(network, channels, height, width);
+        policy.update(network);
+        return policy;
+    }
+
+    /**
+     * Requantize in place from newer weights of the same architecture.
+     */
+    public void update(MultiLayerNetwork network) {
+        for (int i = 0; i < CONV_LAYERS; i++) {
+            // [out, in, kH, kW] flattens to one row per output channel in patch order
+            convs[i].layer.quantize(Nd4j.toFlattened('c', network.getParam(i + "_W")).toFloatVector(),
+                    network.getParam(i + "_b").toFloatVector());
+        }
+        // Dense weights are [in, out], transposed to one row per unit
+        hidden.quantize(Nd4j.toFlattened('c', network.getParam(HIDDEN_LAYER + "_W").transpose()).toFloatVector(),
+                network.getParam(HIDDEN_LAYER + "_b").toFloatVector());
+        float[] output = Nd4j.toFlattened('c', network.getParam(OUTPUT_LAYER + "_W").transpose()).toFloatVector();
+        System.arraycopy(output, 0, outputWeights, 0, outputWeights.length);
+        float[] bias = network.getParam(OUTPUT_LAYER + "_b").toFloatVector();
+        System.arraycopy(bias, 0, outputBias, 0, actions);
+    }
+
+    /**
+     * Greedy action per frame stack.
+     *
+     * @param frameStacks shape [K, H, W] or [N, K, H, W]
+     */
+    public int[] bestActions(INDArray frameStacks) {
+        int count = frameStacks.rank() == 3 ? 1 : (int) frameStacks.size(0);
+        float[] input = Nd4j.toFlattened('c', frameStacks).toFloatVector();
+        float[] qValues = new float[actions];
+        int[] best = new int[count];
+        for (int i = 0; i < count; i++) {
+            forward(input, i * inputSize, qValues);
+            best[i] = argMax(qValues);
+        }
+        return best;
+    }
+
+    /**
+     * Q-values of a single frame stack.
+     */
+    public float[] qValues(INDArray frameStack) {
+        float[] qValues = new float[actions];
+        forward(Nd4j.toFlattened('c', frameStack).toFloatVector(), 0, qValues);
+        return qValues;
+    }
+
+    /**
+     * Fraction of frame stacks on which this policy picks the same greedy action as the float
+     * network.
+     */
+    public double agreement(MultiLayerNetwork reference, INDArray frameStacks) {
+        int[] expected = Nd4j.argMax(reference.output(frameStacks), 1).toIntVector();
+        int[] actual = bestActions(frameStacks);
+        int agreeing = 0;
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == actual[i]) agreeing++;
+        }
+        return (double) agreeing / expected.length;
+    }
+
+    /**
+     * Memory held by the weights, scales and biases.
+     */
+    public long weightBytes() {
+        long bytes = hidden.bytes() + 4L * (outputWeights.length + outputBias.length);
+        for (Conv conv : convs) {
+            bytes += conv.layer.bytes();
+        }
+        return bytes;
+    }
+
+    private void forward(float[] input, int offset, float[] qValues) {
+        float scale = quantize(input, offset, inputSize, quantized);
+        for (Conv conv : convs) {
+            conv.forward(quantized, scale, activations);
+            scale = quantize(activations, 0, conv.outputSize(), quantized);
+        }
+        Quantized layer = hidden;
+        for (int o = 0; o < layer.outputs; o++) {
+            int sum = dot(quantized, 0, layer.weights, o * layer.inputs, layer.inputs);
+            hiddenActivations[o] = Math.max(0f, sum * scale * layer.scales[o] + layer.bias[o]);
+        }
+        for (int a = 0; a < actions; a++) {
+            float q = outputBias[a];
+            int row = a * layer.outputs;
+            for (int i = 0; i < layer.outputs; i++) {
+                q += hiddenActivations[i] * outputWeights[row + i];
+            }
+            qValues[a] = q;
+        }
+    }
+
+    /**
+     * Quantize non-negative values to 0..127 with a single scale.
+     *
+     * @return the scale that maps a quantized value back
+     */
+    private static float quantize(float[] values, int offset, int length, byte[] into) {
+        float max = 0f;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, values[offset + i]);
+        }
+        if (max == 0f) {
+            Arrays.fill(into, 0, length, (byte) 0);
+            return 0f;
+        }
+        float inverse = QUANT_MAX / max;
+        for (int i = 0; i < length; i++) {
+            into[i] = (byte) Math.round(Math.max(0f, values[offset + i]) * inverse);
+        }
+        return max / QUANT_MAX;
+    }
+
+    private static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    private static int argMax(float[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) best = i;
+        }
+        return best;
+    }
+
+    /**
+     * Int8 weight matrix with one row and one scale per output.
+     */
+    private static final class Quantized {
+        final int outputs;
+        final int inputs;
+        final byte[] weights;
+        final float[] scales;
+        final float[] bias;
+
+        Quantized(int outputs, int inputs) {
+            this.outputs = outputs;
+            this.inputs = inputs;
+            this.weights = new byte[outputs * inputs];
+            this.scales = new float[outputs];
+            this.bias = new float[outputs];
+        }
+
+        void quantize(float[] rows, float[] bias) {
+            for (int o = 0; o < outputs; o++) {
+                int row = o * inputs;
+                float max = 0f;
+                for (int i = 0; i < inputs; i++) {
+                    max = Math.max(max, Math.abs(rows[row + i]));
+                }
+                float inverse = max == 0f ? 0f : QUANT_MAX / max;
+                for (int i = 0; i < inputs; i++) {
+                    weights[row + i] = (byte) Math.round(rows[row + i] * inverse);
+                }
+                scales[o] = max / QUANT_MAX;
+            }
+            System.arraycopy(bias, 0, this.bias, 0, outputs);
+        }
+
+        long bytes() {
+            return weights.length + 4L * (scales.length + bias.length);
+        }
+    }
+
+    /**
+     * Unpadded convolution over a [C, H, W] input as a matrix product: every output position
+     * gathers its receptive field into one contiguous patch row (im2col).
+     */
+    private static final class Conv {
+        final Quantized layer;
+        final int channels;
+        final int height;
+        final int width;
+        final int kernel;
+        final int stride;
+        final int outHeight;
+        final int outWidth;
+        final byte[] patches;
+
+        Conv(int outputs, int channels, int height, int width, int kernel, int stride) {
+            this.layer = new Quantized(outputs, channels * kernel * kernel);
+            this.channels = channels;
+            this.height = height;
+            this.width = width;
+            this.kernel = kernel;
+            this.stride = stride;
+            this.outHeight = (height - kernel) / stride + 1;
+            this.outWidth = (width - kernel) / stride + 1;
+            this.patches = new byte[outHeight * outWidth * layer.inputs];
+        }
+
+        int outputSize() {
+            return layer.outputs * outHeight * outWidth;
+        }
+
+        /**
+         * @param output ReLU activations in [C, H, W] order, like DL4J flattens them for the dense layer
+         */
+        void forward(byte[] input, float inputScale, float[] output) {
+            int positions = outHeight * outWidth;
+            for (int y = 0; y < outHeight; y++) {
+                for (int x = 0; x < outWidth; x++) {
+                    int patch = (y * outWidth + x) * layer.inputs;
+                    for (int c = 0; c < channels; c++) {
+                        for (int ky = 0; ky < kernel; ky++) {
+                            int src = c * height * width + (y * stride + ky) * width + x * stride;
+                            System.arraycopy(input, src, patches, patch, kernel);
+                            patch += kernel;
+                        }
+                    }
+                }
+            }
+            for (int o = 0; o < layer.outputs; o++) {
+                float scale = inputScale * layer.scales[o];
+                int row = o * layer.inputs;
+                for (int p = 0; p < positions; p++) {
+                    int sum = dot(patches, p * layer.inputs, layer.weights, row, layer.inputs);
+                    output[o * positions + p] = Math.max(0f, sum * scale + layer.bias[o]);
+                }
+            }
+        }
+    }
+}
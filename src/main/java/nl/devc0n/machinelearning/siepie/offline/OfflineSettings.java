@@ -0,0 +1,41 @@
+package nl.devc0n.machinelearning.siepie.offline;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+
+/**
+ * Offline training on recorded episodes, see {@link OfflineTrainer}.
+ *
+ * @param enabled              train on the episode log instead of playing
+ * @param epochs               passes over the recorded transitions, one pass is
+ *                             {@code transitions / batchSize} updates
+ * @param batchSize            transitions per update
+ * @param targetUpdateInterval updates between target network syncs
+ * @param checkpointInterval   updates between checkpoints, 0 only saves at the end
+ * @param checkpointDirectory  where checkpoints are written
+ * @param prefetchThreads      threads sampling batches ahead of the training thread
+ * @param prefetchBatches      sampled batches waiting for the training thread
+ * @param model                checkpoint to continue from, when it exists
+ */
+public record OfflineSettings(@DefaultValue("false") boolean enabled,
+                              @DefaultValue("10") int epochs,
+                              @DefaultValue("64") int batchSize,
+                              @DefaultValue("1000") int targetUpdateInterval,
+                              @DefaultValue("10000") int checkpointInterval,
+                              @DefaultValue("checkpoints") Path checkpointDirectory,
+                              @DefaultValue("2") int prefetchThreads,
+                              @DefaultValue("8") int prefetchBatches,
+                              @DefaultValue("trained-start.zip") Path model) {
+
+    public OfflineSettings {
+        if (epochs < 1 || batchSize < 1 || targetUpdateInterval < 1 || prefetchThreads < 1 || prefetchBatches < 1) {
+            throw new IllegalArgumentException("Offline epochs, batch size, target update interval and prefetch must be positive");
+        }
+    }
+
+    public static OfflineSettings defaults() {
+        return new OfflineSettings(false, 10, 64, 1000, 10000, Path.of("checkpoints"), 2, 8,
+                Path.of("trained-start.zip"));
+    }
+}
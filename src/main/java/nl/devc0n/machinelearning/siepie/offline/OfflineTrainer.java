@@ -0,0 +1,159 @@
+package nl.devc0n.machinelearning.siepie.offline;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.memory.TransitionSource;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Trains a {@link DQNNetwork} on transitions that were already recorded, as fast as the CPU
+ * allows. No game is played, so there is nothing to wait for between updates.
+ * <p>
+ * Sampler threads build batches ahead into a bounded queue while the calling thread only
+ * trains, so building frame stacks overlaps with the forward and backward passes.
+ */
+@Slf4j
+public class OfflineTrainer {
+
+    private static final long STATS_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final long POLL_MILLIS = 500;
+
+    private final DQNNetwork network;
+    private final TransitionSource source;
+    private final OfflineSettings settings;
+    private volatile Throwable samplerFailure;
+
+    public OfflineTrainer(DQNNetwork network, TransitionSource source, OfflineSettings settings) {
+        this.network = network;
+        this.source = source;
+        this.settings = settings;
+    }
+
+    /**
+     * Run all epochs, checkpointing along the way and once more at the end.
+     */
+    public Result run() throws IOException, InterruptedException {
+        int batchSize = settings.batchSize();
+        long transitions = source.transitionCount();
+        if (transitions < batchSize) {
+            log.warn("Only {} transitions recorded, need at least {} to train offline", transitions, batchSize);
+            return new Result(0, 0, Duration.ZERO);
+        }
+        long updatesPerEpoch = Math.max(1, transitions / batchSize);
+        long totalUpdates = updatesPerEpoch * settings.epochs();
+        Files.createDirectories(settings.checkpointDirectory());
+        log.info("Offline training on {} transitions: {} epochs of {} updates", transitions, settings.epochs(), updatesPerEpoch);
+
+        BlockingQueue<TransitionBatch> prefetched = new ArrayBlockingQueue<>(settings.prefetchBatches());
+        List<Thread> samplers = startSamplers(prefetched);
+        long start = System.nanoTime();
+        long lastStats = start;
+        long lastUpdates = 0;
+        long update = 0;
+        try {
+            while (update < totalUpdates) {
+                TransitionBatch batch = prefetched.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    if (samplerFailure != null) {
+                        throw new IllegalStateException("Sampling batches failed", samplerFailure);
+                    }
+                    continue;
+                }
+                float[] tdErrors = network.train(batch);
+                source.updatePriorities(batch, tdErrors);
+                update++;
+
+                if (update % settings.targetUpdateInterval() == 0) {
+                    network.updateTargetNetwork();
+                }
+                if (settings.checkpointInterval() > 0 && update % settings.checkpointInterval() == 0) {
+                    checkpoint("offline_" + update + ".zip");
+                }
+                if (update % updatesPerEpoch == 0) {
+                    log.info("Offline epoch {}/{} done", update / updatesPerEpoch, settings.epochs());
+                }
+
+                long now = System.nanoTime();
+                if (now - lastStats >= STATS_INTERVAL_NANOS) {
+                    double updatesPerSecond = (update - lastUpdates) / ((now - lastStats) / 1e9);
+                    log.info("Offline: {} updates/s | {} samples/s | {}/{} updates | prefetched: {}",
+                            String.format("%.1f", updatesPerSecond), String.format("%.0f", updatesPerSecond * batchSize),
+                            update, totalUpdates, prefetched.size());
+                    lastStats = now;
+                    lastUpdates = update;
+                }
+            }
+        } finally {
+            for (Thread sampler : samplers) {
+                sampler.interrupt();
+            }
+            for (Thread sampler : samplers) {
+                sampler.join();
+            }
+        }
+        checkpoint("offline_final.zip");
+
+        var result = new Result(update, update * batchSize, Duration.ofNanos(System.nanoTime() - start));
+        log.info("Offline training done: {} updates in {} | {} updates/s | {} samples/s", result.updates(),
+                result.elapsed(), String.format("%.1f", result.updatesPerSecond()),
+                String.format("%.0f", result.samplesPerSecond()));
+        return result;
+    }
+
+    private List<Thread> startSamplers(BlockingQueue<TransitionBatch> prefetched) {
+        var random = new SplittableRandom();
+        List<Thread> samplers = new ArrayList<>();
+        for (int i = 0; i < settings.prefetchThreads(); i++) {
+            SplittableRandom samplerRandom = random.split();
+            Thread sampler = new Thread(() -> sample(prefetched, samplerRandom), "offline-sampler-" + i);
+            sampler.setDaemon(true);
+            sampler.start();
+            samplers.add(sampler);
+        }
+        return samplers;
+    }
+
+    private void sample(BlockingQueue<TransitionBatch> prefetched, SplittableRandom random) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                prefetched.put(source.sampleBatch(settings.batchSize(), random));
+            }
+        } catch (InterruptedException e) {
+            // Training is done
+        } catch (RuntimeException e) {
+            log.error("Offline sampler failed", e);
+            samplerFailure = e;
+        }
+    }
+
+    private void checkpoint(String name) throws IOException {
+        Path path = settings.checkpointDirectory().resolve(name);
+        network.save(path.toString());
+        log.info("Offline checkpoint saved to {}", path);
+    }
+
+    /**
+     * Throughput of a finished run.
+     */
+    public record Result(long updates, long samples, Duration elapsed) {
+
+        public double updatesPerSecond() {
+            return elapsed.isZero() ? 0 : updates / (elapsed.toNanos() / 1e9);
+        }
+
+        public double samplesPerSecond() {
+            return elapsed.isZero() ? 0 : samples / (elapsed.toNanos() / 1e9);
+        }
+    }
+}
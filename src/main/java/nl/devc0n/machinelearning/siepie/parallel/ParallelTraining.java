@@ -1,36 +1,92 @@
 package nl.devc0n.machinelearning.siepie.parallel;
 
+import lombok.extern.slf4j.Slf4j;
 import nl.devc0n.machinelearning.siepie.BrowserManager;
+import nl.devc0n.machinelearning.siepie.SiepieApplication;
+import nl.devc0n.machinelearning.siepie.SiepieProperties;
 import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.Learner;
+import nl.devc0n.machinelearning.siepie.browser.BrowserPool;
+import nl.devc0n.machinelearning.siepie.browser.PooledEnvironment;
+import nl.devc0n.machinelearning.siepie.checkpoint.CheckpointManager;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
 import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+import nl.devc0n.machinelearning.siepie.metrics.TrainingStatistics;
+import nl.devc0n.machinelearning.siepie.schedule.ActionRepeat;
+import nl.devc0n.machinelearning.siepie.schedule.StepScheduler;
+import nl.devc0n.machinelearning.siepie.schedule.StepSettings;
 import nl.devc0n.machinelearning.siepie.model.Action;
 import nl.devc0n.machinelearning.siepie.model.Episode;
 import nl.devc0n.machinelearning.siepie.model.FrameStack;
 import org.nd4j.linalg.api.ndarray.INDArray;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static nl.devc0n.machinelearning.siepie.SiepieApplication.saveFrameStackMontage;
 
+@Slf4j
 public class ParallelTraining {
 
     private final AgentSiepie agent;
     private final ReplayBuffer sharedBuffer;
     private final int numBrowsers;
+    private final Supplier<GameEnvironment> environmentFactory;
+    private final BrowserPool pool;
     private final ExecutorService executorService;
     private final AtomicBoolean running;
-
-    public ParallelTraining(int numBrowsers) {
-        this.numBrowsers = numBrowsers;
-        this.sharedBuffer = new ReplayBuffer(1000);
-        this.agent = new AgentSiepie(sharedBuffer);
+    private final StepMetrics metrics;
+    private final StepSettings stepSettings;
+    private final CheckpointManager checkpoints;
+    private final TrainingStatistics statistics;
+    private final int checkpointInterval;
+    private final AtomicInteger finishedEpisodes = new AtomicInteger();
+    private VectorizedRunner vectorizedRunner;
+
+    public ParallelTraining(SiepieProperties properties, StepMetrics metrics,
+                            Supplier<GameEnvironment> environmentFactory) throws IOException {
+        this.numBrowsers = properties.workers();
+        if (properties.pool().enabled()) {
+            this.pool = new BrowserPool(environmentFactory, properties.pool());
+            this.environmentFactory = pool::lease;
+            metrics.bind(pool);
+            pool.start();
+        } else {
+            this.pool = null;
+            this.environmentFactory = environmentFactory;
+        }
+        this.stepSettings = properties.step();
+        this.metrics = metrics;
+        this.sharedBuffer = new ReplayBuffer(properties.replay().capacity());
+        this.agent = new AgentSiepie(sharedBuffer, properties.asyncLearner(), properties.quantizedActor());
+        agent.enableDataParallel(properties.dataParallel());
+        if (properties.replay().persist()) {
+            agent.persistEpisodes(properties.replay().directory());
+        }
+        metrics.bind(agent, sharedBuffer);
+        this.statistics = new TrainingStatistics(properties.statistics(), agent::getTotalSteps);
+        agent.trackStatistics(statistics);
+        statistics.start();
+        this.checkpoints = new CheckpointManager(agent, properties.checkpoint());
+        this.checkpointInterval = properties.checkpoint().episodeInterval();
+        SiepieApplication.restoreCheckpoint(checkpoints, agent);
         this.executorService = Executors.newFixedThreadPool(numBrowsers);
         this.running = new AtomicBoolean(true);
     }
 
+    public ParallelTraining(int numBrowsers) throws IOException {
+        this(SiepieProperties.defaults().withWorkers(numBrowsers), StepMetrics.standalone(), BrowserManager::new);
+    }
+
     /**
      * Start parallel training with multiple browsers
      */
@@ -47,14 +103,37 @@ public class ParallelTraining {
         monitorProgress();
     }
 
+    /**
+     * Start training with all environments stepped in lockstep by one {@link VectorizedRunner},
+     * so the network sees one batched forward pass per tick from a single thread
+     */
+    public void startVectorized() {
+        System.out.println("Starting vectorized training with " + numBrowsers + " environments");
+
+        List<GameEnvironment> environments = new ArrayList<>();
+        for (int i = 0; i < numBrowsers; i++) {
+            environments.add(environmentFactory.get());
+        }
+        vectorizedRunner = new VectorizedRunner(agent, environments, stepSettings, metrics);
+        executorService.submit(() -> {
+            vectorizedRunner.run();
+            return null;
+        });
+
+        // Monitor progress in main thread
+        monitorProgress();
+    }
+
     /**
      * Browser worker - runs episodes and collects experience
      */
     private void runBrowserWorker(int browserIndex) {
         System.out.println("Browser worker " + browserIndex + " started");
 
-        BrowserManager browserManager = new BrowserManager();
-        browserManager.startBrowser();
+        GameEnvironment environment = environmentFactory.get();
+        environment.start();
+        var scheduler = new StepScheduler(stepSettings.decisionPeriod(), stepSettings.overrunPolicy(), metrics);
+        var actionRepeat = new ActionRepeat(stepSettings, metrics);
         // Use different ports/profiles to run multiple Chrome instances
         // WebDriver driver = createDriver(9515 + browserIndex);
 
@@ -63,49 +142,67 @@ public class ParallelTraining {
         while (running.get()) {
             try {
                 // Run one episode
-                Episode episode = new Episode();
                 agent.startEpisode();
 
-                var frameStack = new FrameStack(4, browserManager.takeScreenshot());
+                var frameStack = new FrameStack(4, GameEnvironment.FRAME_HEIGHT, GameEnvironment.FRAME_WIDTH, environment.captureFrame());
+                Episode episode = new Episode(frameStack.newestFrame());
                 INDArray state = frameStack.toINDArray();
                 boolean died = false;
+                scheduler.start();
 
                 while (!died && running.get()) {
                     // Select action
+                    long t = System.nanoTime();
                     Action action = agent.selectAction(state);
-                    browserManager.performAction(action);
+                    metrics.record(StepStage.INFERENCE, t);
+                    var observation = actionRepeat.perform(environment, action);
 
-                    frameStack.push(browserManager.takeScreenshot());
+                    t = System.nanoTime();
+                    frameStack.push(observation.frame());
                     INDArray nextFrameStack = frameStack.toINDArray();
+                    t = metrics.record(StepStage.FRAME_STACK, t);
 
-
-                    died = browserManager.detectDeathScreen();
+                    died = observation.died();
                     if (!died) {
                         // Record step (training happens automatically inside)
-                        agent.recordStep(episode, state, action, nextFrameStack);
+                        agent.recordStep(episode, action, frameStack.newestFrame());
+                        metrics.record(StepStage.TRAIN, t);
                     }
 
                     state = nextFrameStack;
+                    if (environment.isRealTime()) {
+                        scheduler.awaitNextStep();
+                    }
                 }
 
                 if (died) {
                     saveFrameStackMontage(state, "S:\\Development\\siepie\\screenshots\\montage_ep42_step100.png");
-                    int finalScore = browserManager.extractFinalScore();
+                    long deadTimeStart = System.nanoTime();
+                    int finalScore = environment.extractFinalScore();
                     agent.endEpisode(episode, finalScore, 0);
 
-                    browserManager.restartGame();
+                    environment.restartGame();
+                    metrics.recordDeadTime(deadTimeStart);
                     episodesCompleted++;
 
-                    // Save checkpoint periodically
-                    if (episodesCompleted % 50 == 0) {
-                        saveCheckpoint(browserIndex, episodesCompleted);
+                    // Checkpoint periodically over all workers, written in the background
+                    if (finishedEpisodes.incrementAndGet() % checkpointInterval == 0) {
+                        checkpoints.save();
                     }
                 }
 
             } catch (Exception e) {
                 System.err.println("Browser worker " + browserIndex + " error: " + e.getMessage());
                 e.printStackTrace();
-                // Continue running despite errors
+                // Continue running despite errors, on a fresh browser when the pool supervises them
+                if (environment instanceof PooledEnvironment pooled && running.get()) {
+                    try {
+                        pooled.recover(e.getClass().getSimpleName() + ": " + e.getMessage());
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
             }
         }
 
@@ -140,6 +237,14 @@ public class ParallelTraining {
                         stepsPerSecond
                 );
 
+                System.out.println("=== Statistics === " + statistics.summary());
+
+                Learner learner = agent.getLearner();
+                if (learner != null) {
+                    System.out.printf("=== Learner === Updates: %d | Queue depth: %d%n",
+                            learner.getUpdates(), learner.getQueueDepth());
+                }
+
                 lastSteps = currentSteps;
                 lastTime = currentTime;
 
@@ -153,8 +258,18 @@ public class ParallelTraining {
      * Stop all browser workers and save final model
      */
     public void stop() {
-        System.out.println("Stopping parallel training...");
+        log.info("Stopping parallel training...");
         running.set(false);
+        if (vectorizedRunner != null) {
+            vectorizedRunner.stop();
+        }
+        if (agent.getLearner() != null) {
+            try {
+                agent.getLearner().stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
 
         executorService.shutdown();
         try {
@@ -165,23 +280,12 @@ public class ParallelTraining {
             executorService.shutdownNow();
         }
 
-        // Save final model
-        try {
-            agent.save("models/final_model.zip");
-            System.out.println("Final model saved");
-        } catch (Exception e) {
-            System.err.println("Failed to save final model: " + e.getMessage());
-        }
-    }
-
-    private void saveCheckpoint(int browserIndex, int episodesCompleted) {
-        try {
-            String filename = String.format("models/checkpoint_browser%d_ep%d.zip",
-                    browserIndex, episodesCompleted);
-            agent.save(filename);
-            System.out.println("Checkpoint saved: " + filename);
-        } catch (Exception e) {
-            System.err.println("Failed to save checkpoint: " + e.getMessage());
+        // Save final checkpoint and wait for it to be written
+        checkpoints.saveFinal();
+        checkpoints.close();
+        statistics.close();
+        if (pool != null) {
+            pool.close();
         }
     }
 }
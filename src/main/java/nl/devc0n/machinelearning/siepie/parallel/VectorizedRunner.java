@@ -0,0 +1,246 @@
+package nl.devc0n.machinelearning.siepie.parallel;
+
+import lombok.extern.slf4j.Slf4j;
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.FrameStack;
+import nl.devc0n.machinelearning.siepie.schedule.ActionRepeat;
+import nl.devc0n.machinelearning.siepie.schedule.StepScheduler;
+import nl.devc0n.machinelearning.siepie.schedule.StepSettings;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Steps several environments in lockstep with one batched forward pass per tick.
+ * <p>
+ * Every tick the frame stacks of all ready environments are stacked into one [N, 4, 84, 84]
+ * tensor, the agent picks all actions in one call and the environments perform them
+ * concurrently. Environments that are between episodes (score extraction, restart) sit out
+ * until they are ready again. The agent, and so the network, is only touched from the
+ * runner thread.
+ */
+@Slf4j
+public class VectorizedRunner {
+
+    private static final int FRAME_STACK = 4;
+    private static final int FRAME_SIZE = 84;
+    private static final int STACK_LENGTH = FRAME_STACK * FRAME_SIZE * FRAME_SIZE;
+    // Longer than a score extraction followed by a restart in the browser
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(90);
+
+    private final AgentSiepie agent;
+    private final StepMetrics metrics;
+    private final StepScheduler scheduler;
+    private final ActionRepeat actionRepeat;
+    private final List<Slot> slots = new ArrayList<>();
+    private final ExecutorService stepExecutor;
+    private final AtomicBoolean running = new AtomicBoolean(true);
+
+    public VectorizedRunner(AgentSiepie agent, List<GameEnvironment> environments, StepSettings stepSettings,
+                            StepMetrics metrics) {
+        this.agent = agent;
+        this.metrics = metrics;
+        this.scheduler = new StepScheduler(stepSettings.decisionPeriod(), stepSettings.overrunPolicy(), metrics);
+        this.actionRepeat = new ActionRepeat(stepSettings, metrics);
+        for (GameEnvironment environment : environments) {
+            slots.add(new Slot(environment));
+        }
+        this.stepExecutor = Executors.newFixedThreadPool(environments.size());
+    }
+
+    public void run() throws InterruptedException {
+        for (Slot slot : slots) {
+            slot.pending = CompletableFuture.supplyAsync(() -> {
+                slot.environment.start();
+                return -1;
+            }, stepExecutor);
+        }
+
+        scheduler.start();
+        while (running.get()) {
+            List<Slot> ready = collectReady();
+            if (ready.isEmpty()) {
+                waitForAny();
+                continue;
+            }
+
+            // One forward pass for all ready environments
+            float[] states = new float[ready.size() * STACK_LENGTH];
+            for (int i = 0; i < ready.size(); i++) {
+                ready.get(i).frameStack.copyInto(states, i * STACK_LENGTH);
+            }
+            Action[] actions = agent.selectActions(
+                    Nd4j.create(states, new int[]{ready.size(), FRAME_STACK, FRAME_SIZE, FRAME_SIZE}));
+
+            List<CompletableFuture<ActionRepeat.Observation>> results = new ArrayList<>(ready.size());
+            for (int i = 0; i < ready.size(); i++) {
+                results.add(step(ready.get(i), actions[i]));
+            }
+
+            boolean realTime = false;
+            for (int i = 0; i < ready.size(); i++) {
+                Slot slot = ready.get(i);
+                realTime |= slot.environment.isRealTime();
+                try {
+                    ActionRepeat.Observation result = results.get(i).join();
+                    slot.frameStack.push(result.frame());
+                    if (result.died()) {
+                        finishEpisode(slot);
+                    } else {
+                        agent.recordStep(slot.episode, actions[i], slot.frameStack.newestFrame());
+                    }
+                } catch (Exception e) {
+                    // The game did not end, so the episode has no real final frames, drop it
+                    log.error("Environment step failed, dropping the episode and restarting", e);
+                    slot.episode = null;
+                    slot.pending = restart(slot);
+                }
+            }
+
+            if (realTime) {
+                scheduler.awaitNextStep();
+            }
+        }
+
+        // Score extraction and restarts may still be using the environments
+        stepExecutor.shutdown();
+        try {
+            if (!stepExecutor.awaitTermination(SHUTDOWN_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                log.warn("Environment tasks still running after {}s, interrupting them", SHUTDOWN_TIMEOUT.toSeconds());
+            }
+        } finally {
+            stepExecutor.shutdownNow();
+            for (Slot slot : slots) {
+                slot.environment.close();
+            }
+        }
+    }
+
+    public void stop() {
+        running.set(false);
+    }
+
+    /**
+     * Environments whose restart finished get their episode wrapped up and a new one started.
+     */
+    private List<Slot> collectReady() {
+        List<Slot> ready = new ArrayList<>(slots.size());
+        for (Slot slot : slots) {
+            if (slot.pending != null) {
+                if (!slot.pending.isDone()) continue;
+                int finalScore;
+                try {
+                    finalScore = slot.pending.join();
+                } catch (Exception e) {
+                    log.error("Environment restart failed, retrying", e);
+                    slot.pending = restart(slot);
+                    continue;
+                }
+                slot.pending = null;
+                if (slot.episode != null) {
+                    agent.endEpisode(slot.episode, finalScore, agent.getEpisodeCount());
+                }
+                try {
+                    startEpisode(slot);
+                } catch (Exception e) {
+                    log.error("Could not capture the first frame, retrying", e);
+                    slot.episode = null;
+                    slot.pending = restart(slot);
+                    continue;
+                }
+            }
+            ready.add(slot);
+        }
+        return ready;
+    }
+
+    private void startEpisode(Slot slot) throws Exception {
+        agent.startEpisode();
+        slot.frameStack = new FrameStack(FRAME_STACK, FRAME_SIZE, FRAME_SIZE, slot.environment.captureFrame());
+        slot.episode = new Episode(slot.frameStack.newestFrame());
+    }
+
+    private void finishEpisode(Slot slot) {
+        slot.pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                long deadTimeStart = System.nanoTime();
+                int finalScore = slot.environment.extractFinalScore();
+                slot.environment.restartGame();
+                metrics.recordDeadTime(deadTimeStart);
+                return finalScore;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }, stepExecutor);
+    }
+
+    private CompletableFuture<Integer> restart(Slot slot) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                slot.environment.restartGame();
+                return 0;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }, stepExecutor);
+    }
+
+    private CompletableFuture<ActionRepeat.Observation> step(Slot slot, Action action) {
+        if (!slot.environment.isRealTime()) {
+            // Simulated environments are cheaper to step inline than to hand off
+            try {
+                return CompletableFuture.completedFuture(actionRepeat.perform(slot.environment, action));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return actionRepeat.perform(slot.environment, action);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, stepExecutor);
+    }
+
+    private void waitForAny() {
+        CompletableFuture<?>[] pending = slots.stream()
+                .filter(slot -> slot.pending != null)
+                .map(slot -> slot.pending)
+                .toArray(CompletableFuture[]::new);
+        if (pending.length > 0) {
+            try {
+                CompletableFuture.anyOf(pending).join();
+            } catch (Exception ignored) {
+                // Handled by collectReady
+            }
+        }
+    }
+
+    private static final class Slot {
+        final GameEnvironment environment;
+        FrameStack frameStack;
+        Episode episode;
+        /**
+         * Start or restart in progress, completes with the final score of the finished episode.
+         */
+        CompletableFuture<Integer> pending;
+
+        Slot(GameEnvironment environment) {
+            this.environment = environment;
+        }
+    }
+}
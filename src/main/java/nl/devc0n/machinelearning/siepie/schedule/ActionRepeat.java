@@ -0,0 +1,87 @@
+package nl.devc0n.machinelearning.siepie.schedule;
+
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+import nl.devc0n.machinelearning.siepie.model.Action;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Plays one agent decision over {@code actionRepeat} frames.
+ * <p>
+ * The key is only sent on the first frame, holding a lane change or jump for several frames
+ * would move further than the agent chose. Real-time games are given one period per frame,
+ * on deadlines counted from the start of the decision. Stops early on death.
+ */
+public class ActionRepeat {
+
+    private final int repeat;
+    private final boolean maxPool;
+    private final long periodNanos;
+    private final StepMetrics metrics;
+
+    public ActionRepeat(StepSettings settings, StepMetrics metrics) {
+        this.repeat = settings.actionRepeat();
+        this.maxPool = settings.maxPool();
+        this.periodNanos = settings.period().toNanos();
+        this.metrics = metrics;
+    }
+
+    public Observation perform(GameEnvironment environment, Action action) throws IOException {
+        long start = System.nanoTime();
+        byte[] previous = null;
+        byte[] frame = null;
+
+        for (int i = 0; i < repeat; i++) {
+            if (i > 0 && environment.isRealTime()) {
+                sleepUntil(start + i * periodNanos);
+            }
+            long t = System.nanoTime();
+            environment.performAction(i == 0 ? action : Action.NOTHING);
+            t = metrics.record(StepStage.ACTION, t);
+
+            previous = frame;
+            frame = environment.captureFrame();
+            t = metrics.record(StepStage.CAPTURE, t);
+
+            boolean died = environment.detectDeathScreen();
+            metrics.record(StepStage.DEATH_DETECTION, t);
+            if (died) {
+                return new Observation(frame, true);
+            }
+        }
+
+        // Objects that blink or move fast may only show on one of the last two frames
+        if (maxPool && previous != null) {
+            frame = maxPool(previous, frame);
+        }
+        return new Observation(frame, false);
+    }
+
+    /**
+     * Pixel-wise maximum of two grayscale frames of the same size, as a new frame.
+     */
+    static byte[] maxPool(byte[] first, byte[] second) {
+        byte[] pooled = new byte[second.length];
+        for (int i = 0; i < pooled.length; i++) {
+            pooled[i] = (byte) Math.max(first[i] & 0xFF, second[i] & 0xFF);
+        }
+        return pooled;
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    /**
+     * @param frame the frame the agent observes after the decision
+     * @param died  the game ended during the decision
+     */
+    public record Observation(byte[] frame, boolean died) {
+    }
+}
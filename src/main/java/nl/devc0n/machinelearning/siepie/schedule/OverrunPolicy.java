@@ -0,0 +1,16 @@
+package nl.devc0n.machinelearning.siepie.schedule;
+
+/**
+ * What {@link StepScheduler} does when a step ran past its deadline.
+ */
+public enum OverrunPolicy {
+    /**
+     * Keep the deadline grid and run the following steps back to back until the loop is on
+     * time again, so the average control frequency holds.
+     */
+    CATCH_UP,
+    /**
+     * Drop the missed slots and continue at the next deadline on the grid.
+     */
+    SKIP
+}
@@ -0,0 +1,112 @@
+package nl.devc0n.machinelearning.siepie.schedule;
+
+import lombok.Getter;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.metrics.StepStage;
+
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces a step loop on a grid of absolute deadlines.
+ * <p>
+ * Deadlines are {@code start + n * period}, not "period after the last wake-up", so sleep
+ * overshoot does not drift the loop. A step that runs past its deadline is counted as an
+ * overrun and handled by the {@link OverrunPolicy}. Not thread-safe, every loop has its own.
+ */
+public class StepScheduler {
+
+    /**
+     * With {@link OverrunPolicy#CATCH_UP}, at most this many steps are run back to back.
+     */
+    private static final int MAX_CATCH_UP_STEPS = 5;
+
+    private final long periodNanos;
+    private final OverrunPolicy policy;
+    private final StepMetrics metrics;
+    private final LongSupplier clock;
+    private final LongConsumer sleeper;
+    private long nextDeadline;
+
+    @Getter
+    private long steps;
+    @Getter
+    private long overruns;
+    @Getter
+    private long skippedSlots;
+    @Getter
+    private long maxJitterNanos;
+
+    public StepScheduler(Duration period, OverrunPolicy policy, StepMetrics metrics) {
+        this(period.toNanos(), policy, metrics, System::nanoTime, LockSupport::parkNanos);
+    }
+
+    StepScheduler(long periodNanos, OverrunPolicy policy, StepMetrics metrics,
+                  LongSupplier clock, LongConsumer sleeper) {
+        this.periodNanos = periodNanos;
+        this.policy = policy;
+        this.metrics = metrics;
+        this.clock = clock;
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Start a new grid, the first deadline is one period from now.
+     */
+    public void start() {
+        nextDeadline = clock.getAsLong() + periodNanos;
+    }
+
+    /**
+     * Wait for the deadline of the current step and move to the next one.
+     *
+     * @return the time that was left until the deadline, negative for an overrun
+     */
+    public long awaitNextStep() {
+        steps++;
+        long now = clock.getAsLong();
+        long slack = nextDeadline - now;
+
+        if (slack > 0) {
+            metrics.recordNanos(StepStage.SLACK, slack);
+            sleepUntil(nextDeadline);
+            long jitter = clock.getAsLong() - nextDeadline;
+            maxJitterNanos = Math.max(maxJitterNanos, jitter);
+            metrics.recordJitter(jitter);
+            nextDeadline += periodNanos;
+            return slack;
+        }
+
+        overruns++;
+        metrics.recordNanos(StepStage.SLACK, 0);
+        metrics.recordOverrun();
+        switch (policy) {
+            case CATCH_UP -> {
+                nextDeadline += periodNanos;
+                long backlogLimit = now - MAX_CATCH_UP_STEPS * periodNanos;
+                if (nextDeadline < backlogLimit) {
+                    // Too far behind to catch up, give up on the oldest slots
+                    long dropped = (backlogLimit - nextDeadline + periodNanos - 1) / periodNanos;
+                    nextDeadline += dropped * periodNanos;
+                    skippedSlots += dropped;
+                }
+            }
+            case SKIP -> {
+                // First deadline on the grid after now
+                long missed = (now - nextDeadline) / periodNanos + 1;
+                nextDeadline += missed * periodNanos;
+                skippedSlots += missed - 1;
+            }
+        }
+        return slack;
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - clock.getAsLong()) > 0) {
+            sleeper.accept(remaining);
+        }
+    }
+}
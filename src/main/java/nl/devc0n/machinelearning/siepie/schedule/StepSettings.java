@@ -0,0 +1,39 @@
+package nl.devc0n.machinelearning.siepie.schedule;
+
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Pacing of the step loop, shared by single and parallel training.
+ *
+ * @param period        time between two frames the agent observes
+ * @param actionRepeat  frames per decision, the agent picks an action every {@code actionRepeat} periods
+ * @param maxPool       observe the pixel-wise max of the last two frames of a repeated action
+ * @param overrunPolicy what to do when a decision step overruns its deadline
+ */
+public record StepSettings(@DefaultValue("200ms") Duration period,
+                           @DefaultValue("1") int actionRepeat,
+                           @DefaultValue("true") boolean maxPool,
+                           @DefaultValue("SKIP") OverrunPolicy overrunPolicy) {
+
+    public StepSettings {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("Step period must be positive: " + period);
+        }
+        if (actionRepeat < 1) {
+            throw new IllegalArgumentException("Action repeat must be at least 1: " + actionRepeat);
+        }
+    }
+
+    public static StepSettings defaults() {
+        return new StepSettings(Duration.ofMillis(200), 1, true, OverrunPolicy.SKIP);
+    }
+
+    /**
+     * Time between two agent decisions.
+     */
+    public Duration decisionPeriod() {
+        return period.multipliedBy(actionRepeat);
+    }
+}
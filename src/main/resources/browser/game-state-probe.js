@@ -0,0 +1,85 @@
+// Keeps the game state the agent needs in one small object, so a step reads it with a single
+// Runtime.evaluate instead of querying the DOM over WebDriver.
+//   dead:  the game-over score (.score-points-current) is on the page
+//   score: the score it currently shows
+//   ready: the restart button (.icon-only) is on the page
+// It also lets a single awaited Runtime.evaluate wait for a state transition.
+(() => {
+    if (window.__siepieProbe) return;
+
+    const state = { dead: false, score: 0, ready: false, changes: 0 };
+    const listeners = new Set();
+
+    function update() {
+        const score = document.querySelector('.score-points-current');
+        const dead = score !== null;
+        const value = dead ? parseInt(score.textContent, 10) || 0 : 0;
+        const ready = document.querySelector('.icon-only') !== null;
+        if (dead !== state.dead || value !== state.score || ready !== state.ready) {
+            state.dead = dead;
+            state.score = value;
+            state.ready = ready;
+            state.changes++;
+            listeners.forEach(listener => listener());
+        }
+    }
+
+    // Resolves with true once check() holds, or false after timeoutMs
+    function waitFor(check, timeoutMs) {
+        return new Promise(resolve => {
+            const done = result => {
+                listeners.delete(listener);
+                clearTimeout(timer);
+                resolve(result);
+            };
+            const listener = () => { if (check()) done(true); };
+            const timer = setTimeout(() => done(false), timeoutMs);
+            listeners.add(listener);
+            listener();
+        });
+    }
+
+    // Game over and the score stopped counting up: the restart button showed up, or the
+    // score did not change for quietMs
+    function settled(quietMs, timeoutMs) {
+        return new Promise(resolve => {
+            let quiet;
+            const done = result => {
+                listeners.delete(listener);
+                clearTimeout(quiet);
+                clearTimeout(timer);
+                resolve([result, state.score]);
+            };
+            const listener = () => {
+                clearTimeout(quiet);
+                if (!state.dead) return;
+                if (state.ready) return done(true);
+                quiet = setTimeout(() => done(true), quietMs);
+            };
+            const timer = setTimeout(() => done(false), timeoutMs);
+            listeners.add(listener);
+            listener();
+        });
+    }
+
+    // Game over screen gone and the first gameplay frame painted
+    async function started(timeoutMs) {
+        if (!await waitFor(() => !state.dead && !state.ready, timeoutMs)) return false;
+        await new Promise(resolve => requestAnimationFrame(() => requestAnimationFrame(resolve)));
+        return true;
+    }
+
+    window.__siepieProbe = {
+        read: () => [state.dead, state.score, state.ready, state.changes],
+        settled,
+        started
+    };
+
+    new MutationObserver(update).observe(document.documentElement, {
+        subtree: true, childList: true, characterData: true, attributes: true, attributeFilter: ['class']
+    });
+    if (document.readyState === 'loading') {
+        document.addEventListener('DOMContentLoaded', update);
+    }
+    update();
+})();
@@ -0,0 +1,178 @@
+package nl.devc0n.machinelearning.siepie;
+
+import nl.devc0n.machinelearning.siepie.browser.BrowserContextSession;
+import nl.devc0n.machinelearning.siepie.browser.BrowserMode;
+import nl.devc0n.machinelearning.siepie.browser.BrowserPool;
+import nl.devc0n.machinelearning.siepie.browser.BrowserPoolSettings;
+import nl.devc0n.machinelearning.siepie.browser.BrowserSettings;
+import nl.devc0n.machinelearning.siepie.browser.BrowserTransport;
+import nl.devc0n.machinelearning.siepie.browser.CaptureMode;
+import nl.devc0n.machinelearning.siepie.browser.CdpChannel;
+import nl.devc0n.machinelearning.siepie.browser.GameStateProbe;
+import nl.devc0n.machinelearning.siepie.browser.SharedChrome;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.openqa.selenium.By;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the browser code against a local copy of the game page. Needs Chrome, enable with
+ * {@code ./gradlew test -Dsiepie.chrome-tests=true}.
+ */
+@EnabledIfSystemProperty(named = "siepie.chrome-tests", matches = "true")
+class BrowserFixtureTests {
+
+	private static final Logger log = LoggerFactory.getLogger(BrowserFixtureTests.class);
+
+	static final String FIXTURE_URL = Path.of("src/test/resources/fixtures/lane-game.html").toUri().toString();
+
+	@Test
+	void screencastDeliversPreprocessedFrames() throws Exception {
+		var browser = new BrowserManager(BrowserSettings.defaults()
+				.withUrl(FIXTURE_URL)
+				.withCaptureMode(CaptureMode.SCREENCAST));
+		try {
+			browser.start();
+			BufferedImage first = browser.takeScreenshot();
+			BufferedImage second = browser.takeScreenshot();
+
+			assertEquals(84, first.getWidth());
+			assertEquals(84, first.getHeight());
+			assertEquals(BufferedImage.TYPE_BYTE_GRAY, second.getType());
+		} finally {
+			browser.close();
+		}
+	}
+
+	@Test
+	void probeFollowsGameOverAndRestart() throws Exception {
+		var driver = new ChromeDriver(new ChromeOptions().addArguments("--headless"));
+		try {
+			driver.executeCdpCommand("Page.enable", Map.of());
+			var probe = new GameStateProbe(driver::executeCdpCommand);
+			probe.install();
+			driver.get(FIXTURE_URL);
+
+			assertFalse(probe.read().dead());
+
+			driver.executeScript("Object.assign(window.fixture.state, { running: true, score: 12 }); window.fixture.die();");
+			assertTrue(probe.read().dead());
+
+			assertEquals(12, probe.awaitSettledScore(Duration.ofMillis(300), Duration.ofSeconds(5)).orElseThrow());
+			assertTrue(probe.read().restartReady());
+
+			driver.findElement(By.className("icon-only")).click();
+			assertTrue(probe.awaitGameStarted(Duration.ofSeconds(5)));
+			assertFalse(probe.read().dead());
+		} finally {
+			driver.quit();
+		}
+	}
+
+	@Test
+	void sharedChromeIsolatesBrowserContexts() throws Exception {
+		var settings = BrowserSettings.defaults().withUrl(FIXTURE_URL).withMode(BrowserMode.SHARED);
+		List<BrowserContextSession> sessions = new ArrayList<>();
+		try (var chrome = new SharedChrome(settings)) {
+			for (int i = 0; i < 3; i++) {
+				var session = new BrowserContextSession(chrome, settings, StepMetrics.standalone());
+				sessions.add(session);
+				long start = System.nanoTime();
+				session.start();
+				log.info("Context {} started in {} ms", i, (System.nanoTime() - start) / 1_000_000);
+			}
+			chrome.memoryBytes().ifPresent(bytes -> {
+				assertTrue(bytes > 0);
+				log.info("Shared Chrome with {} contexts: {} MB", sessions.size(), bytes >> 20);
+			});
+
+			CdpChannel first = sessions.get(0).cdp();
+			CdpChannel second = sessions.get(1).cdp();
+			evaluate(first, "localStorage.setItem('siepie', 'first')");
+			assertEquals("first", evaluate(first, "localStorage.getItem('siepie')"));
+			assertNull(evaluate(second, "localStorage.getItem('siepie')"));
+
+			sessions.get(0).performAction(Action.RIGHT);
+			assertEquals(2, ((Number) evaluate(first, "window.fixture.state.lane")).intValue());
+			assertEquals(1, ((Number) evaluate(second, "window.fixture.state.lane")).intValue());
+
+			assertEquals(84 * 84, sessions.get(2).captureFrame().length);
+		} finally {
+			sessions.forEach(BrowserContextSession::close);
+		}
+	}
+
+	@Test
+	void poolReplacesACrashedBrowser() throws Exception {
+		var settings = BrowserSettings.defaults().withUrl(FIXTURE_URL).withMode(BrowserMode.SHARED);
+		try (var chrome = new SharedChrome(settings);
+			 var pool = new BrowserPool(() -> new BrowserContextSession(chrome, settings, StepMetrics.standalone()),
+					 BrowserPoolSettings.defaults())) {
+			pool.start();
+			var environment = pool.lease();
+			environment.start();
+			var crashed = (BrowserContextSession) environment.current();
+
+			// Kills the renderer process of the page
+			crashed.cdp().execute("Page.crash", Map.of());
+			assertThrows(Exception.class, environment::takeScreenshot);
+			long start = System.nanoTime();
+			environment.recover("renderer crashed");
+			log.info("Swapped in a spare in {} ms", (System.nanoTime() - start) / 1_000_000);
+
+			assertNotSame(crashed, environment.current());
+			assertEquals(84, environment.takeScreenshot().getWidth());
+			assertEquals(1, pool.getRecycles());
+		}
+	}
+
+	@Test
+	void everyTransportDeliversKeysInOrderAndCaptures() throws Exception {
+		for (var transport : BrowserTransport.values()) {
+			var metrics = StepMetrics.standalone();
+			var browser = new BrowserManager(BrowserSettings.defaults()
+					.withUrl(FIXTURE_URL)
+					.withTransport(transport), metrics);
+			try {
+				browser.start();
+				List<String> pressed = new ArrayList<>();
+				for (int i = 0; i < 50; i++) {
+					Action action = i % 3 == 0 ? Action.LEFT : Action.RIGHT;
+					browser.performAction(action);
+					pressed.add(action == Action.LEFT ? "ArrowLeft" : "ArrowRight");
+					assertEquals(84 * 84, browser.captureFrame().length);
+				}
+
+				// Runs after the pipelined key events, Chrome handles a session's commands in order
+				assertEquals(pressed, evaluate(browser.cdp(), "window.fixture.keys"), transport + " key order");
+				var commands = (Map<?, ?>) metrics.summary().get("commands");
+				String keyCommand = transport == BrowserTransport.DEVTOOLS
+						? "devtools Input.dispatchKeyEvent"
+						: "selenium Actions.sendKeys";
+				assertTrue(commands.containsKey(keyCommand), transport + " commands: " + commands.keySet());
+			} finally {
+				browser.close();
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Object evaluate(CdpChannel cdp, String expression) {
+		var response = cdp.execute("Runtime.evaluate", Map.of("expression", expression, "returnByValue", true));
+		return ((Map<String, Object>) response.get("result")).get("value");
+	}
+}
@@ -0,0 +1,59 @@
+package nl.devc0n.machinelearning.siepie.agent;
+
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import nl.devc0n.machinelearning.siepie.network.NetworkSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.awaitTrue;
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.episode;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LearnerTests {
+
+	private static final int STEPS = 20;
+	private static final int BATCH_SIZE = 8;
+	private static final int TARGET_UPDATE_INTERVAL = 5;
+	private static final int PUBLISH_INTERVAL = 2;
+	// Half an update per ingested step, so 10 updates per episode
+	private static final double MAX_UPDATES_PER_STEP = 0.5;
+	private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+	@Test
+	void ingestsEpisodesAndTrainsUpToTheCap() throws Exception {
+		var network = new DQNNetwork();
+		var buffer = new ReplayBuffer(10_000);
+		var learner = new Learner(network, buffer, BATCH_SIZE, TARGET_UPDATE_INTERVAL, PUBLISH_INTERVAL,
+				MAX_UPDATES_PER_STEP);
+		for (int i = 0; i < 3; i++) {
+			learner.submit(episode(STEPS, i * STEPS));
+		}
+		assertEquals(3, learner.getQueueDepth());
+
+		learner.start();
+		try {
+			awaitTrue(() -> learner.getUpdates() == 30, TIMEOUT);
+			assertEquals(0, learner.getQueueDepth());
+			assertEquals(3, buffer.getEpisodeCount());
+			// Capped until the actors deliver more steps
+			Thread.sleep(500);
+			assertEquals(30, learner.getUpdates());
+
+			learner.submit(episode(STEPS, 3 * STEPS));
+			awaitTrue(() -> learner.getUpdates() == 40, TIMEOUT);
+			assertEquals(0, learner.getQueueDepth());
+			assertEquals(4, buffer.getEpisodeCount());
+		} finally {
+			learner.stop();
+		}
+
+		assertEquals(40, learner.getUpdates());
+		assertEquals(40 / PUBLISH_INTERVAL, network.getPublishedVersion());
+		// The last update was a target sync
+		NetworkSnapshot snapshot = network.newSnapshot();
+		network.snapshot(snapshot);
+		assertEquals(snapshot.params(), snapshot.targetParams());
+	}
+}
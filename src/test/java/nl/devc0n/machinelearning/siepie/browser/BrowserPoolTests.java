@@ -0,0 +1,113 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BrowserPoolTests {
+
+	private final BrowserPoolSettings settings =
+			new BrowserPoolSettings(true, 1, Duration.ofSeconds(1), Duration.ofMillis(200), 50, 0.05);
+
+	@Test
+	void replacesACrashedBrowserWithASpare() throws Exception {
+		try (var pool = new BrowserPool(FakeBrowser::new, settings)) {
+			pool.start();
+			var environment = pool.lease();
+			environment.start();
+			var crashed = (FakeBrowser) environment.current();
+
+			crashed.crashed = true;
+			assertThrows(IOException.class, environment::takeScreenshot);
+			environment.recover("crashed");
+
+			assertNotSame(crashed, environment.current());
+			assertNotNull(environment.takeScreenshot());
+			assertEquals(1, pool.getRecycles());
+			assertTrue(crashed.closed.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	@Test
+	void killsAHungBrowserAndSwapsItAtTheEpisodeBoundary() throws Exception {
+		try (var pool = new BrowserPool(FakeBrowser::new, settings)) {
+			pool.start();
+			var environment = pool.lease();
+			environment.start();
+			var hung = (FakeBrowser) environment.current();
+
+			hung.hangs = true;
+			// Blocks until the supervisor kills the browser
+			assertThrows(IOException.class, environment::takeScreenshot);
+			environment.restartGame();
+
+			assertNotSame(hung, environment.current());
+			assertEquals(0, hung.restarts);
+			assertEquals(1, pool.getRecycles());
+			assertTrue(pool.getDowntimeNanos() > 0);
+		}
+	}
+
+	private static final class FakeBrowser implements GameEnvironment {
+		final CountDownLatch closed = new CountDownLatch(1);
+		volatile boolean crashed;
+		volatile boolean hangs;
+		int restarts;
+
+		@Override
+		public void start() {
+		}
+
+		@Override
+		public BufferedImage takeScreenshot() throws IOException {
+			if (hangs) {
+				try {
+					closed.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (crashed || closed.getCount() == 0) {
+				throw new IOException("Browser is gone");
+			}
+			return new BufferedImage(84, 84, BufferedImage.TYPE_BYTE_GRAY);
+		}
+
+		@Override
+		public void performAction(Action action) {
+		}
+
+		@Override
+		public boolean detectDeathScreen() {
+			return false;
+		}
+
+		@Override
+		public int extractFinalScore() {
+			return 0;
+		}
+
+		@Override
+		public void restartGame() {
+			restarts++;
+		}
+
+		@Override
+		public boolean isRealTime() {
+			return true;
+		}
+
+		@Override
+		public void close() {
+			closed.countDown();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameDecoderTests {
+
+	@Test
+	void decodesFrameSizedPayloadsToGrayscale() throws Exception {
+		var image = new BufferedImage(84, 84, BufferedImage.TYPE_BYTE_GRAY);
+		byte[] expected = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		for (int y = 0; y < 84; y++) {
+			for (int x = 0; x < 84; x++) {
+				expected[y * 84 + x] = (byte) (x * 3);
+			}
+		}
+
+		try (var decoder = new FrameDecoder()) {
+			byte[] first = decoder.decode(payload(image));
+			byte[] second = decoder.decode(payload(image));
+
+			assertEquals(84 * 84, first.length);
+			assertNotSame(first, second);
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i] & 0xFF, first[i] & 0xFF, 12, "pixel " + i);
+			}
+		}
+	}
+
+	@Test
+	void scalesLargerPayloadsDown() throws Exception {
+		var image = new BufferedImage(350, 350, BufferedImage.TYPE_INT_RGB);
+		var g = image.createGraphics();
+		g.setColor(new Color(128, 128, 128));
+		g.fillRect(0, 0, 350, 350);
+		g.dispose();
+
+		try (var decoder = new FrameDecoder()) {
+			byte[] frame = decoder.decode(payload(image));
+
+			assertEquals(84 * 84, frame.length);
+			assertEquals(128, frame[42 * 84 + 42] & 0xFF, 3);
+		}
+	}
+
+	@Test
+	void rejectsPayloadsThatAreNoImage() {
+		try (var decoder = new FrameDecoder()) {
+			assertThrows(IOException.class, () -> decoder.decode(Base64.getEncoder().encodeToString(new byte[64])));
+		}
+	}
+
+	private static String payload(BufferedImage image) throws IOException {
+		var out = new ByteArrayOutputStream();
+		ImageIO.write(image, "jpg", out);
+		return Base64.getEncoder().encodeToString(out.toByteArray());
+	}
+}
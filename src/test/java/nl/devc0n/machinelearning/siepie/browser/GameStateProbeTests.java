@@ -0,0 +1,46 @@
+package nl.devc0n.machinelearning.siepie.browser;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameStateProbeTests {
+
+	@Test
+	void readsStateWithOneEvaluate() {
+		List<String> methods = new ArrayList<>();
+		var probe = new GameStateProbe((method, params) -> {
+			methods.add(method);
+			return Map.of("result", Map.of("type", "object", "value", List.of(true, 42L, false, 3L)));
+		});
+
+		var state = probe.read();
+
+		assertEquals(List.of("Runtime.evaluate"), methods);
+		assertTrue(state.dead());
+		assertEquals(42, state.score());
+		assertFalse(state.restartReady());
+		assertEquals(3, state.changes());
+	}
+
+	@Test
+	void reinstallsWhenThePageLostTheProbe() {
+		List<Object> results = new ArrayList<>(List.of(
+				Map.of("type", "object"),
+				Map.of("type", "undefined"),
+				Map.of("type", "object", "value", List.of(false, 0L, false, 1L))));
+		List<String> expressions = new ArrayList<>();
+		var probe = new GameStateProbe((method, params) -> {
+			expressions.add((String) params.get("expression"));
+			return Map.of("result", results.removeFirst());
+		});
+
+		assertFalse(probe.read().dead());
+		assertEquals(3, expressions.size());
+		assertTrue(expressions.get(1).contains("MutationObserver"));
+	}
+}
@@ -0,0 +1,90 @@
+package nl.devc0n.machinelearning.siepie.checkpoint;
+
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.agent.TrainingState;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.network.NetworkSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.episode;
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.frame;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointManagerTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void restoresTheFullTrainingState() throws Exception {
+		AgentSiepie agent = trainedAgent();
+		Path path;
+		try (var checkpoints = new CheckpointManager(agent, new CheckpointSettings(directory, 5, 10))) {
+			path = checkpoints.saveAndWait(TIMEOUT).orElseThrow();
+		}
+
+		var restored = new AgentSiepie(new ReplayBuffer(1_000));
+		CheckpointManager.restore(path, restored);
+
+		NetworkSnapshot expected = agent.newSnapshot();
+		TrainingState expectedState = agent.snapshot(expected);
+		NetworkSnapshot actual = restored.newSnapshot();
+		TrainingState actualState = restored.snapshot(actual);
+		assertEquals(expectedState, actualState);
+		assertEquals(expected.params(), actual.params());
+		assertNotNull(expected.updaterState(), "a trained network has Adam state");
+		assertEquals(expected.updaterState(), actual.updaterState());
+		assertEquals(expected.targetParams(), actual.targetParams());
+		// Otherwise restoring the online network into the target would pass as well
+		assertNotEquals(expected.params(), expected.targetParams());
+	}
+
+	@Test
+	void keepsOnlyTheNewestCheckpoints() throws Exception {
+		AgentSiepie agent = trainedAgent();
+		try (var checkpoints = new CheckpointManager(agent, new CheckpointSettings(directory, 2, 10))) {
+			List<Path> saved = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				// Checkpoints are named after the step count
+				agent.recordStep(new Episode(frame(0)), Action.NOTHING, frame(i));
+				saved.add(checkpoints.saveAndWait(TIMEOUT).orElseThrow());
+			}
+
+			try (Stream<Path> files = Files.list(directory)) {
+				assertEquals(saved.subList(1, 3), files.sorted().toList());
+			}
+			assertEquals(Optional.of(saved.get(2)), checkpoints.latest());
+		}
+	}
+
+	/**
+	 * An agent with Adam state, a target network behind the online network and non-initial counters.
+	 */
+	private static AgentSiepie trainedAgent() {
+		var buffer = new ReplayBuffer(1_000);
+		buffer.addEpisode(episode(200, 1));
+		var agent = new AgentSiepie(buffer);
+
+		agent.startEpisode();
+		var episode = new Episode(frame(0));
+		// The agent trains every 50 steps
+		for (int i = 0; i < 50; i++) {
+			agent.recordStep(episode, Action.fromIndex(i % Action.getNumActions()), frame(i));
+		}
+		agent.endEpisode(episode, 10, 1);
+		return agent;
+	}
+}
@@ -0,0 +1,169 @@
+package nl.devc0n.machinelearning.siepie.distributed;
+
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import nl.devc0n.machinelearning.siepie.model.GameStep;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.awaitTrue;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A learner in this JVM with actors in child JVMs, over localhost.
+ */
+class DistributedTrainingTests {
+
+	static final int ACTORS = 3;
+	static final int EPISODES = 10;
+	static final int CREDITS = 2;
+	static final int MAX_BACKLOG = 4;
+	static final int STEPS = 20;
+	static final int FRAME_SIZE = 84 * 84;
+	static final int WEIGHT_COUNT = 1000;
+	static final long FINAL_VERSION = 7;
+	static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+	@Test
+	void actorProcessesStreamEpisodesAndFollowTheLearnersWeights() throws Exception {
+		var received = new ConcurrentLinkedQueue<Episode>();
+		var draining = new AtomicBoolean();
+		var version = new AtomicLong();
+		var settings = settings(0);
+		try (var server = new LearnerServer(settings, (episode, epsilon) -> received.add(episode),
+				() -> draining.get() ? 0 : received.size(), weightSource(version))) {
+			server.start();
+			List<Process> actors = new ArrayList<>();
+			try {
+				for (int i = 0; i < ACTORS; i++) {
+					actors.add(startActor(server.getPort(), i));
+				}
+
+				// The backlog is never taken in, so credits stop coming back and the actors stall
+				awaitTrue(() -> received.size() >= MAX_BACKLOG, TIMEOUT);
+				awaitQuiet(received);
+				assertTrue(received.size() <= MAX_BACKLOG + ACTORS * CREDITS, "received " + received.size());
+
+				draining.set(true);
+				awaitTrue(() -> received.size() == ACTORS * EPISODES, TIMEOUT);
+				version.set(FINAL_VERSION);
+				for (Process actor : actors) {
+					assertTrue(actor.waitFor(TIMEOUT.toSeconds(), TimeUnit.SECONDS));
+					assertEquals(0, actor.exitValue());
+				}
+			} finally {
+				actors.forEach(Process::destroyForcibly);
+			}
+
+			assertEquals(ACTORS * EPISODES, server.getReceivedEpisodes());
+			assertTrue(server.getReceivedBytes() < (long) ACTORS * EPISODES * STEPS * FRAME_SIZE / 4,
+					"frames should compress well, received " + server.getReceivedBytes() + " bytes");
+			for (Episode episode : received) {
+				int actor = episode.getFinalScore() / 1000;
+				assertSameEpisode(episode(actor, episode.getFinalScore() % 1000), episode);
+			}
+		}
+	}
+
+	static DistributedSettings settings(int port) {
+		return new DistributedSettings(DistributedRole.NONE, "127.0.0.1", port, CREDITS, MAX_BACKLOG,
+				Duration.ofMillis(100), 1);
+	}
+
+	static Process startActor(int port, int index) throws Exception {
+		String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+		return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+				ActorProcess.class.getName(), String.valueOf(port), String.valueOf(index))
+				.inheritIO()
+				.start();
+	}
+
+	static LearnerServer.WeightSource weightSource(AtomicLong version) {
+		return new LearnerServer.WeightSource() {
+			@Override
+			public long version() {
+				return version.get();
+			}
+
+			@Override
+			public float[] weights() {
+				float[] weights = new float[WEIGHT_COUNT];
+				Arrays.fill(weights, version.get());
+				return weights;
+			}
+		};
+	}
+
+	/**
+	 * Frames change a little per step, like a game.
+	 */
+	static Episode episode(int actor, int number) {
+		byte[] initial = new byte[FRAME_SIZE];
+		Arrays.fill(initial, (byte) actor);
+		var episode = new Episode(initial);
+		for (int j = 0; j < STEPS; j++) {
+			byte[] frame = initial.clone();
+			Arrays.fill(frame, 0, (j + 1) * 84, (byte) (number + j));
+			var step = new GameStep(frame, Action.fromIndex(j % Action.getNumActions()), j);
+			step.setReward(j * 0.5f);
+			step.setTerminal(j == STEPS - 1);
+			episode.addStep(step);
+		}
+		episode.markFinished(actor * 1000 + number);
+		return episode;
+	}
+
+	static void assertSameEpisode(Episode expected, Episode actual) {
+		assertArrayEquals(expected.getInitialFrame(), actual.getInitialFrame());
+		assertEquals(expected.getSteps().size(), actual.getSteps().size());
+		for (int j = 0; j < expected.getSteps().size(); j++) {
+			GameStep e = expected.getSteps().get(j);
+			GameStep a = actual.getSteps().get(j);
+			assertArrayEquals(e.getFrame(), a.getFrame());
+			assertEquals(e.getAction(), a.getAction());
+			assertEquals(e.getReward(), a.getReward());
+			assertEquals(e.isTerminal(), a.isTerminal());
+			assertEquals(e.getStepNumber(), a.getStepNumber());
+		}
+		assertEquals(expected.getEpisodeLength(), actual.getEpisodeLength());
+	}
+
+	static void awaitQuiet(ConcurrentLinkedQueue<?> queue) throws InterruptedException {
+		int size;
+		do {
+			size = queue.size();
+			Thread.sleep(1_000);
+		} while (queue.size() != size);
+	}
+
+	/**
+	 * An actor in its own JVM: sends its episodes, then waits for the final weights.
+	 */
+	static class ActorProcess {
+
+		public static void main(String[] args) throws Exception {
+			int index = Integer.parseInt(args[1]);
+			var weightsValid = new AtomicBoolean(true);
+			try (var client = new ActorClient(settings(Integer.parseInt(args[0])), "actor-" + index,
+					(version, weights) -> weightsValid.compareAndSet(true,
+							weights.length == WEIGHT_COUNT && weights[0] == version))) {
+				client.start();
+				if (!client.awaitWeights(0, TIMEOUT)) System.exit(2);
+				for (int i = 0; i < EPISODES; i++) {
+					client.submit(episode(index, i), 0.05);
+				}
+				if (!client.awaitWeights(FINAL_VERSION, TIMEOUT)) System.exit(3);
+			}
+			System.exit(weightsValid.get() ? 0 : 4);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package nl.devc0n.machinelearning.siepie.environment;
+
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LaneGameSimulatorTests {
+
+	@Test
+	void rendersGrayscaleFramesAndEndsEpisodes() {
+		var simulator = new LaneGameSimulator(42);
+		simulator.start();
+
+		BufferedImage frame = simulator.takeScreenshot();
+		assertEquals(84, frame.getWidth());
+		assertEquals(84, frame.getHeight());
+		assertEquals(BufferedImage.TYPE_BYTE_GRAY, frame.getType());
+
+		int steps = 0;
+		while (!simulator.detectDeathScreen() && steps < 10_000) {
+			simulator.performAction(Action.NOTHING);
+			steps++;
+		}
+		assertTrue(simulator.detectDeathScreen(), "standing still should run into an obstacle");
+		assertTrue(simulator.extractFinalScore() > 0);
+
+		simulator.restartGame();
+		assertFalse(simulator.detectDeathScreen());
+		assertEquals(0, simulator.extractFinalScore());
+	}
+
+	@Test
+	void sameSeedPlaysTheSameGame() {
+		var first = new LaneGameSimulator(7);
+		var second = new LaneGameSimulator(7);
+		first.start();
+		second.start();
+
+		for (int i = 0; i < 20; i++) {
+			Action action = Action.fromIndex(i % Action.getNumActions());
+			first.performAction(action);
+			second.performAction(action);
+		}
+		assertArrayEquals(pixels(first.takeScreenshot()), pixels(second.takeScreenshot()));
+	}
+
+	private static byte[] pixels(BufferedImage image) {
+		return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -0,0 +1,110 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import nl.devc0n.machinelearning.siepie.model.Episode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.FRAME_SIZE;
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.episode;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EpisodeLogTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void mapsEpisodesWrittenByTheLog() throws Exception {
+		try (var log = new EpisodeLog(directory)) {
+			log.append(episode(3, 10));
+			log.append(episode(5, 20));
+			log.flush().join();
+		}
+
+		try (var mapped = MappedEpisodes.open(directory)) {
+			assertEquals(2, mapped.episodeCount());
+			assertEquals(8, mapped.transitionCount());
+
+			Episode second = mapped.episode(1);
+			assertEquals(20, second.getInitialFrame()[0]);
+			assertEquals(5, second.getSteps().size());
+			GameStep last = second.getSteps().getLast();
+			assertEquals(25, last.getFrame()[FRAME_SIZE - 1]);
+			assertEquals(Action.fromIndex(4 % Action.getNumActions()), last.getAction());
+			assertEquals(4, last.getStepNumber());
+			assertEquals(-1.0f, last.getReward());
+			assertTrue(last.isTerminal());
+
+			// 6 frames for the newest episode: its initial frame and 5 steps
+			assertEquals(1, mapped.newestEpisodesWithin(6));
+			assertEquals(2, mapped.newestEpisodesWithin(5));
+		}
+	}
+
+	@Test
+	void warmStartLoadsOnlyWhatFitsWithoutEvicting() throws Exception {
+		try (var log = new EpisodeLog(directory)) {
+			log.append(episode(3, 10));
+			log.append(episode(5, 20));
+			log.flush().join();
+		}
+
+		try (var mapped = MappedEpisodes.open(directory)) {
+			// Both episodes hold 8 transitions but 10 frames
+			var buffer = new ReplayBuffer(9);
+			assertEquals(1, buffer.warmStart(mapped));
+			assertEquals(1, buffer.getEpisodeCount());
+		}
+	}
+
+	@Test
+	void ignoresTornRecordAtTheEnd() throws Exception {
+		try (var log = new EpisodeLog(directory)) {
+			log.append(episode(4, 1));
+			log.flush().join();
+		}
+		// Half a record, as left behind by a crash during a write
+		Path segment = EpisodeLog.segments(directory).getFirst();
+		Files.write(segment, new byte[EpisodeLog.recordLength(4, FRAME_SIZE) / 2], StandardOpenOption.APPEND);
+
+		try (var mapped = MappedEpisodes.open(directory)) {
+			assertEquals(1, mapped.episodeCount());
+			assertEquals(4, mapped.transitionCount());
+		}
+	}
+
+	@Test
+	void ignoresRecordWithoutCommitMarker() throws Exception {
+		try (var log = new EpisodeLog(directory)) {
+			log.append(episode(4, 1));
+			log.append(episode(6, 2));
+			log.flush().join();
+		}
+		Path segment = EpisodeLog.segments(directory).getFirst();
+		byte[] written = Files.readAllBytes(segment);
+		assertEquals(EpisodeLog.FILE_HEADER_BYTES + EpisodeLog.recordLength(4, FRAME_SIZE)
+				+ EpisodeLog.recordLength(6, FRAME_SIZE), written.length);
+
+		// Header and columns of the second record reached the disk, the commit marker did not
+		Files.write(segment, Arrays.copyOf(written, written.length - 4));
+		assertOnlyFirstEpisodeMapped();
+
+		// Full length, but the marker is not what was written
+		byte[] uncommitted = written.clone();
+		Arrays.fill(uncommitted, written.length - 4, written.length, (byte) 0);
+		Files.write(segment, uncommitted);
+		assertOnlyFirstEpisodeMapped();
+	}
+
+	private void assertOnlyFirstEpisodeMapped() throws Exception {
+		try (var mapped = MappedEpisodes.open(directory)) {
+			assertEquals(1, mapped.episodeCount());
+			assertEquals(4, mapped.transitionCount());
+		}
+	}
+}
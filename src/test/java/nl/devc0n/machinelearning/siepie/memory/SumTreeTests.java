@@ -0,0 +1,41 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SumTreeTests {
+
+	@Test
+	void findsLeafByPrefixSum() {
+		SumTree tree = new SumTree(5);
+		tree.set(0, 1.0);
+		tree.set(1, 0.0);
+		tree.set(2, 3.0);
+		tree.set(4, 2.0);
+
+		assertEquals(6.0, tree.total(), 1e-9);
+		assertEquals(1.0, tree.min(), 1e-9);
+		assertEquals(0, tree.find(0.5));
+		assertEquals(2, tree.find(1.0));
+		assertEquals(2, tree.find(3.9));
+		assertEquals(4, tree.find(4.0));
+		assertEquals(4, tree.find(5.99));
+	}
+
+	@Test
+	void updatesAreIncremental() {
+		SumTree tree = new SumTree(8);
+		for (int i = 0; i < 8; i++) tree.set(i, 1.0);
+		tree.set(3, 0.25);
+		tree.set(3, 4.0);
+
+		assertEquals(11.0, tree.total(), 1e-9);
+		assertEquals(4.0, tree.get(3), 1e-9);
+		assertEquals(3, tree.find(3.5));
+
+		tree.clear();
+		assertEquals(0.0, tree.total(), 1e-9);
+		assertEquals(Double.POSITIVE_INFINITY, tree.min());
+	}
+}
@@ -0,0 +1,34 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitionBatchTests {
+
+	@Test
+	void sliceTakesTheRowsOfEveryColumn() {
+		// [5, 2, 3, 3], every value is its flat index
+		var states = Nd4j.arange(0, 90).castTo(DataType.FLOAT).reshape(5, 2, 3, 3);
+		var nextStates = states.add(1000);
+		var batch = new TransitionBatch(states, nextStates, new int[]{0, 1, 2, 3, 4},
+				new float[]{0f, 0.1f, 0.2f, 0.3f, 0.4f}, new boolean[]{false, true, false, false, true},
+				new long[]{10, 11, 12, 13, 14}, new float[]{1f, 0.9f, 0.8f, 0.7f, 0.6f});
+
+		TransitionBatch slice = batch.slice(1, 4);
+
+		assertEquals(3, slice.size());
+		assertArrayEquals(new long[]{3, 2, 3, 3}, slice.states().shape());
+		assertEquals(18f, slice.states().getFloat(0, 0, 0, 0));
+		assertEquals(71f, slice.states().getFloat(2, 1, 2, 2));
+		assertEquals(1018f, slice.nextStates().getFloat(0, 0, 0, 0));
+		assertEquals(1071f, slice.nextStates().getFloat(2, 1, 2, 2));
+		assertArrayEquals(new int[]{1, 2, 3}, slice.actions());
+		assertArrayEquals(new float[]{0.1f, 0.2f, 0.3f}, slice.rewards());
+		assertArrayEquals(new boolean[]{true, false, false}, slice.terminals());
+		assertArrayEquals(new long[]{11, 12, 13}, slice.positions());
+		assertArrayEquals(new float[]{0.9f, 0.8f, 0.7f}, slice.weights());
+	}
+}
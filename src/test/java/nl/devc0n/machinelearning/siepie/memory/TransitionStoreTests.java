@@ -0,0 +1,53 @@
+package nl.devc0n.machinelearning.siepie.memory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransitionStoreTests {
+
+	@Test
+	void rebuildsStacksFromSharedFrames() {
+		TransitionStore store = new TransitionStore(16, 1, 4);
+		store.appendEpisodeStart(new byte[]{10});
+		for (int i = 1; i <= 5; i++) {
+			store.appendStep(new byte[]{(byte) (10 + i)}, i, i % 5, 0.1f, i == 5, i - 1);
+		}
+
+		float[] stack = new float[4];
+		// First step repeats the initial frame, like FrameStack does
+		store.copyStack(1, false, stack, 0);
+		assertArrayEquals(new float[]{10, 10, 10, 10}, scaled(stack));
+		store.copyStack(1, true, stack, 0);
+		assertArrayEquals(new float[]{10, 10, 10, 11}, scaled(stack));
+		store.copyStack(5, false, stack, 0);
+		assertArrayEquals(new float[]{11, 12, 13, 14}, scaled(stack));
+
+		assertTrue(store.terminal(5));
+		assertEquals(5, store.transitionCount());
+		assertEquals(1, store.episodeCount());
+	}
+
+	@Test
+	void evictsOldestFramesAndInvalidatesBrokenStacks() {
+		TransitionStore store = new TransitionStore(8, 1, 4);
+		store.appendEpisodeStart(new byte[]{0});
+		for (int i = 1; i <= 11; i++) {
+			store.appendStep(new byte[]{(byte) i}, i, 0, 0f, false, i - 1);
+		}
+
+		assertEquals(4, store.oldestPosition());
+		assertEquals(0, store.episodeCount());
+		assertEquals(8, store.transitionCount());
+		// Stack of position 7 needs frames 3..6, frame 3 was overwritten
+		assertFalse(store.isValid(7));
+		assertTrue(store.isValid(8));
+		assertEquals(10, store.positionOf(store.slot(10)));
+	}
+
+	private static float[] scaled(float[] stack) {
+		float[] out = new float[stack.length];
+		for (int i = 0; i < stack.length; i++) out[i] = Math.round(stack[i] * 255);
+		return out;
+	}
+}
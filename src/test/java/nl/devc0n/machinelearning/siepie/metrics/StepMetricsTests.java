@@ -0,0 +1,29 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StepMetricsTests {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void summarizesStagesInMilliseconds() {
+		var metrics = StepMetrics.standalone();
+		for (int i = 1; i <= 100; i++) {
+			metrics.recordNanos(StepStage.CAPTURE, i * 1_000_000L);
+		}
+
+		var stages = (Map<String, Object>) metrics.summary().get("stages");
+		var capture = (Map<String, Object>) stages.get("capture");
+		assertEquals(100L, capture.get("count"));
+		assertEquals(100.0, (double) capture.get("max"), 0.001);
+		assertEquals(50.0, (double) capture.get("p50"), 5.0);
+		assertEquals(99.0, (double) capture.get("p99"), 5.0);
+
+		var inference = (Map<String, Object>) stages.get("inference");
+		assertEquals(0L, inference.get("count"));
+	}
+}
@@ -0,0 +1,68 @@
+package nl.devc0n.machinelearning.siepie.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrainingStatisticsTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void estimatesQuantilesOfAStream() {
+		var median = new P2Quantile(0.5);
+		var p99 = new P2Quantile(0.99);
+		var random = new SplittableRandom(42);
+		for (int i = 0; i < 100_000; i++) {
+			double value = random.nextDouble();
+			median.add(value);
+			p99.add(value);
+		}
+
+		assertEquals(0.5, median.value(), 0.01);
+		assertEquals(0.99, p99.value(), 0.005);
+	}
+
+	@Test
+	void keepsMeansOverEveryWindow() {
+		var statistics = new TrainingStatistics(StatisticsSettings.defaults(), () -> 0);
+		for (int length = 1; length <= 1500; length++) {
+			statistics.recordEpisode(length, 0, 0.1);
+		}
+
+		assertEquals(1490.5, statistics.mean(TrainingStat.EPISODE_LENGTH, 20), 1e-9);
+		assertEquals(1450.5, statistics.mean(TrainingStat.EPISODE_LENGTH, 100), 1e-9);
+		assertEquals(1000.5, statistics.mean(TrainingStat.EPISODE_LENGTH, 1000), 1e-9);
+		assertEquals(1500, statistics.max(TrainingStat.EPISODE_LENGTH));
+		assertTrue(Double.isNaN(statistics.mean(TrainingStat.LOSS, 20)));
+	}
+
+	@Test
+	void appendsOneRecordPerInterval() throws Exception {
+		var settings = new StatisticsSettings(true, directory, Duration.ofHours(1));
+		var statistics = new TrainingStatistics(settings, () -> 0);
+		statistics.start();
+		statistics.recordUpdate(new float[]{0.5f, -1.5f}, 0.25);
+		long header = Files.size(statisticsFile());
+
+		statistics.tick();
+		statistics.tick();
+		statistics.close();
+
+		assertEquals(header + 2L * TrainingStatistics.recordLength(), Files.size(statisticsFile()));
+	}
+
+	private Path statisticsFile() throws Exception {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.findFirst().orElseThrow();
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package nl.devc0n.machinelearning.siepie.model;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Episodes and frames for tests, and waiting on background threads. and waiting on background threads.
+ */
+public final class TestEpisodes {
+
+	public static final int FRAME_SIZE = 84 * 84;
+
+	private TestEpisodes() {
+	}
+
+	/**
+	 * An episode that ends in a death after {@code steps} steps. Every frame is filled with one
+	 * value, counting up from {@code firstPixel}, so frames can be told apart.
+	 */
+	public static Episode episode(int steps, int firstPixel) {
+		var episode = new Episode(frame(firstPixel));
+		for (int i = 0; i < steps; i++) {
+			var step = new GameStep(frame(firstPixel + i + 1), Action.fromIndex(i % Action.getNumActions()), i);
+			step.setReward(i == steps - 1 ? -1.0f : 0.1f);
+			step.setTerminal(i == steps - 1);
+			episode.addStep(step);
+		}
+		return episode;
+	}
+
+	public static byte[] frame(int value) {
+		byte[] frame = new byte[FRAME_SIZE];
+		Arrays.fill(frame, (byte) value);
+		return frame;
+	}
+
+	public static void awaitTrue(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "timed out");
+			Thread.sleep(20);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import nl.devc0n.machinelearning.siepie.memory.TransitionBatch;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataParallelTrainerTests {
+
+	// Does not divide the batch, so the shards differ in size
+	private static final int REPLICAS = 3;
+	private static final int BATCH_SIZE = 64;
+
+	@TempDir
+	Path directory;
+
+	private final DQNNetwork network = new DQNNetwork();
+
+	@AfterEach
+	void closeReplicas() {
+		network.enableDataParallel(1);
+	}
+
+	@Test
+	void replicasHoldTheAveragedWeightsAfterEveryUpdate() {
+		network.enableDataParallel(REPLICAS);
+		network.train(batch(1));
+		network.train(batch(2));
+
+		NetworkSnapshot master = network.newSnapshot();
+		network.snapshot(master);
+		DataParallelTrainer trainer = network.getDataParallel();
+		for (int r = 0; r < REPLICAS; r++) {
+			MultiLayerNetwork replica = trainer.replica(r);
+			assertEquals(master.params(), replica.params(), "params of replica " + r);
+			assertEquals(master.updaterState(), replica.getUpdater().getStateViewArray(), "updater state of replica " + r);
+			assertEquals(2, replica.getIterationCount());
+		}
+	}
+
+	@Test
+	void tdErrorsMatchTheSingleNetworkInBatchOrder() {
+		// Same seed, same initial weights
+		var reference = new DQNNetwork();
+		network.enableDataParallel(REPLICAS);
+		TransitionBatch batch = batch(3);
+
+		float[] expected = reference.train(batch);
+		float[] actual = network.train(batch);
+
+		assertEquals(BATCH_SIZE, actual.length);
+		assertArrayEquals(expected, actual, 1e-4f);
+	}
+
+	@Test
+	void replicaTargetsFollowTheMasterTarget() throws Exception {
+		network.enableDataParallel(REPLICAS);
+		network.train(batch(4));
+		network.updateTargetNetwork();
+		assertTargetsEqualMaster();
+
+		// A restored network gets fresh replicas
+		var other = new DQNNetwork();
+		other.train(batch(5));
+		Path path = directory.resolve("model.zip");
+		other.save(path.toString());
+		network.load(path.toString());
+		assertEquals(REPLICAS, network.getDataParallel().replicaCount());
+		assertTargetsEqualMaster();
+
+		NetworkSnapshot master = network.newSnapshot();
+		network.snapshot(master);
+		for (int r = 0; r < REPLICAS; r++) {
+			assertEquals(master.params(), network.getDataParallel().replica(r).params(), "params of replica " + r);
+		}
+	}
+
+	private void assertTargetsEqualMaster() {
+		NetworkSnapshot master = network.newSnapshot();
+		network.snapshot(master);
+		DataParallelTrainer trainer = network.getDataParallel();
+		for (int r = 0; r < REPLICAS; r++) {
+			assertEquals(master.targetParams(), trainer.replicaTarget(r).params(), "target of replica " + r);
+		}
+	}
+
+	private static TransitionBatch batch(long seed) {
+		var random = new SplittableRandom(seed);
+		Nd4j.getRandom().setSeed(seed);
+		int[] actions = random.ints(BATCH_SIZE, 0, Action.getNumActions()).toArray();
+		float[] rewards = new float[BATCH_SIZE];
+		boolean[] terminals = new boolean[BATCH_SIZE];
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			rewards[i] = (float) random.nextDouble(-1, 1);
+			terminals[i] = random.nextInt(10) == 0;
+		}
+		float[] weights = new float[BATCH_SIZE];
+		Arrays.fill(weights, 1f);
+		long[] shape = {BATCH_SIZE, DQNNetwork.FRAME_STACK, DQNNetwork.INPUT_HEIGHT, DQNNetwork.INPUT_WIDTH};
+		return new TransitionBatch(Nd4j.rand(DataType.FLOAT, shape), Nd4j.rand(DataType.FLOAT, shape),
+				actions, rewards, terminals, new long[BATCH_SIZE], weights);
+	}
+}
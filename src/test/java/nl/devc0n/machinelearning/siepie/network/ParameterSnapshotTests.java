@@ -0,0 +1,73 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParameterSnapshotTests {
+
+	@Test
+	void refreshCopiesOnlyNewerVersions() {
+		MultiLayerNetwork writer = new DQNNetwork().getModel();
+		MultiLayerNetwork reader = writer.clone();
+		var snapshot = new ParameterSnapshot(writer.params());
+		assertEquals(0, snapshot.version());
+
+		INDArray first = writer.params().add(1);
+		assertEquals(1, snapshot.publish(first));
+		// Published by copy, later changes to the source stay out
+		first.addi(1);
+		assertEquals(1, snapshot.refresh(reader, 0));
+		assertEquals(writer.params().add(1), reader.params());
+
+		// Already holds version 1, nothing is copied
+		reader.params().assign(0);
+		assertEquals(1, snapshot.refresh(reader, 1));
+		assertEquals(0, reader.params().amaxNumber().doubleValue());
+
+		// Two publishes since, the reader skips to the newest
+		assertEquals(2, snapshot.publish(writer.params().add(2)));
+		assertEquals(3, snapshot.publish(writer.params().add(3)));
+		assertEquals(3, snapshot.refresh(reader, 1));
+		assertEquals(writer.params().add(3), reader.params());
+	}
+
+	@Test
+	void readerNeverHoldsAMixOfTwoVersions() throws Exception {
+		MultiLayerNetwork reader = new DQNNetwork().getModel();
+		reader.params().assign(0);
+		INDArray source = reader.params().dup();
+		var snapshot = new ParameterSnapshot(source);
+
+		// Every version is a vector filled with its own number
+		var running = new AtomicBoolean(true);
+		var writer = new Thread(() -> {
+			while (running.get()) {
+				snapshot.publish(source.assign(snapshot.version() + 1));
+				// About one copy long, so readers get overtaken now and then but not every time
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+			}
+		}, "snapshot-writer");
+		writer.start();
+		try {
+			long seen = 0;
+			for (int i = 0; i < 200; i++) {
+				long refreshed = snapshot.refresh(reader, seen);
+				assertTrue(refreshed >= seen);
+				seen = refreshed;
+				assertEquals(seen, reader.params().minNumber().longValue(), "torn copy");
+				assertEquals(seen, reader.params().maxNumber().longValue(), "torn copy");
+			}
+			assertTrue(seen > 0, "the writer should have published");
+		} finally {
+			running.set(false);
+			writer.join();
+		}
+	}
+}
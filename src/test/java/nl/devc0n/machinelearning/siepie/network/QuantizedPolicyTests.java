@@ -0,0 +1,42 @@
+package nl.devc0n.machinelearning.siepie.network;
+
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedPolicyTests {
+
+	private static final int STACKS = 64;
+	// int8 weights and activations, a layout or transpose bug is off by far more
+	private static final float RELATIVE_TOLERANCE = 0.05f;
+	private static final double MIN_AGREEMENT = 0.9;
+
+	@Test
+	void staysCloseToTheFloatNetwork() {
+		var network = new DQNNetwork();
+		MultiLayerNetwork model = network.getModel();
+		Nd4j.getRandom().setSeed(7);
+		INDArray stacks = Nd4j.rand(DataType.FLOAT, STACKS, DQNNetwork.FRAME_STACK, DQNNetwork.INPUT_HEIGHT, DQNNetwork.INPUT_WIDTH);
+
+		var policy = QuantizedPolicy.quantize(model, DQNNetwork.FRAME_STACK, DQNNetwork.INPUT_HEIGHT, DQNNetwork.INPUT_WIDTH);
+		INDArray expected = model.output(stacks);
+		for (int i = 0; i < STACKS; i++) {
+			float[] expectedQ = expected.getRow(i).toFloatVector();
+			float[] actualQ = policy.qValues(stacks.get(NDArrayIndex.point(i), NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.all()));
+			float largest = 0;
+			for (float q : expectedQ) {
+				largest = Math.max(largest, Math.abs(q));
+			}
+			assertArrayEquals(expectedQ, actualQ, RELATIVE_TOLERANCE * largest + 1e-3f, "Q-values of stack " + i);
+		}
+		assertTrue(policy.agreement(model, stacks) >= MIN_AGREEMENT);
+
+		network.enableQuantizedActor();
+		assertTrue(network.quantizedAgreement(stacks) >= MIN_AGREEMENT);
+	}
+}
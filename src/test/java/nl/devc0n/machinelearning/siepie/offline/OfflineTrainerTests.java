@@ -0,0 +1,54 @@
+package nl.devc0n.machinelearning.siepie.offline;
+
+import nl.devc0n.machinelearning.siepie.memory.EpisodeLog;
+import nl.devc0n.machinelearning.siepie.memory.MappedEpisodes;
+import nl.devc0n.machinelearning.siepie.network.DQNNetwork;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static nl.devc0n.machinelearning.siepie.model.TestEpisodes.episode;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OfflineTrainerTests {
+
+	private static final int EPISODES = 3;
+	private static final int STEPS = 20;
+	private static final int BATCH_SIZE = 8;
+	private static final int EPOCHS = 2;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void trainsAllEpochsAndStopsTheSamplers() throws Exception {
+		Path episodeDirectory = directory.resolve("episodes");
+		try (var log = new EpisodeLog(episodeDirectory)) {
+			for (int i = 0; i < EPISODES; i++) {
+				log.append(episode(STEPS, i * STEPS));
+			}
+			log.flush().join();
+		}
+		Path checkpoints = directory.resolve("checkpoints");
+		// A queue of 2 keeps the samplers blocked in put(), they have to be interrupted out of it
+		var settings = new OfflineSettings(true, EPOCHS, BATCH_SIZE, 5, 0, checkpoints, 3, 2,
+				directory.resolve("none.zip"));
+
+		OfflineTrainer.Result result;
+		try (var episodes = MappedEpisodes.open(episodeDirectory)) {
+			var trainer = new OfflineTrainer(new DQNNetwork(), episodes, settings);
+			result = assertTimeoutPreemptively(Duration.ofMinutes(2), trainer::run);
+		}
+
+		long updatesPerEpoch = EPISODES * STEPS / BATCH_SIZE;
+		assertEquals(updatesPerEpoch * EPOCHS, result.updates());
+		assertEquals(updatesPerEpoch * EPOCHS * BATCH_SIZE, result.samples());
+		assertTrue(Files.exists(checkpoints.resolve("offline_final.zip")));
+		assertTrue(Thread.getAllStackTraces().keySet().stream()
+						.noneMatch(thread -> thread.getName().startsWith("offline-sampler-") && thread.isAlive()),
+				"sampler threads should have stopped");
+	}
+}
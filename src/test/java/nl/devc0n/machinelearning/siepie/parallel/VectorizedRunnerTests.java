@@ -0,0 +1,91 @@
+package nl.devc0n.machinelearning.siepie.parallel;
+
+import nl.devc0n.machinelearning.siepie.agent.AgentSiepie;
+import nl.devc0n.machinelearning.siepie.environment.GameEnvironment;
+import nl.devc0n.machinelearning.siepie.environment.LaneGameSimulator;
+import nl.devc0n.machinelearning.siepie.memory.ReplayBuffer;
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import nl.devc0n.machinelearning.siepie.model.Action;
+import nl.devc0n.machinelearning.siepie.schedule.StepSettings;
+import org.junit.jupiter.api.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorizedRunnerTests {
+
+	private static final int ENVIRONMENTS = 3;
+	private static final int STEPS = 600;
+	private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+	@Test
+	void stepsAllReadyEnvironmentsWithOneBatchedForwardPass() throws Exception {
+		var buffer = new ReplayBuffer(10_000);
+		var agent = new RecordingAgent(buffer);
+		List<LaneGameSimulator> simulators = new ArrayList<>();
+		for (int i = 0; i < ENVIRONMENTS; i++) {
+			simulators.add(new LaneGameSimulator(i));
+		}
+		var runner = new VectorizedRunner(agent, List.<GameEnvironment>copyOf(simulators), StepSettings.defaults(),
+				StepMetrics.standalone());
+
+		var thread = new Thread(() -> {
+			try {
+				runner.run();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}, "vectorized-runner");
+		thread.start();
+		long deadline = System.nanoTime() + TIMEOUT.toNanos();
+		while (agent.getTotalSteps() < STEPS && System.nanoTime() < deadline) {
+			Thread.sleep(20);
+		}
+		runner.stop();
+		thread.join(TIMEOUT.toMillis());
+		assertFalse(thread.isAlive(), "runner should stop");
+		assertTrue(agent.getTotalSteps() >= STEPS, "only " + agent.getTotalSteps() + " steps");
+
+		for (long[] shape : agent.batchShapes) {
+			assertTrue(shape[0] >= 1 && shape[0] <= ENVIRONMENTS, "batch of " + shape[0]);
+			assertEquals(4, shape[1]);
+			assertEquals(84, shape[2]);
+			assertEquals(84, shape[3]);
+		}
+		assertTrue(agent.batchShapes.stream().anyMatch(shape -> shape[0] == ENVIRONMENTS),
+				"all environments should have stepped together");
+		assertTrue(agent.batchShapes.size() < agent.getTotalSteps(), "actions should be picked in batches");
+
+		// Every picked action is performed exactly once, by the environment it was picked for
+		long picked = agent.batchShapes.stream().mapToLong(shape -> shape[0]).sum();
+		long performed = simulators.stream().mapToLong(LaneGameSimulator::getTotalSteps).sum();
+		assertEquals(picked, performed);
+		for (LaneGameSimulator simulator : simulators) {
+			assertTrue(simulator.getTotalSteps() > 0);
+		}
+		assertTrue(buffer.getEpisodeCount() > 0, "finished episodes should reach the replay buffer");
+	}
+
+	/**
+	 * Records the shape of every batch the runner hands in.
+	 */
+	private static class RecordingAgent extends AgentSiepie {
+
+		final List<long[]> batchShapes = new CopyOnWriteArrayList<>();
+
+		RecordingAgent(ReplayBuffer buffer) {
+			super(buffer);
+		}
+
+		@Override
+		public Action[] selectActions(INDArray frameStacks) {
+			batchShapes.add(frameStacks.shape());
+			return super.selectActions(frameStacks);
+		}
+	}
+}
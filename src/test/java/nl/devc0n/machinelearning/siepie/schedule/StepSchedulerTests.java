@@ -0,0 +1,68 @@
+package nl.devc0n.machinelearning.siepie.schedule;
+
+import nl.devc0n.machinelearning.siepie.metrics.StepMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StepSchedulerTests {
+
+	static final long PERIOD = 200;
+
+	final AtomicLong clock = new AtomicLong(1_000);
+
+	StepScheduler scheduler(OverrunPolicy policy) {
+		// Sleeping advances the fake clock exactly to the deadline
+		return new StepScheduler(PERIOD, policy, StepMetrics.standalone(), clock::get, clock::addAndGet);
+	}
+
+	@Test
+	void sleepsToAbsoluteDeadlines() {
+		var scheduler = scheduler(OverrunPolicy.SKIP);
+		scheduler.start();
+
+		clock.addAndGet(50);
+		assertEquals(150, scheduler.awaitNextStep());
+		assertEquals(1_200, clock.get());
+
+		// Work time varies, the grid does not
+		clock.addAndGet(120);
+		assertEquals(80, scheduler.awaitNextStep());
+		assertEquals(1_400, clock.get());
+		assertEquals(0, scheduler.getOverruns());
+	}
+
+	@Test
+	void skipContinuesOnTheNextGridSlot() {
+		var scheduler = scheduler(OverrunPolicy.SKIP);
+		scheduler.start();
+
+		// Deadline 1_200 missed by 450, slots 1_400 and 1_600 are gone too
+		clock.addAndGet(650);
+		assertEquals(-450, scheduler.awaitNextStep());
+		assertEquals(1, scheduler.getOverruns());
+		assertEquals(2, scheduler.getSkippedSlots());
+
+		clock.addAndGet(100);
+		scheduler.awaitNextStep();
+		assertEquals(1_800, clock.get());
+	}
+
+	@Test
+	void catchUpRunsLateStepsBackToBack() {
+		var scheduler = scheduler(OverrunPolicy.CATCH_UP);
+		scheduler.start();
+
+		clock.addAndGet(500);
+		assertTrue(scheduler.awaitNextStep() < 0);
+		// Deadline 1_400 has passed as well, no sleep
+		assertTrue(scheduler.awaitNextStep() < 0);
+		assertEquals(1_500, clock.get());
+		// Back on time for 1_600
+		assertEquals(100, scheduler.awaitNextStep());
+		assertEquals(1_600, clock.get());
+		assertEquals(0, scheduler.getSkippedSlots());
+	}
+}